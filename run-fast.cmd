@@ -0,0 +1,20 @@
+@echo off
+rem Starts the pipeline from the jar built with "mvn -Pappcds package", using the
+rem class-data sharing archive recorded by that build when it is present.
+setlocal
+set "DIR=%~dp0"
+set "JAR=%DIR%target\ipe-translation-pipeline.jar"
+set "ARCHIVE=%DIR%target\app-cds.jsa"
+set "JAVA=java"
+if defined JAVA_HOME set "JAVA=%JAVA_HOME%\bin\java"
+
+if not exist "%JAR%" (
+    echo Build the jar first: mvn -Pappcds package 1>&2
+    exit /b 1
+)
+
+if exist "%ARCHIVE%" (
+    "%JAVA%" -XX:SharedArchiveFile="%ARCHIVE%" -Xshare:auto -jar "%JAR%" %*
+) else (
+    "%JAVA%" -jar "%JAR%" %*
+)
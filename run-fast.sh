@@ -0,0 +1,18 @@
+#!/bin/sh
+# Starts the pipeline from the jar built with `mvn -Pappcds package`, using the
+# class-data sharing archive recorded by that build when it is present.
+DIR="$(cd "$(dirname "$0")" && pwd)"
+JAR="$DIR/target/ipe-translation-pipeline.jar"
+ARCHIVE="$DIR/target/app-cds.jsa"
+JAVA="${JAVA_HOME:+$JAVA_HOME/bin/}java"
+
+if [ ! -f "$JAR" ]; then
+    echo "Build the jar first: mvn -Pappcds package" >&2
+    exit 1
+fi
+
+if [ -f "$ARCHIVE" ]; then
+    # -Xshare:auto silently falls back to normal class loading if the archive does not match the JDK
+    exec "$JAVA" -XX:SharedArchiveFile="$ARCHIVE" -Xshare:auto -jar "$JAR" "$@"
+fi
+exec "$JAVA" -jar "$JAR" "$@"
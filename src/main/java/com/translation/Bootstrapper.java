@@ -2,14 +2,30 @@ package com.translation;
 
 import com.google.inject.Guice;
 import com.google.inject.Injector;
+import com.google.inject.Provider;
+import com.google.inject.Stage;
 import com.translation.config.Configuration;
 import com.translation.config.ConfigurationModule;
+import com.translation.config.PipelineOptions;
 import com.translation.di.ApplicationModule;
+import com.translation.di.JobModule;
+import com.translation.metrics.FlightRecording;
+import com.translation.pipeline.IpeFileSelector;
 import com.translation.pipeline.Pipeline;
+import com.translation.pipeline.PipelineSummary;
+import com.translation.pipeline.PipelineWatcher;
+import com.translation.pipeline.ShardMerger;
+import com.translation.pipeline.ShardSelector;
+import com.translation.pipeline.WorkArea;
+import com.translation.server.PipelineServer;
 import com.translation.services.DownloadService;
 
 import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 import java.util.logging.Logger;
 import java.util.logging.Level;
@@ -18,7 +34,7 @@ public class Bootstrapper {
     private static final Logger logger = Logger.getLogger(Bootstrapper.class.getName());
 
     private Injector injector;
-    private DownloadService downloadService;
+    private Provider<DownloadService> downloadService;
     private Configuration configuration;
     private Pipeline pipeline;
     private Boolean skipDownload;
@@ -26,33 +42,110 @@ public class Bootstrapper {
     public void run(String[] args) {
         logger.info("Bootstrapper starting IPE Translation Pipeline");
         
+        FlightRecording recording = null;
+        boolean failed = false;
         try {
             setupDependencyInjection(args);
             createDirectories();
+            recording = startRecording();
             
-            String[] fileNames;
-            if (skipDownload) {
-                fileNames = getExistingFiles();
+            PipelineOptions options = injector.getInstance(PipelineOptions.class);
+            if (options.isTrainingRun()) {
+                // Loads the classes of a real run so they can be archived (see the appcds profile)
+                injector.getInstance(TrainingRun.class).run();
+            } else if (options.getMergeOutput() != null) {
+                failed = !mergeShards(options);
+            } else if (options.isServe()) {
+                runServer();
             } else {
-                fileNames = downloadIpeFiles();
+                runOnce();
             }
             
-            // Pipeline is now auto-created by DI with all steps in correct order!
-            pipeline.execute(fileNames);
-            
-            logger.info("Pipeline completed successfully!");
-            
         } catch (Exception e) {
             logger.log(Level.SEVERE, "Bootstrapper execution failed", e);
+            failed = true;
+        } finally {
+            if (recording != null) {
+                recording.stop();
+            }
+        }
+        
+        if (failed) {
             System.exit(1);
         }
     }
     
+    private void runOnce() throws Exception {
+        String[] fileNames;
+        if (skipDownload) {
+            fileNames = getExistingFiles();
+        } else {
+            fileNames = downloadIpeFiles();
+        }
+        // Every node downloads the whole course and keeps only its own shard
+        fileNames = injector.getInstance(ShardSelector.class).select(fileNames);
+        // Course pages also link exercise sheets and other plain PDFs
+        fileNames = injector.getInstance(IpeFileSelector.class).select(fileNames);
+        
+        // Ctrl+C kills the IPE tools of running steps instead of leaving them behind
+        Thread cancelOnExit = new Thread(() -> pipeline.cancel("JVM shutting down"), "pipeline-cancel");
+        Runtime.getRuntime().addShutdownHook(cancelOnExit);
+        try {
+            // Pipeline is now auto-created by DI with all steps in correct order!
+            PipelineSummary summary = pipeline.execute(fileNames);
+
+            logger.info("Pipeline completed: " + summary.getSucceededCount() + " of " + summary.getTotalCount() + " files translated");
+
+            if (injector.getInstance(PipelineOptions.class).isWatch()) {
+                injector.getInstance(PipelineWatcher.class).watch(summary);
+            }
+        } finally {
+            try {
+                Runtime.getRuntime().removeShutdownHook(cancelOnExit);
+            } catch (IllegalStateException e) {
+                // Already shutting down, the hook is running
+            }
+        }
+    }
+    
+    private boolean mergeShards(PipelineOptions options) throws Exception {
+        List<Path> shardDirectories = new ArrayList<>();
+        for (String directory : options.getMergeInputs()) {
+            shardDirectories.add(Paths.get(directory));
+        }
+        return injector.getInstance(ShardMerger.class).merge(Paths.get(options.getMergeOutput()), shardDirectories);
+    }
+    
+    private void runServer() throws Exception {
+        PipelineServer server = injector.getInstance(PipelineServer.class);
+        Runtime.getRuntime().addShutdownHook(new Thread(server::stop, "pipeline-daemon-shutdown"));
+        server.start();
+        server.awaitShutdown();
+    }
+    
+    private FlightRecording startRecording() throws Exception {
+        PipelineOptions options = injector.getInstance(PipelineOptions.class);
+        if (!options.isRecording()) {
+            return null;
+        }
+        
+        String recordFile = options.getRecordFile();
+        if (recordFile.isEmpty()) {
+            String timestamp = new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date());
+            return FlightRecording.start(injector.getInstance(WorkArea.class).getWorkRoot()
+                                                .resolve("recordings/run-" + timestamp + ".jfr"));
+        }
+        return FlightRecording.start(Paths.get(recordFile));
+    }
+    
     private void setupDependencyInjection(String[] args) {
         logger.info("Setting up dependency injection...");
         
-        this.injector = Guice.createInjector(new ApplicationModule(args), new ConfigurationModule());
-        this.downloadService = injector.getInstance(DownloadService.class);
+        // In the development stage singletons are only built when first needed, so
+        // services a run does not use (downloads, DeepL, ...) are never constructed
+        Injector application = Guice.createInjector(Stage.DEVELOPMENT, new ApplicationModule(args), new ConfigurationModule());
+        this.injector = application.createChildInjector(new JobModule(PipelineOptions.fromArgs(args)));
+        this.downloadService = injector.getProvider(DownloadService.class);
         this.configuration = injector.getInstance(Configuration.class);
         this.pipeline = injector.getInstance(Pipeline.class);
         this.skipDownload = injector.getInstance(Boolean.class);
@@ -60,17 +153,18 @@ public class Bootstrapper {
         logger.info("Dependency injection setup complete");
         logger.info("IPE extract path: " + configuration.getIpeExtractPath());
         logger.info("Skip download: " + skipDownload);
+        logger.info("Parallel jobs: " + injector.getInstance(PipelineOptions.class).getJobs());
     }
     
     private void createDirectories() {
         logger.info("Creating working directory...");
         
-        File directory = new File(Constants.WORK_DIR);
+        File directory = injector.getInstance(WorkArea.class).getWorkRoot().toFile();
         if (!directory.exists()) {
             if (directory.mkdirs()) {
-                logger.info("Created directory: " + Constants.WORK_DIR);
+                logger.info("Created directory: " + directory);
             } else {
-                logger.warning("Failed to create directory: " + Constants.WORK_DIR);
+                logger.warning("Failed to create directory: " + directory);
             }
         }
     }
@@ -78,12 +172,10 @@ public class Bootstrapper {
     private String[] downloadIpeFiles() throws Exception {
         logger.info("Step 0: Downloading IPE files...");
 
-        File step0Dir = new File(Constants.WORK_DIR + "/step-0");
-        if (!step0Dir.exists()) {
-            step0Dir.mkdirs();
-        }
+        // The work area creates the directory; with --work-queue it is in the shared directory
+        File step0Dir = injector.getInstance(WorkArea.class).getStepDirectory(0).toFile();
 
-        List<String> names = downloadService.downloadToDirectory(step0Dir.getAbsolutePath());
+        List<String> names = downloadService.get().downloadToDirectory(step0Dir.getAbsolutePath());
         
         // Sort files alphabetically
         names.sort(String::compareTo);
@@ -96,7 +188,7 @@ public class Bootstrapper {
     private String[] getExistingFiles() throws Exception {
         logger.info("Step 0: Using existing IPE files...");
 
-        File step0Dir = new File(Constants.WORK_DIR + "/step-0");
+        File step0Dir = injector.getInstance(WorkArea.class).getStepDirectory(0).toFile();
         if (!step0Dir.exists()) {
             throw new Exception("Step-0 directory does not exist: " + step0Dir.getAbsolutePath() + 
                               ". Cannot skip download when no files exist.");
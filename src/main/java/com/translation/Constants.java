@@ -1,7 +1,7 @@
 package com.translation;
 
 public class Constants {
-    public static final String WORK_DIR = ".work";
+    public static final String MANUAL_WORK_DIR = "manual-work";
     
     public static final String SOURCE_LANGUAGE = "de";
     public static final String TARGET_LANGUAGE = "en-US";
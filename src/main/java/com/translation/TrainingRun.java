@@ -0,0 +1,115 @@
+package com.translation;
+
+import com.google.inject.Inject;
+import com.google.inject.Injector;
+import com.translation.config.PipelineOptions;
+import com.translation.di.JobModule;
+import com.translation.pipeline.Pipeline;
+import com.translation.pipeline.PipelineSummary;
+import com.translation.pipeline.WorkArea;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Runs a small bundled deck through the pipeline, so that the classes of a real
+ * run are loaded while {@code -XX:ArchiveClassesAtExit} records the class-data
+ * sharing archive (see the appcds profile). The deck is processed in a temporary
+ * work directory that is deleted afterwards; steps that need tools or services
+ * the build machine lacks (IPE, DeepL) just fail for it.
+ */
+public class TrainingRun {
+    private static final Logger logger = Logger.getLogger(TrainingRun.class.getName());
+    private static final String DECK_RESOURCE = "/training/training-deck.xml";
+    private static final String DECK = "training-deck";
+
+    private final Injector injector;
+    private final PipelineOptions options;
+
+    @Inject
+    public TrainingRun(Injector injector, PipelineOptions options) {
+        this.injector = injector;
+        this.options = options;
+    }
+
+    public PipelineSummary run() throws Exception {
+        Path directory = Files.createTempDirectory("ipe-training-");
+        try {
+            // A job of its own, like a daemon job with a work directory, so the real work area stays untouched
+            Injector job = injector.getParent().createChildInjector(new JobModule(options.withWorkDirectory(directory.toString())));
+            Path pdfFile = job.getInstance(WorkArea.class).getStepDirectory(0).resolve(DECK + ".pdf");
+            Files.write(pdfFile, ipePdf(readDeck()));
+
+            PipelineSummary summary = job.getInstance(Pipeline.class).execute(new String[] {DECK});
+            logger.info("Training run finished: " + summary.getSucceededCount() + " of " + summary.getTotalCount()
+                        + " decks translated" + (summary.getFailed().isEmpty() ? "" : " (failures are expected without IPE or DeepL)"));
+            return summary;
+        } finally {
+            deleteRecursively(directory);
+        }
+    }
+
+    private static byte[] readDeck() throws IOException {
+        try (InputStream in = TrainingRun.class.getResourceAsStream(DECK_RESOURCE)) {
+            if (in == null) {
+                throw new IOException("Training deck not found on the classpath: " + DECK_RESOURCE);
+            }
+            return in.readAllBytes();
+        }
+    }
+
+    /**
+     * Wraps IPE XML into a one-page PDF with a compressed {@code /Type /Ipe}
+     * stream, the part of an Ipe PDF that decompile reads.
+     */
+    static byte[] ipePdf(byte[] ipeXml) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (DeflaterOutputStream deflater = new DeflaterOutputStream(compressed)) {
+            deflater.write(ipeXml);
+        }
+
+        ByteArrayOutputStream pdf = new ByteArrayOutputStream();
+        List<Integer> offsets = new ArrayList<>();
+        ascii(pdf, "%PDF-1.4\n");
+        offsets.add(pdf.size());
+        ascii(pdf, "1 0 obj\n<< /Type /Catalog /Pages 2 0 R >>\nendobj\n");
+        offsets.add(pdf.size());
+        ascii(pdf, "2 0 obj\n<< /Type /Pages /Kids [3 0 R] /Count 1 >>\nendobj\n");
+        offsets.add(pdf.size());
+        ascii(pdf, "3 0 obj\n<< /Type /Page /Parent 2 0 R /MediaBox [0 0 1024 768] >>\nendobj\n");
+        offsets.add(pdf.size());
+        ascii(pdf, "4 0 obj\n<< /Type /Ipe /Length " + compressed.size() + " /Filter /FlateDecode >>\nstream\n");
+        compressed.writeTo(pdf);
+        ascii(pdf, "\nendstream\nendobj\n");
+
+        int xref = pdf.size();
+        ascii(pdf, "xref\n0 " + (offsets.size() + 1) + "\n0000000000 65535 f \n");
+        for (int offset : offsets) {
+            ascii(pdf, String.format("%010d 00000 n \n", offset));
+        }
+        ascii(pdf, "trailer\n<< /Size " + (offsets.size() + 1) + " /Root 1 0 R >>\nstartxref\n" + xref + "\n%%EOF\n");
+        return pdf.toByteArray();
+    }
+
+    private static void ascii(ByteArrayOutputStream out, String text) {
+        out.writeBytes(text.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static void deleteRecursively(Path directory) {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        } catch (IOException e) {
+            logger.warning("Could not delete training directory " + directory + ": " + e.getMessage());
+        }
+    }
+}
@@ -5,12 +5,37 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 public class Configuration {
     @JsonProperty("ipe_dir")
     private String ipeDir;
+
+    // Explicit tool paths, e.g. the stand-ins under src/test/fake-ipe; empty to look in ipe_dir
+    @JsonProperty("ipeextract_path")
+    private String ipeExtractPath;
+
+    @JsonProperty("ipetoipe_path")
+    private String ipe2ipePath;
+
+    @JsonProperty("ipescript_path")
+    private String ipeScriptPath;
     
     @JsonProperty("working_directory")
     private String workingDirectory = ".work";
     
     @JsonProperty("clean_on_start")
     private boolean cleanOnStart = false;
+
+    @JsonProperty("extract_timeout_seconds")
+    private int extractTimeoutSeconds = 15;
+
+    @JsonProperty("compile_timeout_seconds")
+    private int compileTimeoutSeconds = 300;
+
+    @JsonProperty("ipescript_workers")
+    private int ipeScriptWorkers = 0;
+
+    @JsonProperty("validate_before_compile")
+    private boolean validateBeforeCompile = true;
+
+    @JsonProperty("skip_non_ipe_files")
+    private boolean skipNonIpeFiles = true;
     
     public String getIpeDir() {
         return ipeDir;
@@ -36,17 +61,93 @@ public class Configuration {
         this.cleanOnStart = cleanOnStart;
     }
     
+    /**
+     * How long ipeextract may run before it is killed.
+     */
+    public int getExtractTimeoutSeconds() {
+        return extractTimeoutSeconds;
+    }
+
+    public void setExtractTimeoutSeconds(int extractTimeoutSeconds) {
+        this.extractTimeoutSeconds = extractTimeoutSeconds;
+    }
+
+    /**
+     * How long ipetoipe, including its LaTeX run, may take for one deck before it is killed.
+     */
+    public int getCompileTimeoutSeconds() {
+        return compileTimeoutSeconds;
+    }
+
+    public void setCompileTimeoutSeconds(int compileTimeoutSeconds) {
+        this.compileTimeoutSeconds = compileTimeoutSeconds;
+    }
+
+    /**
+     * Number of long-lived ipescript processes that compile decks one after the
+     * other; 0 to run ipetoipe once per deck.
+     */
+    public int getIpeScriptWorkers() {
+        return ipeScriptWorkers;
+    }
+
+    public void setIpeScriptWorkers(int ipeScriptWorkers) {
+        this.ipeScriptWorkers = ipeScriptWorkers;
+    }
+
+    /**
+     * Whether restored XML is checked for broken translations before ipetoipe runs.
+     */
+    public boolean isValidateBeforeCompile() {
+        return validateBeforeCompile;
+    }
+
+    public void setValidateBeforeCompile(boolean validateBeforeCompile) {
+        this.validateBeforeCompile = validateBeforeCompile;
+    }
+
+    /**
+     * Whether PDFs without an IPE stream are left out of the run instead of failing in decompile.
+     */
+    public boolean isSkipNonIpeFiles() {
+        return skipNonIpeFiles;
+    }
+
+    public void setSkipNonIpeFiles(boolean skipNonIpeFiles) {
+        this.skipNonIpeFiles = skipNonIpeFiles;
+    }
+
     public String getIpeExtractPath() {
-        if (ipeDir == null || ipeDir.isEmpty()) {
-            return "ipeextract.exe";
-        }
-        return ipeDir + java.io.File.separator + "ipeextract.exe";
+        return toolPath(ipeExtractPath, "ipeextract.exe");
+    }
+
+    public void setIpeExtractPath(String ipeExtractPath) {
+        this.ipeExtractPath = ipeExtractPath;
     }
     
     public String getIpe2ipePath() {
+        return toolPath(ipe2ipePath, "ipetoipe.exe");
+    }
+
+    public void setIpe2ipePath(String ipe2ipePath) {
+        this.ipe2ipePath = ipe2ipePath;
+    }
+
+    public String getIpeScriptPath() {
+        return toolPath(ipeScriptPath, "ipescript.exe");
+    }
+
+    public void setIpeScriptPath(String ipeScriptPath) {
+        this.ipeScriptPath = ipeScriptPath;
+    }
+
+    private String toolPath(String configuredPath, String executable) {
+        if (configuredPath != null && !configuredPath.isEmpty()) {
+            return configuredPath;
+        }
         if (ipeDir == null || ipeDir.isEmpty()) {
-            return "ipetoipe.exe";
+            return executable;
         }
-        return ipeDir + java.io.File.separator + "ipetoipe.exe";
+        return ipeDir + java.io.File.separator + executable;
     }
 }
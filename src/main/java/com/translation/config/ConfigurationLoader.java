@@ -5,10 +5,14 @@ import com.google.inject.Singleton;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
 @Singleton
 public class ConfigurationLoader {
     private static final String CONFIG_FILE = "settings.json";
+    // e.g. -Dsettings.file=src/test/fake-ipe/settings.json to run against the stand-in IPE tools
+    private static final String CONFIG_FILE_PROPERTY = "settings.file";
     private final ObjectMapper objectMapper;
     
     public ConfigurationLoader() {
@@ -16,6 +20,12 @@ public class ConfigurationLoader {
     }
     
     public Configuration loadConfiguration() throws IOException {
+        String configFile = System.getProperty(CONFIG_FILE_PROPERTY);
+        if (configFile != null && !configFile.isEmpty()) {
+            try (InputStream inputStream = Files.newInputStream(Path.of(configFile))) {
+                return objectMapper.readValue(inputStream, Configuration.class);
+            }
+        }
         try (InputStream inputStream = getClass().getClassLoader().getResourceAsStream(CONFIG_FILE)) {
             if (inputStream == null) {
                 throw new IOException("Configuration file '" + CONFIG_FILE + "' not found in resources");
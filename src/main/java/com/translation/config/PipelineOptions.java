@@ -0,0 +1,507 @@
+package com.translation.config;
+
+import com.translation.pipeline.ResourceClass;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Command line options that control how the pipeline is executed.
+ */
+public class PipelineOptions {
+    private static final int DEFAULT_NETWORK_CONCURRENCY = 4;
+    private static final int DEFAULT_QUEUE_CAPACITY = 4;
+    private static final String DEFAULT_RECORDING = "";
+    private static final int DEFAULT_PORT = 8085;
+    private static final int DEFAULT_MAX_JOBS = 2;
+    private static final int DEFAULT_LEASE_TTL_SECONDS = 60;
+    private static final long MEMORY_PER_PROCESS = 1L << 30; // a LaTeX run of ipetoipe
+
+    private int jobs = 1;
+    private boolean staged = false;
+    private boolean incremental = true;
+    private boolean resume = false;
+    private boolean watch = false;
+    private boolean serve = false;
+    private boolean trainingRun = false;
+    private int shardIndex = 0;
+    private int shardCount = 0;
+    private String shardStrategy = "hash";
+    private String mergeOutput;
+    private String workQueue;
+    private int leaseTtlSeconds = DEFAULT_LEASE_TTL_SECONDS;
+    private final List<String> mergeInputs = new ArrayList<>();
+    private int port = DEFAULT_PORT;
+    private int maxJobs = DEFAULT_MAX_JOBS;
+    private boolean persistIntermediates = true;
+    private boolean batch = true;
+    private String fromStep;
+    private String onlyStep;
+    private String recordFile;
+    private String workArea = "disk";
+    private String workDirectory;
+    private String[] args = new String[0];
+    private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+    private int maxProcesses = 0;
+    private final Map<ResourceClass, Integer> stageLimits = new EnumMap<>(ResourceClass.class);
+
+    public static PipelineOptions fromArgs(String[] args) {
+        PipelineOptions options = new PipelineOptions();
+        if (args == null) {
+            return options;
+        }
+        options.args = args.clone();
+
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if ("--jobs".equals(arg) || "-j".equals(arg)) {
+                options.setJobs(parseJobs(i + 1 < args.length ? args[++i] : null));
+            } else if (arg.startsWith("--jobs=")) {
+                options.setJobs(parseJobs(arg.substring("--jobs=".length())));
+            } else if ("--no-cache".equals(arg) || "--force".equals(arg)) {
+                options.setIncremental(false);
+            } else if ("--no-batch".equals(arg)) {
+                options.setBatch(false);
+            } else if ("--in-memory".equals(arg)) {
+                options.setPersistIntermediates(false);
+            } else if ("--resume".equals(arg)) {
+                options.setResume(true);
+            } else if ("--watch".equals(arg)) {
+                options.setWatch(true);
+            } else if ("--shard".equals(arg)) {
+                options.parseShard(requireValue(arg, args, ++i));
+            } else if ("--shard-strategy".equals(arg)) {
+                String strategy = requireValue(arg, args, ++i);
+                if (!"hash".equals(strategy) && !"size".equals(strategy)) {
+                    throw new IllegalArgumentException("Invalid --shard-strategy (expected hash or size): " + strategy);
+                }
+                options.setShardStrategy(strategy);
+            } else if ("--merge".equals(arg)) {
+                // --merge <output-dir> <shard-dir>...
+                options.mergeOutput = requireValue(arg, args, ++i);
+                while (i + 1 < args.length && !args[i + 1].startsWith("-")) {
+                    options.mergeInputs.add(args[++i]);
+                }
+                if (options.mergeInputs.isEmpty()) {
+                    throw new IllegalArgumentException("--merge requires an output directory and at least one shard directory");
+                }
+            } else if ("--work-queue".equals(arg)) {
+                options.setWorkQueue(requireValue(arg, args, ++i));
+            } else if ("--lease-ttl".equals(arg)) {
+                options.setLeaseTtlSeconds(parsePositive(arg, requireValue(arg, args, ++i)));
+            } else if ("--training-run".equals(arg)) {
+                options.setTrainingRun(true);
+            } else if ("--serve".equals(arg)) {
+                options.setServe(true);
+            } else if ("--port".equals(arg)) {
+                options.setPort(parsePositive(arg, requireValue(arg, args, ++i)));
+            } else if ("--max-jobs".equals(arg)) {
+                options.setMaxJobs(parsePositive(arg, requireValue(arg, args, ++i)));
+            } else if ("--from-step".equals(arg)) {
+                options.setFromStep(requireValue(arg, args, ++i));
+            } else if ("--only-step".equals(arg)) {
+                options.setOnlyStep(requireValue(arg, args, ++i));
+            } else if ("--record".equals(arg)) {
+                // The file name is optional: --record [file.jfr]
+                if (i + 1 < args.length && !args[i + 1].startsWith("-")) {
+                    options.setRecordFile(args[++i]);
+                } else {
+                    options.setRecordFile(DEFAULT_RECORDING);
+                }
+            } else if (arg.startsWith("--record=")) {
+                options.setRecordFile(arg.substring("--record=".length()));
+            } else if ("--work-dir".equals(arg)) {
+                options.setWorkDirectory(requireValue(arg, args, ++i));
+            } else if ("--work-area".equals(arg)) {
+                options.setWorkArea(requireValue(arg, args, ++i));
+            } else if ("--staged".equals(arg)) {
+                options.setStaged(true);
+            } else if ("--stage-limit".equals(arg)) {
+                options.parseStageLimits(requireValue(arg, args, ++i));
+            } else if ("--max-processes".equals(arg)) {
+                options.setMaxProcesses(parsePositive(arg, requireValue(arg, args, ++i)));
+            } else if ("--queue-capacity".equals(arg)) {
+                options.setQueueCapacity(parsePositive(arg, requireValue(arg, args, ++i)));
+            }
+        }
+        return options;
+    }
+
+    private static String requireValue(String flag, String[] args, int index) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException(flag + " requires a value");
+        }
+        return args[index];
+    }
+
+    private static int parsePositive(String flag, String value) {
+        try {
+            int parsed = Integer.parseInt(value.trim());
+            if (parsed < 1) {
+                throw new IllegalArgumentException(flag + " must be at least 1: " + value);
+            }
+            return parsed;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value for " + flag + ": " + value, e);
+        }
+    }
+
+    /**
+     * Parses a list like {@code process=2,network=8} into per-resource stage limits.
+     */
+    private void parseStageLimits(String value) {
+        for (String entry : value.split(",")) {
+            String[] parts = entry.split("=", 2);
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Invalid --stage-limit entry (expected resource=N): " + entry);
+            }
+            ResourceClass resource;
+            try {
+                resource = ResourceClass.valueOf(parts[0].trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown resource class in --stage-limit: " + parts[0], e);
+            }
+            stageLimits.put(resource, parsePositive("--stage-limit", parts[1]));
+        }
+    }
+
+    /**
+     * Parses {@code i/n}, e.g. {@code 2/4} for the second of four shards.
+     */
+    private void parseShard(String value) {
+        String[] parts = value.split("/", 2);
+        if (parts.length != 2) {
+            throw new IllegalArgumentException("Invalid --shard (expected i/n, e.g. 1/4): " + value);
+        }
+        int index = parsePositive("--shard", parts[0]);
+        int count = parsePositive("--shard", parts[1]);
+        if (index > count) {
+            throw new IllegalArgumentException("Shard index must not exceed the shard count: " + value);
+        }
+        this.shardIndex = index;
+        this.shardCount = count;
+    }
+
+    private static int parseJobs(String value) {
+        if (value == null) {
+            throw new IllegalArgumentException("--jobs requires a value (number of files or 'auto')");
+        }
+        if ("auto".equalsIgnoreCase(value)) {
+            return Runtime.getRuntime().availableProcessors();
+        }
+        return parsePositive("--jobs", value);
+    }
+
+    public int getJobs() {
+        return jobs;
+    }
+
+    public void setJobs(int jobs) {
+        this.jobs = jobs;
+    }
+
+    public boolean isParallel() {
+        return jobs > 1;
+    }
+
+    public boolean isStaged() {
+        return staged;
+    }
+
+    public void setStaged(boolean staged) {
+        this.staged = staged;
+    }
+
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    public boolean isPersistIntermediates() {
+        return persistIntermediates;
+    }
+
+    public void setPersistIntermediates(boolean persistIntermediates) {
+        this.persistIntermediates = persistIntermediates;
+    }
+
+    /**
+     * Whether sequential runs of several files hand whole batches to steps that
+     * support it, instead of running every file through all steps on its own.
+     * Disabled with {@code --no-batch}.
+     */
+    public boolean isBatch() {
+        return batch;
+    }
+
+    public void setBatch(boolean batch) {
+        this.batch = batch;
+    }
+
+    public boolean isResume() {
+        return resume;
+    }
+
+    public void setResume(boolean resume) {
+        this.resume = resume;
+    }
+
+    /**
+     * Keep running after the first pass and re-process decks whose inputs change.
+     */
+    public boolean isWatch() {
+        return watch;
+    }
+
+    public void setWatch(boolean watch) {
+        this.watch = watch;
+    }
+
+    /**
+     * Run as a daemon that accepts jobs over a local HTTP API instead of processing once.
+     */
+    public boolean isServe() {
+        return serve;
+    }
+
+    public void setServe(boolean serve) {
+        this.serve = serve;
+    }
+
+    /**
+     * Process a bundled sample deck in a temporary work directory instead of the
+     * course, used to record a class-data sharing archive.
+     */
+    public boolean isTrainingRun() {
+        return trainingRun;
+    }
+
+    public void setTrainingRun(boolean trainingRun) {
+        this.trainingRun = trainingRun;
+    }
+
+    public boolean isSharded() {
+        return shardCount > 0;
+    }
+
+    /**
+     * 1-based index of the shard this node processes.
+     */
+    public int getShardIndex() {
+        return shardIndex;
+    }
+
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    /**
+     * Name of the shard's output directory, e.g. {@code shard-2-of-4}.
+     */
+    public String getShardName() {
+        return "shard-" + shardIndex + "-of-" + shardCount;
+    }
+
+    /**
+     * How files are assigned to shards: {@code hash} (stable name hash) or
+     * {@code size} (size-balanced bins).
+     */
+    public String getShardStrategy() {
+        return shardStrategy;
+    }
+
+    public void setShardStrategy(String shardStrategy) {
+        this.shardStrategy = shardStrategy;
+    }
+
+    /**
+     * Directory to merge shard outputs into, {@code null} unless {@code --merge} was given.
+     */
+    public String getMergeOutput() {
+        return mergeOutput;
+    }
+
+    public List<String> getMergeInputs() {
+        return mergeInputs;
+    }
+
+    /**
+     * Shared directory for claiming files through lease files, {@code null} unless
+     * {@code --work-queue} was given.
+     */
+    public String getWorkQueue() {
+        return workQueue;
+    }
+
+    public void setWorkQueue(String workQueue) {
+        this.workQueue = workQueue;
+    }
+
+    public boolean isQueued() {
+        return workQueue != null;
+    }
+
+    /**
+     * Seconds without a heartbeat after which another worker may take over a lease.
+     */
+    public int getLeaseTtlSeconds() {
+        return leaseTtlSeconds;
+    }
+
+    public void setLeaseTtlSeconds(int leaseTtlSeconds) {
+        this.leaseTtlSeconds = leaseTtlSeconds;
+    }
+
+    /**
+     * Root of the job's work directory, overriding {@code working_directory} from
+     * the settings; {@code null} to use the settings.
+     */
+    public String getWorkDirectory() {
+        return workDirectory;
+    }
+
+    public void setWorkDirectory(String workDirectory) {
+        this.workDirectory = workDirectory;
+    }
+
+    /**
+     * The same options for a job in another work directory.
+     */
+    public PipelineOptions withWorkDirectory(String workDirectory) {
+        PipelineOptions copy = fromArgs(args);
+        copy.setWorkDirectory(workDirectory);
+        return copy;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public void setPort(int port) {
+        this.port = port;
+    }
+
+    /**
+     * Number of daemon jobs that may run at the same time.
+     */
+    public int getMaxJobs() {
+        return maxJobs;
+    }
+
+    public void setMaxJobs(int maxJobs) {
+        this.maxJobs = maxJobs;
+    }
+
+    /**
+     * First step to run, given as step order (e.g. {@code 4}) or step name.
+     */
+    public String getFromStep() {
+        return fromStep;
+    }
+
+    public void setFromStep(String fromStep) {
+        this.fromStep = fromStep;
+    }
+
+    /**
+     * The only step to run, given as step order or step name.
+     */
+    public String getOnlyStep() {
+        return onlyStep;
+    }
+
+    public void setOnlyStep(String onlyStep) {
+        this.onlyStep = onlyStep;
+    }
+
+    /**
+     * Where to write a JFR recording of the run; empty for the default location,
+     * {@code null} if no recording was requested.
+     */
+    public String getRecordFile() {
+        return recordFile;
+    }
+
+    public void setRecordFile(String recordFile) {
+        this.recordFile = recordFile;
+    }
+
+    public boolean isRecording() {
+        return recordFile != null;
+    }
+
+    /**
+     * Where intermediate step results live: {@code disk}, {@code memory} or a directory.
+     */
+    public String getWorkArea() {
+        return workArea;
+    }
+
+    public void setWorkArea(String workArea) {
+        this.workArea = workArea;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * Number of external tools that may run at the same time across all steps and
+     * jobs. Unless set with --max-processes, one per core as long as every process
+     * can have about 1 GiB of physical memory, since LaTeX is memory-hungry.
+     */
+    public int getMaxProcesses() {
+        if (maxProcesses > 0) {
+            return maxProcesses;
+        }
+        int cores = Runtime.getRuntime().availableProcessors();
+        java.lang.management.OperatingSystemMXBean system = ManagementFactory.getOperatingSystemMXBean();
+        if (system instanceof com.sun.management.OperatingSystemMXBean) {
+            long memory = ((com.sun.management.OperatingSystemMXBean) system).getTotalMemorySize();
+            return (int) Math.max(1, Math.min(cores, memory / MEMORY_PER_PROCESS));
+        }
+        return Math.max(1, cores / 2);
+    }
+
+    public void setMaxProcesses(int maxProcesses) {
+        this.maxProcesses = maxProcesses;
+    }
+
+    public void setStageLimit(ResourceClass resource, int limit) {
+        stageLimits.put(resource, limit);
+    }
+
+    /**
+     * Number of concurrent workers for a stage bound by the given resource.
+     * Explicit --stage-limit values win; otherwise process-bound stages get half
+     * the cores (LaTeX is memory-hungry), CPU-bound stages all cores and
+     * network-bound stages a small fixed number of in-flight requests.
+     */
+    public int getStageConcurrency(ResourceClass resource) {
+        Integer explicit = stageLimits.get(resource);
+        if (explicit != null) {
+            return explicit;
+        }
+        int cores = Runtime.getRuntime().availableProcessors();
+        switch (resource) {
+            case PROCESS:
+                return Math.max(1, cores / 2);
+            case NETWORK:
+                return DEFAULT_NETWORK_CONCURRENCY;
+            case CPU:
+            default:
+                return Math.max(1, cores);
+        }
+    }
+}
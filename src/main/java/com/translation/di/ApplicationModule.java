@@ -3,16 +3,15 @@ package com.translation.di;
 import com.google.inject.AbstractModule;
 import com.google.inject.Provides;
 import com.google.inject.Singleton;
-import com.google.inject.multibindings.Multibinder;
 import com.translation.config.Configuration;
-import com.translation.pipeline.Pipeline;
-import com.translation.pipeline.steps.*;
+import com.translation.config.PipelineOptions;
 import com.translation.services.AutomatedTranslationService;
 import com.translation.services.DictionaryTranslationService;
 import com.translation.services.DownloadService;
 import com.translation.services.NullTranslationService;
 import com.translation.services.TranslationService;
 import com.translation.util.IpeWrapper;
+import com.translation.util.ProcessPool;
 
 public class ApplicationModule extends AbstractModule {
     private final String[] args;
@@ -24,17 +23,7 @@ public class ApplicationModule extends AbstractModule {
     @Override
     protected void configure() {
         bind(DownloadService.class);
-        
-        // Auto-register all pipeline steps
-        Multibinder<PipelineStepBase> stepBinder = Multibinder.newSetBinder(binder(), PipelineStepBase.class);
-        stepBinder.addBinding().to(DecompileStep.class);
-        stepBinder.addBinding().to(TextExtractionStep.class);
-        stepBinder.addBinding().to(TranslationStep.class);
-        stepBinder.addBinding().to(TextRestorationStep.class);
-        stepBinder.addBinding().to(CompileStep.class);
-        
-        // Pipeline will be auto-created with all steps
-        bind(Pipeline.class);
+        // Steps, the pipeline and per-job state are bound per job, see JobModule
     }
     
     @Provides
@@ -50,12 +39,8 @@ public class ApplicationModule extends AbstractModule {
             }
         }
         
-        // Default to automated translation
-        try {
-            return new AutomatedTranslationService();
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to initialize TranslationService", e);
-        }
+        // Default to automated translation; the DeepL client is only created once something is translated
+        return new AutomatedTranslationService();
     }
     
     @Provides
@@ -73,7 +58,8 @@ public class ApplicationModule extends AbstractModule {
     @Provides
     @Singleton
     public IpeWrapper provideIpeWrapper(Configuration configuration) {
-        return new IpeWrapper(configuration);
+        // One pool for the whole process, shared by all jobs of a daemon
+        return new IpeWrapper(configuration, new ProcessPool(PipelineOptions.fromArgs(args).getMaxProcesses()));
     }
 
 }
@@ -0,0 +1,50 @@
+package com.translation.di;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Singleton;
+import com.google.inject.multibindings.Multibinder;
+import com.translation.config.PipelineOptions;
+import com.translation.metrics.RunMetrics;
+import com.translation.pipeline.BuildManifest;
+import com.translation.pipeline.FileScheduler;
+import com.translation.pipeline.Pipeline;
+import com.translation.pipeline.RunJournal;
+import com.translation.pipeline.WorkArea;
+import com.translation.pipeline.steps.*;
+
+/**
+ * Everything that belongs to one job: its options, work directory, journal,
+ * build cache, metrics, steps and pipeline. Installed in a child injector of the
+ * application injector, so several jobs with their own work directories can run
+ * in one JVM and share its services (translation, IPE tools, downloads).
+ */
+public class JobModule extends AbstractModule {
+    private final PipelineOptions options;
+
+    public JobModule(PipelineOptions options) {
+        this.options = options;
+    }
+
+    @Override
+    protected void configure() {
+        bind(PipelineOptions.class).toInstance(options);
+
+        // Bound explicitly so that each child injector gets its own instances
+        bind(WorkArea.class).in(Singleton.class);
+        bind(RunJournal.class).in(Singleton.class);
+        bind(RunMetrics.class).in(Singleton.class);
+        bind(BuildManifest.class).in(Singleton.class);
+        bind(FileScheduler.class).in(Singleton.class);
+
+        // Auto-register all pipeline steps
+        Multibinder<PipelineStepBase> stepBinder = Multibinder.newSetBinder(binder(), PipelineStepBase.class);
+        stepBinder.addBinding().to(DecompileStep.class);
+        stepBinder.addBinding().to(TextExtractionStep.class);
+        stepBinder.addBinding().to(TranslationStep.class);
+        stepBinder.addBinding().to(TextRestorationStep.class);
+        stepBinder.addBinding().to(CompileStep.class);
+
+        // Pipeline will be auto-created with all steps
+        bind(Pipeline.class).in(Singleton.class);
+    }
+}
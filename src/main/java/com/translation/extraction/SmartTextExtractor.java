@@ -26,6 +26,8 @@ public class SmartTextExtractor {
 	public ExtractionResult extractText(String xml) {
 		List<TextElement> elements = new ArrayList<>();
 		int elementId = 1; // Counter for element IDs
+		int scanned = 0;
+		int skipped = 0;
 		Document doc = null; // Declare doc at method level
 
 		try {
@@ -43,6 +45,7 @@ public class SmartTextExtractor {
 			NodeList pages = doc.getElementsByTagName("page");
 			for (int i = 0; i < pages.getLength(); i++) {
 				Element page = (Element) pages.item(i);
+				scanned++;
 				if (page.hasAttribute("title")) {
 					elements.add(new TextElement(
 							elementId++,
@@ -56,6 +59,7 @@ public class SmartTextExtractor {
 			// 2. <preamble>
 			NodeList preambles = doc.getElementsByTagName("preamble");
 			for (int i = 0; i < preambles.getLength(); i++) {
+				scanned++;
 				String preText = preambles.item(i).getTextContent();
 				String searchString = "\\newcommand{\\prestitle}{";
 				int start = preText.indexOf(searchString);
@@ -78,7 +82,10 @@ public class SmartTextExtractor {
 			for (int i = 0; i < texts.getLength(); i++) {
 				Element txt = (Element) texts.item(i);
 				String raw = txt.getTextContent();
-				if (shouldKeep(raw)) {
+				scanned++;
+				if (!shouldKeep(raw)) {
+					skipped++;
+				} else {
 					String placeholder = "@PLACEHOLDER(" + elementId + ")@";
 					
 					TextElement element = new TextElement(
@@ -125,6 +132,12 @@ public class SmartTextExtractor {
 		result.setOriginalXml(xml);
 		result.setProcessedXml(createProcessedXml(doc));
 		result.setTextElements(elements);
+
+		ExtractionResult.ExtractionStats stats = result.getStats();
+		stats.setTotalElementsScanned(scanned);
+		stats.setElementsSkipped(skipped);
+		stats.setTranslatableFound(elements.size());
+		stats.calculateNoiseReduction();
 		return result;
 	}
 
@@ -0,0 +1,247 @@
+package com.translation.extraction;
+
+import com.google.inject.Singleton;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Checks restored IPE XML before it goes to ipetoipe. A broken translation
+ * otherwise shows up only after a full LaTeX run, and the LaTeX log does not
+ * say which segment broke it.
+ *
+ * <p>Translated segments are the escaped {@code @(id):text} lines of translation,
+ * where {@code \n} stands for a line break. Only segments with a placeholder in
+ * the structure XML end up in the document, so only those are checked. Every
+ * check compares a translated segment with the German original as it was in the
+ * IPE file, so constructs that were already unbalanced in the original (e.g. a
+ * group closed in the next text object) are not reported.
+ *
+ * <p>This runs inside the compile step rather than as a step of its own: a new
+ * step would renumber compilation, which moves the final PDFs to another
+ * directory and changes the {@code --from-step} numbers of existing scripts.
+ */
+@Singleton
+public class TranslationValidator {
+    private static final Pattern SEGMENT = Pattern.compile("^@\\((\\d+)\\):(.*)$", Pattern.DOTALL);
+    private static final Pattern PLACEHOLDER = Pattern.compile("@PLACEHOLDER\\((\\d+)\\)@");
+    // In an escaped segment this is either a command or a line break followed by a word
+    private static final Pattern N_COMMAND = Pattern.compile("\\\\(n[a-zA-Z]+)");
+    private static final Pattern BARE_AMPERSAND = Pattern.compile("&(?!(?:[a-zA-Z]+|#\\d+|#x[0-9a-fA-F]+);)");
+
+    private final SAXParserFactory parserFactory;
+
+    public TranslationValidator() {
+        parserFactory = SAXParserFactory.newInstance();
+        parserFactory.setNamespaceAware(false);
+        parserFactory.setValidating(false);
+        try {
+            parserFactory.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+        } catch (Exception e) {
+            throw new IllegalStateException("Cannot configure XML parser", e);
+        }
+    }
+
+    /**
+     * Validates the restored XML of one deck.
+     *
+     * @param structureXml the placeholdered XML the translation was restored into, {@code null} if unknown
+     * @param originalTexts German texts by segment id with real line breaks, {@code null} if unknown
+     * @param translatedSegments translated segments, {@code null} if unknown; without them
+     *                           only the whole document is checked
+     * @return the problems found, empty if the deck can be compiled
+     */
+    public List<Problem> validate(String structureXml, String restoredXml, Map<Integer, String> originalTexts,
+                                  List<String> translatedSegments) {
+        List<Problem> problems = new ArrayList<>();
+
+        Map<Integer, String> originals = originalTexts != null ? originalTexts : Map.of();
+        Map<Integer, String> translations = parseSegments(translatedSegments);
+        if (structureXml != null) {
+            translations.keySet().retainAll(placeholderIds(structureXml));
+        }
+        for (Map.Entry<Integer, String> entry : translations.entrySet()) {
+            checkSegment(entry.getKey(), originals.get(entry.getKey()), entry.getValue(), problems);
+        }
+
+        for (Integer id : placeholderIds(restoredXml)) {
+            problems.add(new Problem(id, "placeholder was not restored"));
+        }
+
+        String xmlError = checkWellFormed(restoredXml);
+        if (xmlError != null) {
+            problems.add(new Problem(null, "XML is not well-formed: " + xmlError));
+            // Restoration inserts the text as is, so markup characters in a segment are the usual cause
+            for (Map.Entry<Integer, String> entry : translations.entrySet()) {
+                if (entry.getValue().indexOf('<') >= 0) {
+                    problems.add(new Problem(entry.getKey(), "'<' is not escaped for XML"));
+                }
+                if (BARE_AMPERSAND.matcher(entry.getValue()).find()) {
+                    problems.add(new Problem(entry.getKey(), "'&' is not escaped for XML"));
+                }
+            }
+        }
+        return problems;
+    }
+
+    /**
+     * Reads the German texts from the escaped segments of text extraction. A line
+     * break and a command starting with {@code n} look the same there, so every
+     * {@code \n} is taken for a line break and no command is reported as corrupted.
+     */
+    public static Map<Integer, String> originalTexts(List<String> originalSegments) {
+        Map<Integer, String> originals = parseSegments(originalSegments);
+        originals.replaceAll((id, text) -> text.replace("\\n", "\n"));
+        return originals;
+    }
+
+    private static void checkSegment(int id, String original, String translated, List<Problem> problems) {
+        if (original == null) {
+            return;
+        }
+
+        // Only a command the original really used is meant as one; otherwise it is a line break before a word
+        Set<String> originalCommands = new LinkedHashSet<>();
+        Matcher command = N_COMMAND.matcher(original);
+        while (command.find()) {
+            originalCommands.add(command.group(1));
+        }
+        command = N_COMMAND.matcher(translated);
+        while (command.find()) {
+            if (originalCommands.contains(command.group(1))) {
+                problems.add(new Problem(id, "\\" + command.group(1) + " is turned into a line break by text restoration"));
+            }
+        }
+
+        int originalBraces = braceBalance(original);
+        int translatedBraces = braceBalance(translated);
+        if (originalBraces != translatedBraces) {
+            problems.add(new Problem(id, "unbalanced braces (" + describeBalance(translatedBraces)
+                                         + ", original " + describeBalance(originalBraces) + ")"));
+        }
+        if (mathDelimiters(original) % 2 != mathDelimiters(translated) % 2) {
+            problems.add(new Problem(id, "unbalanced $ (" + mathDelimiters(translated) + " in translation, "
+                                         + mathDelimiters(original) + " in original)"));
+        }
+    }
+
+    /**
+     * Opening minus closing braces, ignoring the escaped {@code \{} and {@code \}}.
+     */
+    private static int braceBalance(String text) {
+        int balance = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '{') {
+                balance++;
+            } else if (c == '}') {
+                balance--;
+            }
+        }
+        return balance;
+    }
+
+    private static String describeBalance(int balance) {
+        if (balance == 0) {
+            return "balanced";
+        }
+        return balance > 0 ? balance + " unclosed" : -balance + " extra closing";
+    }
+
+    /**
+     * Number of math delimiters, ignoring the escaped {@code \$}.
+     */
+    private static int mathDelimiters(String text) {
+        int count = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '$') {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private String checkWellFormed(String xml) {
+        try {
+            SAXParser parser = parserFactory.newSAXParser();
+            parser.parse(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)), new DefaultHandler());
+            return null;
+        } catch (SAXParseException e) {
+            return "line " + e.getLineNumber() + ", column " + e.getColumnNumber() + ": " + e.getMessage();
+        } catch (SAXException e) {
+            return e.getMessage();
+        } catch (Exception e) {
+            throw new IllegalStateException("Cannot parse restored XML", e);
+        }
+    }
+
+    private static Set<Integer> placeholderIds(String xml) {
+        Set<Integer> ids = new LinkedHashSet<>();
+        Matcher placeholder = PLACEHOLDER.matcher(xml);
+        while (placeholder.find()) {
+            ids.add(Integer.parseInt(placeholder.group(1)));
+        }
+        return ids;
+    }
+
+    private static Map<Integer, String> parseSegments(List<String> segments) {
+        Map<Integer, String> parsed = new LinkedHashMap<>();
+        if (segments == null) {
+            return parsed;
+        }
+        for (String segment : segments) {
+            Matcher matcher = SEGMENT.matcher(segment.trim());
+            if (matcher.matches()) {
+                parsed.put(Integer.parseInt(matcher.group(1)), matcher.group(2));
+            }
+        }
+        return parsed;
+    }
+
+    /**
+     * One reason why a deck would not compile.
+     */
+    public static class Problem {
+        private final Integer segmentId;
+        private final String message;
+
+        public Problem(Integer segmentId, String message) {
+            this.segmentId = segmentId;
+            this.message = message;
+        }
+
+        /**
+         * The segment at fault, {@code null} for problems of the whole document.
+         */
+        public Integer getSegmentId() {
+            return segmentId;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        @Override
+        public String toString() {
+            return segmentId != null ? "segment " + segmentId + ": " + message : message;
+        }
+    }
+}
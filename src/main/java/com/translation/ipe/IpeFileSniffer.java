@@ -0,0 +1,55 @@
+package com.translation.ipe;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Tells IPE decks from other PDFs without starting ipeextract. Ipe keeps its
+ * document in a stream with {@code /Type /Ipe}, and the PDF format never puts
+ * stream dictionaries into compressed object streams, so a PDF whose bytes
+ * contain no such dictionary cannot be an IPE file. The PDF is memory-mapped
+ * and only scanned, nothing is inflated.
+ */
+public class IpeFileSniffer {
+    private static final byte[] PDF_HEADER = "%PDF-".getBytes(StandardCharsets.US_ASCII);
+    // The header may follow some garbage, readers look for it in the first kilobyte
+    private static final int HEADER_WINDOW = 1024;
+
+    public enum Verdict {
+        IPE,
+        NOT_IPE,
+        /** Not a PDF this sniffer understands; ipeextract has to decide. */
+        UNKNOWN
+    }
+
+    public Verdict sniff(Path pdfFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(pdfFile, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size == 0 || size > Integer.MAX_VALUE) {
+                return Verdict.UNKNOWN;
+            }
+            ByteBuffer pdf = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (IpePdfExtractor.indexOf(pdf, PDF_HEADER, 0, (int) Math.min(size, HEADER_WINDOW)) < 0) {
+                return Verdict.UNKNOWN;
+            }
+            return hasIpeStream(pdf) ? Verdict.IPE : Verdict.NOT_IPE;
+        }
+    }
+
+    private static boolean hasIpeStream(ByteBuffer pdf) {
+        byte[] ipeType = IpePdfExtractor.IPE_TYPE;
+        int limit = pdf.limit();
+        for (int at = IpePdfExtractor.indexOf(pdf, ipeType, 0, limit); at >= 0;
+             at = IpePdfExtractor.indexOf(pdf, ipeType, at + 1, limit)) {
+            if (IpePdfExtractor.isTypeValue(pdf, at)
+                    && (at + ipeType.length == limit || IpePdfExtractor.isDelimiter(pdf.get(at + ipeType.length)))) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
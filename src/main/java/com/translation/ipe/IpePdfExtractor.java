@@ -0,0 +1,285 @@
+package com.translation.ipe;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads the IPE XML that Ipe embeds in the PDFs it writes, without starting
+ * ipeextract. Ipe stores the document in a stream object with {@code /Type /Ipe},
+ * usually Flate-compressed. The PDF is memory-mapped, the stream is found by its
+ * dictionary and inflated straight into the output file.
+ *
+ * <p>Anything unexpected, such as other filters or a stream inside an object
+ * stream, makes {@link #extract} return {@code false} so the caller can fall back
+ * to ipeextract.
+ */
+public class IpePdfExtractor {
+    private static final Logger logger = Logger.getLogger(IpePdfExtractor.class.getName());
+    static final byte[] IPE_TYPE = "/Ipe".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] TYPE_KEY = "/Type".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] STREAM = "stream".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] END_STREAM = "endstream".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] IPE_ROOT = "<ipe".getBytes(StandardCharsets.US_ASCII);
+    private static final Pattern LENGTH = Pattern.compile("/Length\\s+(\\d+)(\\s+\\d+\\s+R)?");
+    private static final Pattern FILTER = Pattern.compile("/Filter\\s*(\\[[^\\]]*\\]|/\\w+)");
+    private static final int MAX_DICTIONARY = 4096;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Writes the IPE XML of the PDF to the output file.
+     *
+     * @return whether the PDF had an IPE stream this extractor could read; if not,
+     *         the output file does not exist
+     * @throws IOException if the PDF could not be read or the output not written
+     */
+    public boolean extract(Path pdfFile, Path outputFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(pdfFile, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size == 0 || size > Integer.MAX_VALUE) {
+                return false;
+            }
+            MappedByteBuffer pdf = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+            IpeStream stream = findIpeStream(pdf);
+            if (stream == null) {
+                logger.fine("No IPE stream found in " + pdfFile.getFileName());
+                return false;
+            }
+            boolean written;
+            try (OutputStream out = Files.newOutputStream(outputFile)) {
+                written = stream.compressed ? inflate(stream.data, out) : copy(stream.data, out);
+            }
+            if (!written) {
+                Files.deleteIfExists(outputFile);
+                logger.fine("IPE stream of " + pdfFile.getFileName() + " could not be decoded");
+            }
+            return written;
+        } catch (IOException e) {
+            Files.deleteIfExists(outputFile);
+            throw e;
+        }
+    }
+
+    /**
+     * Locates the data of the first stream whose dictionary has {@code /Type /Ipe}.
+     */
+    private static IpeStream findIpeStream(ByteBuffer pdf) {
+        int limit = pdf.limit();
+        for (int at = indexOf(pdf, IPE_TYPE, 0, limit); at >= 0; at = indexOf(pdf, IPE_TYPE, at + 1, limit)) {
+            if (!isTypeValue(pdf, at) || (at + IPE_TYPE.length < limit && !isDelimiter(pdf.get(at + IPE_TYPE.length)))) {
+                continue;
+            }
+            int dictionaryStart = dictionaryStart(pdf, at);
+            int dictionaryEnd = dictionaryStart >= 0 ? dictionaryEnd(pdf, dictionaryStart) : -1;
+            if (dictionaryEnd < 0) {
+                continue;
+            }
+            int dataStart = streamStart(pdf, dictionaryEnd);
+            if (dataStart < 0) {
+                continue;
+            }
+            return describeStream(pdf, ascii(pdf, dictionaryStart, dictionaryEnd), dataStart);
+        }
+        return null;
+    }
+
+    private static IpeStream describeStream(ByteBuffer pdf, String dictionary, int dataStart) {
+        boolean compressed = false;
+        Matcher filter = FILTER.matcher(dictionary);
+        if (filter.find()) {
+            String filters = filter.group(1).replaceAll("[\\[\\]\\s]", "");
+            if (!"/FlateDecode".equals(filters)) {
+                return null; // e.g. ASCII85 on top of Flate, left to ipeextract
+            }
+            compressed = true;
+        }
+
+        int dataEnd = -1;
+        Matcher length = LENGTH.matcher(dictionary);
+        if (length.find() && length.group(2) == null) {
+            long declared = Long.parseLong(length.group(1));
+            if (dataStart + declared <= pdf.limit()) {
+                dataEnd = (int) (dataStart + declared);
+            }
+        }
+        if (dataEnd < 0) {
+            // Indirect or broken length: the data ends before the endstream keyword
+            dataEnd = indexOf(pdf, END_STREAM, dataStart, pdf.limit());
+            if (dataEnd < 0) {
+                return null;
+            }
+        }
+        return new IpeStream(pdf.slice(dataStart, dataEnd - dataStart), compressed);
+    }
+
+    private static boolean inflate(ByteBuffer data, OutputStream out) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            boolean checked = false;
+            while (!inflater.finished()) {
+                int inflated = inflater.inflate(buffer);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    return false; // truncated stream
+                }
+                if (!checked && inflated > 0) {
+                    if (!looksLikeIpeXml(buffer, inflated)) {
+                        return false;
+                    }
+                    checked = true;
+                }
+                out.write(buffer, 0, inflated);
+            }
+            return checked;
+        } catch (DataFormatException e) {
+            return false;
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static boolean copy(ByteBuffer data, OutputStream out) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        boolean checked = false;
+        while (data.hasRemaining()) {
+            int chunk = Math.min(buffer.length, data.remaining());
+            data.get(buffer, 0, chunk);
+            if (!checked) {
+                if (!looksLikeIpeXml(buffer, chunk)) {
+                    return false;
+                }
+                checked = true;
+            }
+            out.write(buffer, 0, chunk);
+        }
+        return checked;
+    }
+
+    /**
+     * Whether the start of the decoded stream contains the {@code <ipe} root element.
+     */
+    private static boolean looksLikeIpeXml(byte[] start, int length) {
+        return indexOf(ByteBuffer.wrap(start, 0, Math.min(length, 1024)), IPE_ROOT, 0, Math.min(length, 1024)) >= 0;
+    }
+
+    /**
+     * Whether {@code /Ipe} at the given position is the value of a {@code /Type} key.
+     */
+    static boolean isTypeValue(ByteBuffer pdf, int at) {
+        int position = at - 1;
+        while (position >= 0 && isWhitespace(pdf.get(position))) {
+            position--;
+        }
+        int keyStart = position - TYPE_KEY.length + 1;
+        return keyStart >= 0 && indexOf(pdf, TYPE_KEY, keyStart, position + 1) == keyStart;
+    }
+
+    private static int dictionaryStart(ByteBuffer pdf, int at) {
+        int depth = 0;
+        for (int position = at - 1; position > 0 && at - position < MAX_DICTIONARY; position--) {
+            if (pdf.get(position) == '>' && pdf.get(position - 1) == '>') {
+                depth++;
+                position--;
+            } else if (pdf.get(position) == '<' && pdf.get(position - 1) == '<') {
+                if (depth == 0) {
+                    return position - 1;
+                }
+                depth--;
+                position--;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Position just after the {@code >>} closing the dictionary opened at the given position.
+     */
+    private static int dictionaryEnd(ByteBuffer pdf, int start) {
+        int depth = 0;
+        int end = Math.min(pdf.limit() - 1, start + MAX_DICTIONARY);
+        for (int position = start; position < end; position++) {
+            if (pdf.get(position) == '<' && pdf.get(position + 1) == '<') {
+                depth++;
+                position++;
+            } else if (pdf.get(position) == '>' && pdf.get(position + 1) == '>') {
+                if (--depth == 0) {
+                    return position + 2;
+                }
+                position++;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Position of the first data byte if the dictionary is followed by {@code stream} and an end of line.
+     */
+    private static int streamStart(ByteBuffer pdf, int dictionaryEnd) {
+        int position = dictionaryEnd;
+        while (position < pdf.limit() && isWhitespace(pdf.get(position))) {
+            position++;
+        }
+        if (indexOf(pdf, STREAM, position, Math.min(pdf.limit(), position + STREAM.length)) != position) {
+            return -1;
+        }
+        position += STREAM.length;
+        if (position < pdf.limit() && pdf.get(position) == '\r') {
+            position++;
+        }
+        if (position < pdf.limit() && pdf.get(position) == '\n') {
+            position++;
+        }
+        return position;
+    }
+
+    static int indexOf(ByteBuffer buffer, byte[] pattern, int from, int to) {
+        int last = to - pattern.length;
+        outer:
+        for (int position = from; position <= last; position++) {
+            for (int i = 0; i < pattern.length; i++) {
+                if (buffer.get(position + i) != pattern[i]) {
+                    continue outer;
+                }
+            }
+            return position;
+        }
+        return -1;
+    }
+
+    private static String ascii(ByteBuffer buffer, int from, int to) {
+        byte[] bytes = new byte[to - from];
+        buffer.get(from, bytes);
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t' || b == '\f' || b == 0;
+    }
+
+    static boolean isDelimiter(byte b) {
+        return isWhitespace(b) || b == '/' || b == '>' || b == '<' || b == '[' || b == '(';
+    }
+
+    private static final class IpeStream {
+        private final ByteBuffer data;
+        private final boolean compressed;
+
+        private IpeStream(ByteBuffer data, boolean compressed) {
+            this.data = data;
+            this.compressed = compressed;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.translation.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event spanning one DeepL batch request including rate-limit retries.
+ */
+@Name("com.translation.DeepLBatch")
+@Label("DeepL Batch Request")
+@Category({"IPE Translation", "Translation"})
+@Description("One batch translation request to DeepL")
+@StackTrace(false)
+public class DeepLBatchEvent extends jdk.jfr.Event {
+    @Label("File")
+    public String file;
+
+    @Label("Segments")
+    public int segments;
+
+    @Label("Characters")
+    @DataAmount(DataAmount.BYTES)
+    public long characters;
+
+    @Label("Retries")
+    public int retries;
+
+    @Label("Outcome")
+    public String outcome;
+}
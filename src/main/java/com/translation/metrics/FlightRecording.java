@@ -0,0 +1,59 @@
+package com.translation.metrics;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.util.logging.Logger;
+
+/**
+ * JDK Flight Recorder recording of a whole run ({@code --record}). Uses the
+ * built-in "profile" settings and enables the pipeline's own events so step,
+ * process and DeepL activity can be correlated with GC and CPU samples.
+ */
+public class FlightRecording {
+    private static final Logger logger = Logger.getLogger(FlightRecording.class.getName());
+
+    private final Recording recording;
+    private final Path destination;
+
+    private FlightRecording(Recording recording, Path destination) {
+        this.recording = recording;
+        this.destination = destination;
+    }
+
+    public static FlightRecording start(Path destination) throws IOException {
+        Recording recording;
+        try {
+            recording = new Recording(Configuration.getConfiguration("profile"));
+        } catch (ParseException e) {
+            throw new IOException("Failed to load JFR profile configuration", e);
+        }
+        recording.setName("ipe-translation-pipeline");
+        recording.enable(StepEvent.class);
+        recording.enable(ProcessEvent.class);
+        recording.enable(DeepLBatchEvent.class);
+        recording.start();
+
+        logger.info("Flight recording started, will be written to " + destination.toAbsolutePath());
+        return new FlightRecording(recording, destination);
+    }
+
+    public void stop() {
+        try {
+            if (destination.getParent() != null) {
+                Files.createDirectories(destination.getParent());
+            }
+            recording.stop();
+            recording.dump(destination);
+            logger.info("Flight recording written to " + destination.toAbsolutePath());
+        } catch (IOException e) {
+            logger.warning("Failed to write flight recording: " + e.getMessage());
+        } finally {
+            recording.close();
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.translation.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Latency distribution of one step across all files of a run: summary
+ * percentiles plus counts per fixed bucket, so reports of different runs
+ * can be compared directly.
+ */
+public class LatencyHistogram {
+    private static final long[] BUCKET_BOUNDS_MILLIS = {
+        10, 50, 100, 250, 500, 1_000, 2_500, 5_000, 10_000, 30_000, 60_000, 120_000
+    };
+
+    private final List<Long> samples = new ArrayList<>();
+
+    public void add(long millis) {
+        samples.add(millis);
+    }
+
+    public int getCount() {
+        return samples.size();
+    }
+
+    public long getTotal() {
+        long total = 0;
+        for (long sample : samples) {
+            total += sample;
+        }
+        return total;
+    }
+
+    public long getMin() {
+        return samples.isEmpty() ? 0 : Collections.min(samples);
+    }
+
+    public long getMax() {
+        return samples.isEmpty() ? 0 : Collections.max(samples);
+    }
+
+    public double getMean() {
+        return samples.isEmpty() ? 0 : (double) getTotal() / samples.size();
+    }
+
+    public long getP50() {
+        return percentile(50);
+    }
+
+    public long getP90() {
+        return percentile(90);
+    }
+
+    public long getP99() {
+        return percentile(99);
+    }
+
+    /**
+     * Counts per bucket, keyed by the bucket's upper bound (e.g. {@code "<=500ms"}).
+     */
+    public Map<String, Integer> getBuckets() {
+        Map<String, Integer> buckets = new LinkedHashMap<>();
+        for (long bound : BUCKET_BOUNDS_MILLIS) {
+            buckets.put("<=" + bound + "ms", 0);
+        }
+        String overflow = ">" + BUCKET_BOUNDS_MILLIS[BUCKET_BOUNDS_MILLIS.length - 1] + "ms";
+        buckets.put(overflow, 0);
+
+        for (long sample : samples) {
+            String key = overflow;
+            for (long bound : BUCKET_BOUNDS_MILLIS) {
+                if (sample <= bound) {
+                    key = "<=" + bound + "ms";
+                    break;
+                }
+            }
+            buckets.merge(key, 1, Integer::sum);
+        }
+        return buckets;
+    }
+
+    private long percentile(int percent) {
+        if (samples.isEmpty()) {
+            return 0;
+        }
+        List<Long> sorted = new ArrayList<>(samples);
+        Collections.sort(sorted);
+        int index = (int) Math.ceil(percent / 100.0 * sorted.size()) - 1;
+        return sorted.get(Math.max(0, Math.min(index, sorted.size() - 1)));
+    }
+}
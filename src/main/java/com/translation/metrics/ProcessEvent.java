@@ -0,0 +1,55 @@
+package com.translation.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * JFR event spanning an external tool invocation, from the request to exit. The
+ * time spent waiting for room in the process pool is part of the duration.
+ */
+@Name("com.translation.ExternalProcess")
+@Label("External Process")
+@Category({"IPE Translation", "Processes"})
+@Description("Spawn and exit of an external IPE tool")
+@StackTrace(false)
+public class ProcessEvent extends jdk.jfr.Event {
+    @Label("Tool")
+    public String tool;
+
+    @Label("File")
+    public String file;
+
+    @Label("Process Id")
+    public long pid;
+
+    @Label("Exit Code")
+    public int exitCode;
+
+    @Label("Outcome")
+    public String outcome;
+
+    @Label("Queue Time")
+    @Timespan(Timespan.MILLISECONDS)
+    public long queueTime;
+
+    @Label("Queue Depth")
+    @Description("Launches waiting in the process pool when this one was requested")
+    public int queueDepth;
+
+    @Label("Active Processes")
+    @Description("Processes running in the pool when this one started, including itself")
+    public int activeProcesses;
+
+    @Label("Input Size")
+    @DataAmount
+    public long inputSize;
+
+    @Label("Output Size")
+    @DataAmount
+    public long outputSize;
+}
@@ -0,0 +1,260 @@
+package com.translation.metrics;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.translation.pipeline.FileOutcome;
+import com.translation.pipeline.PipelineSummary;
+import com.translation.pipeline.WorkArea;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Collects per-file, per-step measurements of a pipeline run and writes them as
+ * a machine-readable report to {@code .work/run-report.json}. A timestamped copy
+ * is kept in {@code .work/reports/} so runs can be compared over time.
+ *
+ * <p>Runs with an id, i.e. daemon jobs that may share one work area, only get
+ * their own {@code reports/run-<timestamp>-<id>.json}; {@code run-report.json}
+ * stays the report of the last complete run.
+ */
+@Singleton
+public class RunMetrics {
+    private static final Logger logger = Logger.getLogger(RunMetrics.class.getName());
+    public static final String REPORT_FILE = "run-report.json";
+    private static final String REPORTS_DIR = "reports";
+
+    private final List<StepRecord> records = new CopyOnWriteArrayList<>();
+    private final Map<String, StepRecord> active = new ConcurrentHashMap<>();
+    private final Map<String, Object> runAttributes = new ConcurrentHashMap<>();
+    private final ObjectMapper objectMapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+    private final AtomicLong firstStepAt = new AtomicLong();
+    private final File workDir;
+
+    @Inject
+    public RunMetrics(WorkArea workArea) {
+        this.workDir = workArea.getWorkRoot().toFile();
+    }
+
+    /**
+     * Discards earlier measurements of the given files, e.g. before they are run again.
+     */
+    public void forgetFiles(Collection<String> fileNames) {
+        Set<String> forgotten = new HashSet<>(fileNames);
+        records.removeIf(record -> forgotten.contains(record.getFile()));
+    }
+
+    /**
+     * Adds a run-level value to the report, e.g. the execution mode.
+     */
+    public void setRunAttribute(String name, Object value) {
+        runAttributes.put(name, value);
+    }
+
+    public StepRecord startStep(String fileName, int order, String stepName) {
+        if (firstStepAt.compareAndSet(0, System.currentTimeMillis())) {
+            getTimeToFirstStep().ifPresent(millis ->
+                    logger.info("First pipeline step started " + millis + "ms after JVM start"));
+        }
+        StepRecord record = new StepRecord(fileName, order, stepName);
+        active.put(key(fileName, order), record);
+        records.add(record);
+        return record;
+    }
+
+    public void finishStep(StepRecord record, StepRecord.Status status, long bytesIn, long bytesOut) {
+        record.finish(status, bytesIn, bytesOut);
+        active.remove(key(record.getFile(), record.getOrder()));
+    }
+
+    /**
+     * Adds to a step-specific counter (e.g. extracted segments) of the running step.
+     */
+    public void addCounter(String fileName, int order, String name, long value) {
+        StepRecord record = active.get(key(fileName, order));
+        if (record != null) {
+            record.addCounter(name, value);
+        }
+    }
+
+    /**
+     * Time from JVM start to the first step of the process, which dominates short
+     * single-deck runs; empty until a step has started.
+     */
+    public Optional<Long> getTimeToFirstStep() {
+        long firstStep = firstStepAt.get();
+        if (firstStep == 0) {
+            return Optional.empty();
+        }
+        return ProcessHandle.current().info().startInstant()
+                            .map(jvmStart -> firstStep - jvmStart.toEpochMilli());
+    }
+
+    public List<StepRecord> getRecords() {
+        return new ArrayList<>(records);
+    }
+
+    /**
+     * Writes the report of a run and returns the file, {@code runId} may be {@code null}.
+     */
+    public File writeReport(PipelineSummary summary, String runId) throws IOException {
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("startedAt", Instant.ofEpochMilli(summary.getStartedAt()).toString());
+        report.put("durationMillis", summary.getDurationMillis());
+        Map<String, Object> run = new TreeMap<>(runAttributes);
+        getTimeToFirstStep().ifPresent(millis -> run.put("timeToFirstStepMillis", millis));
+        if (runId != null) {
+            run.put("id", runId);
+        }
+        report.put("run", run);
+
+        Map<String, Object> totals = new LinkedHashMap<>();
+        totals.put("files", summary.getTotalCount());
+        totals.put("succeeded", summary.getSucceededCount());
+        totals.put("failed", summary.getTotalCount() - summary.getSucceededCount());
+        report.put("totals", totals);
+
+        report.put("steps", buildStepReport(summary));
+        report.put("files", buildFileReport(summary));
+
+        File reportFile = new File(workDir, REPORT_FILE);
+        File reportsDir = new File(workDir, REPORTS_DIR);
+        reportsDir.mkdirs();
+
+        String timestamp = new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date(summary.getStartedAt()));
+        File archived = new File(reportsDir, "run-" + timestamp + (runId != null ? "-" + runId : "") + ".json");
+        objectMapper.writeValue(archived, report);
+        if (runId != null) {
+            // Concurrent runs would overwrite each other's report
+            logger.info("Run report written to " + archived.getAbsolutePath());
+            return archived;
+        }
+        Files.copy(archived.toPath(), reportFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+        logger.info("Run report written to " + reportFile.getAbsolutePath());
+        return reportFile;
+    }
+
+    /**
+     * Wall-clock time per successfully processed file according to the report of
+     * the previous run, or an empty map if there is none.
+     */
+    public Map<String, Long> readPreviousFileDurations() {
+        Map<String, Long> durations = new HashMap<>();
+        File reportFile = new File(workDir, REPORT_FILE);
+        if (!reportFile.exists()) {
+            return durations;
+        }
+
+        try {
+            for (JsonNode file : objectMapper.readTree(reportFile).path("files")) {
+                if (FileOutcome.Status.COMPLETED.name().equals(file.path("status").asText())) {
+                    durations.put(file.path("file").asText(), file.path("durationMillis").asLong());
+                }
+            }
+        } catch (IOException e) {
+            logger.warning("Failed to read previous run report: " + e.getMessage());
+        }
+        return durations;
+    }
+
+    private List<Map<String, Object>> buildStepReport(PipelineSummary summary) {
+        Set<String> files = new HashSet<>();
+        for (FileOutcome outcome : summary.getOutcomes()) {
+            files.add(outcome.getFileName());
+        }
+
+        Map<Integer, List<StepRecord>> byStep = new TreeMap<>();
+        for (StepRecord record : records) {
+            if (!files.contains(record.getFile())) {
+                continue; // belongs to another run
+            }
+            byStep.computeIfAbsent(record.getOrder(), order -> new ArrayList<>()).add(record);
+        }
+
+        List<Map<String, Object>> steps = new ArrayList<>();
+        for (List<StepRecord> stepRecords : byStep.values()) {
+            LatencyHistogram latency = new LatencyHistogram();
+            Map<String, Long> statusCounts = new TreeMap<>();
+            Map<String, Long> counters = new TreeMap<>();
+            long bytesIn = 0;
+            long bytesOut = 0;
+
+            for (StepRecord record : stepRecords) {
+                statusCounts.merge(record.getStatus().name(), 1L, Long::sum);
+                // Cached steps did no work and would distort the latency distribution
+                if (record.getStatus() == StepRecord.Status.COMPLETED || record.getStatus() == StepRecord.Status.FAILED) {
+                    latency.add(record.getWallMillis());
+                }
+                bytesIn += record.getBytesIn();
+                bytesOut += record.getBytesOut();
+                record.getCounters().forEach((name, value) -> counters.merge(name, value, Long::sum));
+            }
+
+            Map<String, Object> step = new LinkedHashMap<>();
+            step.put("order", stepRecords.get(0).getOrder());
+            step.put("step", stepRecords.get(0).getStep());
+            step.put("statuses", statusCounts);
+            step.put("bytesIn", bytesIn);
+            step.put("bytesOut", bytesOut);
+            step.put("counters", counters);
+            step.put("latency", latency);
+            steps.add(step);
+        }
+        return steps;
+    }
+
+    private List<Map<String, Object>> buildFileReport(PipelineSummary summary) {
+        Map<String, List<StepRecord>> byFile = new TreeMap<>();
+        for (StepRecord record : records) {
+            byFile.computeIfAbsent(record.getFile(), file -> new ArrayList<>()).add(record);
+        }
+
+        List<Map<String, Object>> files = new ArrayList<>();
+        List<FileOutcome> outcomes = summary.getOutcomes();
+        outcomes.sort(Comparator.comparing(FileOutcome::getFileName));
+        for (FileOutcome outcome : outcomes) {
+            List<StepRecord> fileRecords = byFile.getOrDefault(outcome.getFileName(), new ArrayList<>());
+            fileRecords.sort(Comparator.comparingInt(StepRecord::getOrder));
+
+            Map<String, Object> file = new LinkedHashMap<>();
+            file.put("file", outcome.getFileName());
+            file.put("status", outcome.getStatus().name());
+            file.put("durationMillis", outcome.getDurationMillis());
+            if (!outcome.isSuccessful()) {
+                file.put("failedStep", outcome.getFailedStep());
+                file.put("message", outcome.getMessage());
+            }
+            file.put("steps", fileRecords);
+            files.add(file);
+        }
+        return files;
+    }
+
+    private static String key(String fileName, int order) {
+        return fileName + "#" + order;
+    }
+}
@@ -0,0 +1,39 @@
+package com.translation.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event spanning the execution of one pipeline step for one file.
+ */
+@Name("com.translation.PipelineStep")
+@Label("Pipeline Step")
+@Category({"IPE Translation", "Pipeline"})
+@Description("Execution of one pipeline step for one file")
+@StackTrace(false)
+public class StepEvent extends jdk.jfr.Event {
+    @Label("File")
+    public String file;
+
+    @Label("Step")
+    public String step;
+
+    @Label("Order")
+    public int order;
+
+    @Label("Outcome")
+    @Description("completed, cached, skipped or failed")
+    public String outcome;
+
+    @Label("Bytes In")
+    @DataAmount
+    public long bytesIn;
+
+    @Label("Bytes Out")
+    @DataAmount
+    public long bytesOut;
+}
@@ -0,0 +1,77 @@
+package com.translation.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Measurements of one step for one file.
+ */
+public class StepRecord {
+    public enum Status {
+        RUNNING,
+        COMPLETED,
+        CACHED,
+        SKIPPED,
+        FAILED
+    }
+
+    private final String file;
+    private final int order;
+    private final String step;
+    private final long startNanos;
+    private Status status = Status.RUNNING;
+    private long wallMillis;
+    private long bytesIn;
+    private long bytesOut;
+    private final Map<String, Long> counters = new TreeMap<>();
+
+    StepRecord(String file, int order, String step) {
+        this.file = file;
+        this.order = order;
+        this.step = step;
+        this.startNanos = System.nanoTime();
+    }
+
+    synchronized void finish(Status status, long bytesIn, long bytesOut) {
+        this.status = status;
+        this.bytesIn = bytesIn;
+        this.bytesOut = bytesOut;
+        this.wallMillis = (System.nanoTime() - startNanos) / 1_000_000;
+    }
+
+    synchronized void addCounter(String name, long value) {
+        counters.merge(name, value, Long::sum);
+    }
+
+    public String getFile() {
+        return file;
+    }
+
+    public int getOrder() {
+        return order;
+    }
+
+    public String getStep() {
+        return step;
+    }
+
+    public synchronized Status getStatus() {
+        return status;
+    }
+
+    public synchronized long getWallMillis() {
+        return wallMillis;
+    }
+
+    public synchronized long getBytesIn() {
+        return bytesIn;
+    }
+
+    public synchronized long getBytesOut() {
+        return bytesOut;
+    }
+
+    public synchronized Map<String, Long> getCounters() {
+        return new TreeMap<>(counters);
+    }
+}
@@ -0,0 +1,26 @@
+package com.translation.pipeline;
+
+/**
+ * Typed key for an artifact handed from one pipeline step to the next
+ * through a {@link FileContext}.
+ */
+public final class ArtifactKey<T> {
+    private final String name;
+
+    private ArtifactKey(String name) {
+        this.name = name;
+    }
+
+    public static <T> ArtifactKey<T> of(String name) {
+        return new ArtifactKey<>(name);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
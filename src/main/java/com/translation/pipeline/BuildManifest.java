@@ -0,0 +1,141 @@
+package com.translation.pipeline;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.translation.config.PipelineOptions;
+import com.translation.util.ContentHasher;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+
+/**
+ * Incremental build cache for pipeline steps. For every step and file it
+ * records a hash of the step's inputs, the step version and a hash of the
+ * produced outputs in {@code .work/manifest/step-N.json}. A step whose inputs
+ * and version are unchanged and whose outputs are still intact can be skipped.
+ */
+@Singleton
+public class BuildManifest {
+    private static final Logger logger = Logger.getLogger(BuildManifest.class.getName());
+    private static final String MANIFEST_DIR = "manifest";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<Integer, Map<String, Entry>> manifests = new HashMap<>();
+    private final boolean enabled;
+    private final Path manifestDirectory;
+
+    @Inject
+    public BuildManifest(PipelineOptions options, WorkArea workArea) {
+        this.manifestDirectory = workArea.getWorkRoot().resolve(MANIFEST_DIR);
+        // Without persisted intermediates the files on disk may be stale, so they cannot be trusted as inputs;
+        // a work area that does not outlive the run has nothing to reuse
+        this.enabled = options.isIncremental() && options.isPersistIntermediates() && workArea.isPersistent();
+        if (!enabled) {
+            logger.info("Incremental build cache disabled, all steps will run");
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return the hash of all inputs, or {@code null} if caching does not apply
+     *         (disabled, no declared inputs, or an input is missing)
+     */
+    public String hashInputs(String stepVersion, List<Path> inputs) throws IOException {
+        if (!enabled || inputs.isEmpty()) {
+            return null;
+        }
+        return ContentHasher.hashFiles(stepVersion, inputs);
+    }
+
+    public synchronized boolean isUpToDate(int stepOrder, String fileName, String stepVersion,
+                                           String inputsHash, List<Path> outputs) throws IOException {
+        if (inputsHash == null || outputs.isEmpty()) {
+            return false;
+        }
+        Entry entry = load(stepOrder).get(fileName);
+        if (entry == null || !stepVersion.equals(entry.version) || !inputsHash.equals(entry.inputsHash)) {
+            return false;
+        }
+        // Outputs may have been deleted or edited by hand since they were recorded
+        return entry.outputsHash != null && entry.outputsHash.equals(ContentHasher.hashFiles(stepVersion, outputs));
+    }
+
+    public synchronized void record(int stepOrder, String fileName, String stepVersion,
+                                    String inputsHash, List<Path> outputs) throws IOException {
+        if (inputsHash == null || outputs.isEmpty()) {
+            return;
+        }
+        String outputsHash = ContentHasher.hashFiles(stepVersion, outputs);
+        if (outputsHash == null) {
+            logger.fine("Not recording step " + stepOrder + " for " + fileName + ": outputs missing");
+            return;
+        }
+        Entry entry = new Entry();
+        entry.version = stepVersion;
+        entry.inputsHash = inputsHash;
+        entry.outputsHash = outputsHash;
+        entry.recordedAt = System.currentTimeMillis();
+        load(stepOrder).put(fileName, entry);
+        save(stepOrder);
+    }
+
+    public synchronized void invalidate(int stepOrder, String fileName) throws IOException {
+        if (!enabled) {
+            return;
+        }
+        if (load(stepOrder).remove(fileName) != null) {
+            save(stepOrder);
+        }
+    }
+
+    private Map<String, Entry> load(int stepOrder) throws IOException {
+        Map<String, Entry> manifest = manifests.get(stepOrder);
+        if (manifest == null) {
+            File file = manifestFile(stepOrder);
+            manifest = new TreeMap<>();
+            if (file.exists()) {
+                try {
+                    manifest.putAll(objectMapper.readValue(file, new TypeReference<Map<String, Entry>>() {}));
+                } catch (IOException e) {
+                    logger.warning("Ignoring unreadable manifest " + file.getAbsolutePath() + ": " + e.getMessage());
+                }
+            }
+            manifests.put(stepOrder, manifest);
+        }
+        return manifest;
+    }
+
+    private void save(int stepOrder) throws IOException {
+        File file = manifestFile(stepOrder);
+        file.getParentFile().mkdirs();
+        // Write to a temporary file first so a crash never leaves a truncated manifest behind;
+        // the name is unique because several workers of a work queue may share .work
+        Path temp = Files.createTempFile(file.getParentFile().toPath(), file.getName() + ".", ".tmp");
+        objectMapper.writerWithDefaultPrettyPrinter().writeValue(temp.toFile(), manifests.get(stepOrder));
+        Files.move(temp, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private File manifestFile(int stepOrder) {
+        return manifestDirectory.resolve("step-" + stepOrder + ".json").toFile();
+    }
+
+    public static class Entry {
+        public String version;
+        public String inputsHash;
+        public String outputsHash;
+        public long recordedAt;
+    }
+}
@@ -0,0 +1,60 @@
+package com.translation.pipeline;
+
+import com.translation.util.CancellationToken;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-process state of one file while it moves through the pipeline. Steps put
+ * their results here so the next step can use them without reading them back
+ * from {@code .work/step-N}. Artifacts are absent when a step was skipped or
+ * the file was resumed, in which case steps fall back to the files on disk.
+ */
+public class FileContext {
+    private final String fileName;
+    private final Map<ArtifactKey<?>, Object> artifacts = new ConcurrentHashMap<>();
+    private volatile CancellationToken cancellationToken;
+
+    public FileContext(String fileName) {
+        this(fileName, CancellationToken.NONE);
+    }
+
+    public FileContext(String fileName, CancellationToken cancellationToken) {
+        this.fileName = fileName;
+        this.cancellationToken = cancellationToken;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    /**
+     * Token to pass on to subprocesses and requests; while a step runs, this is
+     * the token of the current attempt, which is cancelled when it times out.
+     */
+    public CancellationToken getCancellationToken() {
+        return cancellationToken;
+    }
+
+    public void setCancellationToken(CancellationToken cancellationToken) {
+        this.cancellationToken = cancellationToken;
+    }
+
+    public <T> void put(ArtifactKey<T> key, T value) {
+        if (value == null) {
+            artifacts.remove(key);
+        } else {
+            artifacts.put(key, value);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T get(ArtifactKey<T> key) {
+        return (T) artifacts.get(key);
+    }
+
+    public boolean has(ArtifactKey<?> key) {
+        return artifacts.containsKey(key);
+    }
+}
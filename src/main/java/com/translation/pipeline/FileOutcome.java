@@ -0,0 +1,72 @@
+package com.translation.pipeline;
+
+/**
+ * Result of pushing a single file through the pipeline steps.
+ */
+public class FileOutcome {
+    public enum Status {
+        COMPLETED,
+        FAILED
+    }
+
+    private final String fileName;
+    private final Status status;
+    private final int stepsCompleted;
+    private final String failedStep;
+    private final String message;
+    private final long durationMillis;
+
+    private FileOutcome(String fileName, Status status, int stepsCompleted, String failedStep, String message, long durationMillis) {
+        this.fileName = fileName;
+        this.status = status;
+        this.stepsCompleted = stepsCompleted;
+        this.failedStep = failedStep;
+        this.message = message;
+        this.durationMillis = durationMillis;
+    }
+
+    public static FileOutcome completed(String fileName, int stepsCompleted, long durationMillis) {
+        return new FileOutcome(fileName, Status.COMPLETED, stepsCompleted, null, null, durationMillis);
+    }
+
+    public static FileOutcome failed(String fileName, int stepsCompleted, String failedStep, String message, long durationMillis) {
+        return new FileOutcome(fileName, Status.FAILED, stepsCompleted, failedStep, message, durationMillis);
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public boolean isSuccessful() {
+        return status == Status.COMPLETED;
+    }
+
+    public int getStepsCompleted() {
+        return stepsCompleted;
+    }
+
+    public String getFailedStep() {
+        return failedStep;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    @Override
+    public String toString() {
+        if (isSuccessful()) {
+            return fileName + ": completed " + stepsCompleted + " steps in " + durationMillis + "ms";
+        }
+        return fileName + ": failed at " + failedStep + " after " + stepsCompleted + " steps"
+                + (message != null ? " (" + message + ")" : "");
+    }
+}
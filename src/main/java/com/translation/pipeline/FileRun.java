@@ -0,0 +1,53 @@
+package com.translation.pipeline;
+
+import com.translation.util.CancellationToken;
+
+/**
+ * Progress of one file through a pipeline run.
+ */
+class FileRun {
+    private final String fileName;
+    private final FileContext context;
+    private final long startedAt;
+    private int stepIndex;
+    private int stepsCompleted;
+
+    FileRun(String fileName, int stepIndex, CancellationToken cancellationToken) {
+        this.fileName = fileName;
+        this.context = new FileContext(fileName, cancellationToken);
+        this.startedAt = System.currentTimeMillis();
+        this.stepIndex = stepIndex;
+    }
+
+    String getFileName() {
+        return fileName;
+    }
+
+    FileContext getContext() {
+        return context;
+    }
+
+    int getStepIndex() {
+        return stepIndex;
+    }
+
+    /**
+     * Records that the current step succeeded and moves on to the next one.
+     */
+    void advance() {
+        stepIndex++;
+        stepsCompleted++;
+    }
+
+    FileOutcome completed() {
+        return FileOutcome.completed(fileName, stepsCompleted, elapsed());
+    }
+
+    FileOutcome failed(String stepName, String message) {
+        return FileOutcome.failed(fileName, stepsCompleted, stepName, message, elapsed());
+    }
+
+    private long elapsed() {
+        return System.currentTimeMillis() - startedAt;
+    }
+}
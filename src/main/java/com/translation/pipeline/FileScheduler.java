@@ -0,0 +1,127 @@
+package com.translation.pipeline;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.translation.metrics.RunMetrics;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Orders files longest-processing-time first, so that when files run concurrently
+ * the large decks start early instead of dominating the end of the run.
+ *
+ * <p>The cost of a file is estimated from, in order of preference, its duration in
+ * the previous run report, its segment count from a previous extraction and the
+ * size of its PDF. Segment counts and sizes are converted to milliseconds using
+ * the files that have a recorded duration; without any history, files are ranked
+ * by PDF size alone.
+ */
+@Singleton
+public class FileScheduler {
+    private static final Logger logger = Logger.getLogger(FileScheduler.class.getName());
+    private static final int SOURCE_STEP = 0;
+    private static final int SEGMENTS_STEP = 2;
+
+    private final RunMetrics metrics;
+    private final WorkArea workArea;
+
+    @Inject
+    public FileScheduler(RunMetrics metrics, WorkArea workArea) {
+        this.metrics = metrics;
+        this.workArea = workArea;
+    }
+
+    /**
+     * Returns the files sorted by descending estimated cost; ties keep name order.
+     */
+    public String[] order(String[] fileNames) {
+        Map<String, Long> durations = metrics.readPreviousFileDurations();
+        Map<String, Long> segments = new HashMap<>();
+        Map<String, Long> sizes = new HashMap<>();
+        for (String fileName : fileNames) {
+            long segmentCount = countSegments(fileName);
+            if (segmentCount > 0) {
+                segments.put(fileName, segmentCount);
+            }
+            sizes.put(fileName, sizeOf(workArea.getStepDirectory(SOURCE_STEP).resolve(fileName + ".pdf")));
+        }
+
+        Double millisPerSegment = calibrate(durations, segments);
+        Double millisPerByte = calibrate(durations, sizes);
+
+        Map<String, Double> costs = new HashMap<>();
+        for (String fileName : fileNames) {
+            costs.put(fileName, estimate(fileName, durations, segments, sizes, millisPerSegment, millisPerByte));
+        }
+
+        String[] ordered = fileNames.clone();
+        Arrays.sort(ordered, Comparator.comparing((String fileName) -> costs.get(fileName)).reversed()
+                                       .thenComparing(Comparator.naturalOrder()));
+        logger.fine("Scheduled files longest first: " + Arrays.toString(ordered));
+        return ordered;
+    }
+
+    private static double estimate(String fileName, Map<String, Long> durations, Map<String, Long> segments,
+                                   Map<String, Long> sizes, Double millisPerSegment, Double millisPerByte) {
+        if (millisPerByte == null) {
+            // No history to convert units with, so only sizes are comparable
+            return sizes.get(fileName);
+        }
+        Long duration = durations.get(fileName);
+        if (duration != null) {
+            return duration;
+        }
+        Long segmentCount = segments.get(fileName);
+        if (segmentCount != null && millisPerSegment != null) {
+            return segmentCount * millisPerSegment;
+        }
+        return sizes.get(fileName) * millisPerByte;
+    }
+
+    /**
+     * Average milliseconds per unit over the files that have both a recorded
+     * duration and the given measure, or {@code null} if there are none.
+     */
+    private static Double calibrate(Map<String, Long> durations, Map<String, Long> measure) {
+        long totalMillis = 0;
+        long totalUnits = 0;
+        for (Map.Entry<String, Long> entry : measure.entrySet()) {
+            Long duration = durations.get(entry.getKey());
+            if (duration != null && entry.getValue() > 0) {
+                totalMillis += duration;
+                totalUnits += entry.getValue();
+            }
+        }
+        return totalUnits > 0 ? (double) totalMillis / totalUnits : null;
+    }
+
+    private static long sizeOf(Path file) {
+        try {
+            return Files.exists(file) ? Files.size(file) : 0;
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private long countSegments(String fileName) {
+        Path segmentsFile = workArea.getStepDirectory(SEGMENTS_STEP).resolve(fileName + ".txt");
+        if (!Files.exists(segmentsFile)) {
+            return 0;
+        }
+        try (Stream<String> lines = Files.lines(segmentsFile)) {
+            return lines.filter(line -> !line.isBlank()).count();
+        } catch (IOException | UncheckedIOException e) {
+            logger.fine("Could not count segments of " + fileName + ": " + e.getMessage());
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.translation.pipeline;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.inject.Inject;
+import com.translation.config.Configuration;
+import com.translation.config.PipelineOptions;
+import com.translation.ipe.IpeFileSniffer;
+import com.translation.util.ContentHasher;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+
+/**
+ * Drops downloaded PDFs that are not IPE decks (exercise sheets, scans, ...)
+ * before the run, so decompile never starts ipeextract just to see it fail.
+ * Verdicts are kept by content hash in {@code .work/manifest/ipe-files.json},
+ * together with the size and modification time each PDF had when it was
+ * hashed, so unchanged PDFs are looked up without reading them again. Files
+ * the sniffer cannot classify stay in the run.
+ */
+public class IpeFileSelector {
+    private static final Logger logger = Logger.getLogger(IpeFileSelector.class.getName());
+    private static final String VERDICTS_FILE = "manifest/ipe-files.json";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final IpeFileSniffer sniffer;
+    private final Configuration configuration;
+    private final PipelineOptions options;
+    private final WorkArea workArea;
+
+    @Inject
+    public IpeFileSelector(IpeFileSniffer sniffer, Configuration configuration, PipelineOptions options, WorkArea workArea) {
+        this.sniffer = sniffer;
+        this.configuration = configuration;
+        this.options = options;
+        this.workArea = workArea;
+    }
+
+    /**
+     * Returns the files that may be IPE decks in their original order, or all
+     * files if the run does not start with decompiling the PDFs.
+     */
+    public String[] select(String[] fileNames) throws IOException {
+        // Later steps read intermediates, the PDFs do not matter there
+        if (!configuration.isSkipNonIpeFiles() || options.getFromStep() != null || options.getOnlyStep() != null) {
+            return fileNames;
+        }
+
+        File verdictsFile = workArea.getWorkRoot().resolve(VERDICTS_FILE).toFile();
+        Verdicts verdicts = load(verdictsFile);
+        boolean changed = false;
+        int cached = 0;
+
+        List<String> selected = new ArrayList<>();
+        List<String> skipped = new ArrayList<>();
+        for (String fileName : fileNames) {
+            Path pdfFile = workArea.getStepDirectory(0).resolve(fileName + ".pdf");
+            if (!Files.isRegularFile(pdfFile)) {
+                selected.add(fileName); // decompile reports the missing file
+                continue;
+            }
+
+            BasicFileAttributes attributes = Files.readAttributes(pdfFile, BasicFileAttributes.class);
+            Stamp stamp = verdicts.files.get(fileName);
+            if (stamp == null || stamp.size != attributes.size()
+                    || stamp.modified != attributes.lastModifiedTime().toMillis()) {
+                // Hash only new or changed PDFs, a re-download with the same content still hits
+                stamp = new Stamp();
+                stamp.hash = ContentHasher.hashFile(pdfFile);
+                stamp.size = attributes.size();
+                stamp.modified = attributes.lastModifiedTime().toMillis();
+                verdicts.files.put(fileName, stamp);
+                changed = true;
+            }
+
+            Verdict verdict = verdicts.byHash.get(stamp.hash);
+            if (verdict != null) {
+                cached++;
+            } else {
+                IpeFileSniffer.Verdict sniffed = sniff(pdfFile);
+                if (sniffed != IpeFileSniffer.Verdict.UNKNOWN) {
+                    verdict = new Verdict();
+                    verdict.ipe = sniffed == IpeFileSniffer.Verdict.IPE;
+                    verdict.fileName = fileName;
+                    verdict.checkedAt = System.currentTimeMillis();
+                    verdicts.byHash.put(stamp.hash, verdict);
+                    changed = true;
+                }
+            }
+
+            if (verdict != null && !verdict.ipe) {
+                skipped.add(fileName);
+            } else {
+                selected.add(fileName);
+            }
+        }
+
+        if (changed && workArea.isPersistent()) {
+            save(verdictsFile, verdicts);
+        }
+        if (!skipped.isEmpty()) {
+            logger.info("Skipping " + skipped.size() + " of " + fileNames.length + " PDFs that are not IPE files "
+                        + "(" + cached + " verdicts cached): " + skipped);
+        }
+        return selected.toArray(new String[0]);
+    }
+
+    private IpeFileSniffer.Verdict sniff(Path pdfFile) {
+        try {
+            return sniffer.sniff(pdfFile);
+        } catch (IOException e) {
+            logger.fine("Could not sniff " + pdfFile.getFileName() + ": " + e.getMessage());
+            return IpeFileSniffer.Verdict.UNKNOWN;
+        }
+    }
+
+    private Verdicts load(File file) {
+        if (file.exists()) {
+            try {
+                return objectMapper.readValue(file, Verdicts.class);
+            } catch (IOException e) {
+                logger.warning("Ignoring unreadable IPE file verdicts " + file.getAbsolutePath() + ": " + e.getMessage());
+            }
+        }
+        return new Verdicts();
+    }
+
+    private void save(File file, Verdicts verdicts) throws IOException {
+        file.getParentFile().mkdirs();
+        // Same as the build manifest: nodes of a work queue may share .work
+        Path temp = Files.createTempFile(file.getParentFile().toPath(), file.getName() + ".", ".tmp");
+        objectMapper.writerWithDefaultPrettyPrinter().writeValue(temp.toFile(), verdicts);
+        Files.move(temp, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static class Verdicts {
+        public Map<String, Verdict> byHash = new TreeMap<>();
+        // Content hash of each PDF by file name, valid while size and modification time match
+        public Map<String, Stamp> files = new TreeMap<>();
+    }
+
+    public static class Stamp {
+        public String hash;
+        public long size;
+        public long modified;
+    }
+
+    public static class Verdict {
+        public boolean ipe;
+        // Name the file had when it was sniffed, only for people reading the cache
+        public String fileName;
+        public long checkedAt;
+    }
+}
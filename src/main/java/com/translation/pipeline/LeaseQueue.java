@@ -0,0 +1,268 @@
+package com.translation.pipeline;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Coordinator-free work queue shared by several pipeline processes through a
+ * directory all of them can reach, e.g. an NFS mount ({@code --work-queue <dir>}).
+ * Lease files in {@code <dir>/leases} work like this:
+ * <ul>
+ *   <li>{@code <file>.lease} is created with {@code CREATE_NEW} by the worker that
+ *       claims the file; only one creation can succeed</li>
+ *   <li>the owner touches its leases every third of the TTL as a heartbeat</li>
+ *   <li>a lease whose modification time has not changed for a TTL belongs to a dead
+ *       worker and is taken over: it is atomically moved aside, which only one worker
+ *       can do, and then claimed anew</li>
+ *   <li>{@code <file>.done} records that a file was processed, successfully or not,
+ *       so no worker picks it up again; delete the directory to run a course again</li>
+ * </ul>
+ * A worker that was merely paused for longer than the TTL notices the lost lease on
+ * its next heartbeat. At worst a deck is then processed twice, never not at all.
+ *
+ * <p>Modification times are only compared with each other, never with the local
+ * time: how long a heartbeat has not changed is measured with the observing
+ * worker's own clock. Hosts whose clocks disagree therefore never take over live
+ * leases. A worker that sees a lease for the first time waits a full TTL before it
+ * takes it over.
+ */
+public class LeaseQueue implements Closeable {
+    private static final Logger logger = Logger.getLogger(LeaseQueue.class.getName());
+    private static final String LEASE_EXT = ".lease";
+    private static final String DONE_EXT = ".done";
+
+    private final Path leaseDirectory;
+    private final Duration ttl;
+    private final String workerId;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<String, Lease> held = new ConcurrentHashMap<>();
+    // Heartbeats of other workers' leases as last seen by this worker, by file name
+    private final Map<String, Observation> observed = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService heartbeat;
+
+    public LeaseQueue(Path directory, Duration ttl) throws IOException {
+        this.leaseDirectory = directory.resolve("leases");
+        this.ttl = ttl;
+        this.workerId = hostName() + "-" + ProcessHandle.current().pid();
+        Files.createDirectories(leaseDirectory);
+
+        this.heartbeat = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "lease-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1, ttl.toMillis() / 3);
+        heartbeat.scheduleAtFixedRate(this::renewLeases, period, period, TimeUnit.MILLISECONDS);
+        logger.info("Worker " + workerId + " joined work queue " + directory.toAbsolutePath() + " (lease TTL " + ttl.toMillis() + "ms)");
+    }
+
+    public String getWorkerId() {
+        return workerId;
+    }
+
+    public boolean isDone(String fileName) {
+        return Files.exists(leaseDirectory.resolve(fileName + DONE_EXT));
+    }
+
+    /**
+     * Tries to claim a file for this worker.
+     *
+     * @return the lease, or {@code null} if the file is done or a live worker holds it
+     */
+    public Lease tryClaim(String fileName) throws IOException {
+        if (isDone(fileName)) {
+            return null;
+        }
+        Path leaseFile = leaseDirectory.resolve(fileName + LEASE_EXT);
+        if (Files.exists(leaseFile) && !takeOverExpired(fileName, leaseFile)) {
+            return null;
+        }
+
+        Lease lease = new Lease(fileName, UUID.randomUUID().toString());
+        try {
+            Files.write(leaseFile, describe(lease), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        } catch (FileAlreadyExistsException e) {
+            return null; // another worker was faster
+        }
+        if (isDone(fileName)) {
+            // Finished by its previous owner between our checks
+            Files.deleteIfExists(leaseFile);
+            return null;
+        }
+        held.put(fileName, lease);
+        logger.fine(workerId + " claimed " + fileName);
+        return lease;
+    }
+
+    /**
+     * Marks the file as processed and releases its lease.
+     */
+    public void complete(Lease lease, FileOutcome outcome) throws IOException {
+        held.remove(lease.fileName);
+        Map<String, Object> done = new LinkedHashMap<>();
+        done.put("worker", workerId);
+        done.put("status", outcome.getStatus().name());
+        done.put("finishedAt", Instant.now().toString());
+        Path doneFile = leaseDirectory.resolve(lease.fileName + DONE_EXT);
+        Path temp = leaseDirectory.resolve(lease.fileName + DONE_EXT + "." + lease.token + ".tmp");
+        Files.write(temp, objectMapper.writeValueAsBytes(done));
+        Files.move(temp, doneFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        if (lease.token.equals(readToken(leaseDirectory.resolve(lease.fileName + LEASE_EXT)))) {
+            Files.deleteIfExists(leaseDirectory.resolve(lease.fileName + LEASE_EXT));
+        }
+    }
+
+    /**
+     * Moves an expired lease out of the way. The move succeeds for exactly one of
+     * the workers that saw it expire; a lease that turns out to have been renewed
+     * in the meantime is put back.
+     */
+    private boolean takeOverExpired(String fileName, Path leaseFile) throws IOException {
+        FileTime lastHeartbeat;
+        try {
+            lastHeartbeat = Files.getLastModifiedTime(leaseFile);
+        } catch (NoSuchFileException e) {
+            return true; // released just now
+        }
+        if (!isExpired(fileName, lastHeartbeat)) {
+            return false;
+        }
+
+        Path expired = leaseDirectory.resolve(fileName + LEASE_EXT + "." + UUID.randomUUID() + ".expired");
+        try {
+            Files.move(leaseFile, expired, StandardCopyOption.ATOMIC_MOVE);
+        } catch (NoSuchFileException e) {
+            return false; // another worker took it over first
+        }
+        if (!Files.getLastModifiedTime(expired).equals(lastHeartbeat)) {
+            Files.move(expired, leaseFile, StandardCopyOption.ATOMIC_MOVE);
+            return false;
+        }
+        logger.info("Taking over " + fileName + " from " + readOwner(expired) + ", its lease had no heartbeat for "
+                    + ttl.toMillis() + "ms");
+        observed.remove(fileName);
+        Files.deleteIfExists(expired);
+        return true;
+    }
+
+    /**
+     * Whether the lease has shown the same heartbeat for longer than the TTL, as
+     * measured by this worker.
+     */
+    private boolean isExpired(String fileName, FileTime heartbeat) {
+        long now = System.nanoTime();
+        Observation seen = observed.compute(fileName, (name, previous) ->
+                previous != null && previous.heartbeat.equals(heartbeat) ? previous : new Observation(heartbeat, now));
+        return now - seen.seenAt > ttl.toNanos();
+    }
+
+    private void renewLeases() {
+        FileTime now = FileTime.from(Instant.now());
+        for (Lease lease : held.values()) {
+            Path leaseFile = leaseDirectory.resolve(lease.fileName + LEASE_EXT);
+            try {
+                if (!lease.token.equals(readToken(leaseFile))) {
+                    logger.warning("Lost the lease on " + lease.fileName + " to another worker, it may be processed twice");
+                    held.remove(lease.fileName);
+                    continue;
+                }
+                Files.setLastModifiedTime(leaseFile, now);
+            } catch (IOException | UncheckedIOException e) {
+                logger.warning("Failed to renew the lease on " + lease.fileName + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private byte[] describe(Lease lease) throws IOException {
+        Map<String, Object> content = new LinkedHashMap<>();
+        content.put("worker", workerId);
+        content.put("token", lease.token);
+        content.put("claimedAt", Instant.now().toString());
+        return objectMapper.writeValueAsBytes(content);
+    }
+
+    private String readToken(Path leaseFile) throws IOException {
+        return readField(leaseFile, "token");
+    }
+
+    private String readOwner(Path leaseFile) {
+        try {
+            return readField(leaseFile, "worker");
+        } catch (IOException e) {
+            return "an unknown worker";
+        }
+    }
+
+    private String readField(Path leaseFile, String field) throws IOException {
+        try {
+            byte[] content = Files.readAllBytes(leaseFile);
+            // A lease that is still being written has no content yet
+            return content.length == 0 ? null : objectMapper.readTree(new String(content, StandardCharsets.UTF_8)).path(field).asText(null);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    private static String hostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (IOException e) {
+            return "localhost";
+        }
+    }
+
+    @Override
+    public void close() {
+        heartbeat.shutdownNow();
+    }
+
+    private static final class Observation {
+        private final FileTime heartbeat;
+        private final long seenAt;
+
+        private Observation(FileTime heartbeat, long seenAt) {
+            this.heartbeat = heartbeat;
+            this.seenAt = seenAt;
+        }
+    }
+
+    /**
+     * A claim on one file, identified by a token unique to this claim.
+     */
+    public static final class Lease {
+        private final String fileName;
+        private final String token;
+
+        private Lease(String fileName, String token) {
+            this.fileName = fileName;
+            this.token = token;
+        }
+
+        public String getFileName() {
+            return fileName;
+        }
+    }
+}
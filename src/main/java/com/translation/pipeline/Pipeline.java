@@ -4,69 +4,550 @@ import java.util.ArrayList;
 import java.util.logging.Logger;
 
 import com.google.inject.Inject;
+import com.translation.config.PipelineOptions;
 import com.translation.ipe.CompilerException;
+import com.translation.metrics.RunMetrics;
 import com.translation.pipeline.steps.PipelineStepBase;
+import com.translation.util.CancellationToken;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
 import java.util.logging.Level;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class Pipeline {
     private ArrayList<PipelineStepBase> _steps;
+    private final PipelineOptions options;
+    private final RunJournal journal;
+    private final RunMetrics metrics;
+    private final FileScheduler scheduler;
+    private final WorkArea workArea;
+    private final int firstStepIndex;
+    private final int lastStepIndex;
+    private final CancellationToken cancellation = new CancellationToken();
     private static final Logger logger = Logger.getLogger(Pipeline.class.getName());
 
     @Inject
-    public Pipeline(Set<PipelineStepBase> steps) {
+    public Pipeline(Set<PipelineStepBase> steps, PipelineOptions options, RunJournal journal, RunMetrics metrics,
+                    FileScheduler scheduler, WorkArea workArea) {
         // Sort steps by their order automatically
         _steps = new ArrayList<>(steps);
         _steps.sort(Comparator.comparingInt(PipelineStepBase::getOrder));
-        
+        this.options = options;
+        this.journal = journal;
+        this.metrics = metrics;
+        this.scheduler = scheduler;
+        this.workArea = workArea;
+
+        if (options.getOnlyStep() != null) {
+            firstStepIndex = resolveStepIndex(options.getOnlyStep());
+            lastStepIndex = firstStepIndex;
+        } else {
+            firstStepIndex = options.getFromStep() != null ? resolveStepIndex(options.getFromStep()) : 0;
+            lastStepIndex = _steps.size() - 1;
+        }
+
         logger.info("Pipeline created with " + _steps.size() + " steps, sorted by order");
     }
 
-    public void execute(String[] fileNames) throws PipelineStepException {
+    /**
+     * Resolves a step given by order number or (case-insensitive) step or class name.
+     */
+    private int resolveStepIndex(String spec) {
+        for (int i = 0; i < _steps.size(); i++) {
+            PipelineStepBase step = _steps.get(i);
+            if (spec.equals(String.valueOf(step.getOrder()))
+                    || spec.equalsIgnoreCase(step.getStepName())
+                    || spec.equalsIgnoreCase(step.getClass().getSimpleName())) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Unknown pipeline step: " + spec);
+    }
+
+    public PipelineSummary execute(String[] fileNames) throws PipelineStepException {
+        return execute(fileNames, stepsToResume(), null);
+    }
+
+    /**
+     * Runs the given files as one of several runs that may share this pipeline,
+     * e.g. a daemon job. The run gets a report of its own, named after the id.
+     */
+    public PipelineSummary execute(String[] fileNames, String runId) throws PipelineStepException {
+        return execute(fileNames, stepsToResume(), runId);
+    }
+
+    private Map<String, Integer> stepsToResume() {
+        Map<String, Integer> completedSteps = Collections.emptyMap();
+        if (options.isResume() && !workArea.isPersistent()) {
+            logger.warning("--resume has no effect: results of earlier runs are not kept in the " + options.getWorkArea() + " work area");
+        } else if (options.isResume() && !options.isPersistIntermediates()) {
+            logger.warning("--resume has no effect with --in-memory: intermediate results are not written to the step directories");
+        } else if (options.isResume()) {
+            completedSteps = journal.readCompletedSteps();
+            logger.info("Resuming from run journal with progress for " + completedSteps.size() + " files");
+        }
+        return completedSteps;
+    }
+
+    /**
+     * Stops all runs of this pipeline: running steps are cancelled, their tools
+     * killed, and files that have not started fail right away. The pipeline
+     * cannot be used afterwards.
+     */
+    public void cancel(String reason) {
+        logger.warning("Cancelling pipeline: " + reason);
+        cancellation.cancel(reason);
+    }
+
+    CancellationToken getCancellationToken() {
+        return cancellation;
+    }
+
+    /**
+     * Runs the given files again, each starting after the step order it is mapped to
+     * ({@code 0} for all steps). Used by watch mode after an input changed.
+     */
+    public PipelineSummary rerun(Map<String, Integer> completedSteps) throws PipelineStepException {
+        return execute(completedSteps.keySet().toArray(new String[0]), completedSteps, null);
+    }
+
+    /**
+     * Order of the first selected step that declares the given file as an input
+     * for the given deck, or {@code null} if no step reads it.
+     */
+    public Integer findFirstStepReading(String fileName, Path file) {
+        for (int i = firstStepIndex; i <= lastStepIndex; i++) {
+            if (_steps.get(i).readsFile(fileName, file)) {
+                return _steps.get(i).getOrder();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The end results of the pipeline for a file, i.e. the outputs of the last step.
+     */
+    public List<Path> getResultFiles(String fileName) {
+        return _steps.get(_steps.size() - 1).getProducedFiles(fileName);
+    }
+
+    private PipelineSummary execute(String[] fileNames, Map<String, Integer> completedSteps, String runId)
+            throws PipelineStepException {
         logger.info("Starting pipeline execution with " + _steps.size() + " steps");
+        PipelineSummary summary = new PipelineSummary();
+        boolean batched = options.isBatch() && hasBatchSteps() && fileNames != null && fileNames.length > 1;
+        metrics.setRunAttribute("mode", options.isQueued() ? "queue" : options.isStaged() ? "staged"
+                : options.isParallel() ? "parallel" : batched ? "batched" : "sequential");
+        metrics.setRunAttribute("jobs", options.getJobs());
+        metrics.setRunAttribute("availableProcessors", Runtime.getRuntime().availableProcessors());
+        metrics.setRunAttribute("maxProcesses", options.getMaxProcesses());
+        metrics.setRunAttribute("workArea", options.getWorkArea());
+        if (options.isSharded()) {
+            metrics.setRunAttribute("shard", options.getShardIndex() + "/" + options.getShardCount());
+            metrics.setRunAttribute("shardStrategy", options.getShardStrategy());
+        }
 
         if (fileNames == null || fileNames.length == 0) {
             logger.warning("No file names supplied – nothing to execute");
-            return;
+            summary.finish();
+            return summary;
         }
 
+        // Concurrent runs (daemon mode) share the metrics, so only this run's files are cleared
+        metrics.forgetFiles(Arrays.asList(fileNames));
         logger.info("Files to process: " + Arrays.toString(fileNames));
+        if (firstStepIndex > 0 || lastStepIndex < _steps.size() - 1) {
+            logger.info("Running steps " + _steps.get(firstStepIndex).getStepName() + " to " + _steps.get(lastStepIndex).getStepName());
+        }
+        if (options.isQueued() || options.isStaged() || (options.isParallel() && fileNames.length > 1)) {
+            // Only concurrent runs profit from starting the expensive files first
+            fileNames = scheduler.order(fileNames);
+            logger.info("Processing order (longest first): " + Arrays.toString(fileNames));
+        }
 
-        for (String fileName : fileNames) {
-            logger.fine("Processing file: " + fileName);
-            boolean fileProcessingFailed = false;
-            
-            for (int i = 0; i < _steps.size(); i++) {
-                if (fileProcessingFailed) {
-                    logger.fine("Skipping remaining steps for " + fileName + " due to previous step failure");
-                    break;
-                }
-                
-                PipelineStepBase step = _steps.get(i);
-                logger.fine("Executing step " + (i + 1) + "/" + _steps.size() + ": " + step.getStepName());
+        if (options.isQueued()) {
+            executeQueued(fileNames, completedSteps, summary);
+        } else if (options.isStaged()) {
+            executeStaged(fileNames, completedSteps, summary);
+        } else if (options.isParallel() && fileNames.length > 1) {
+            executeParallel(fileNames, completedSteps, summary);
+        } else if (batched) {
+            executeBatched(fileNames, completedSteps, summary);
+        } else {
+            for (String fileName : fileNames) {
+                summary.add(executeFile(fileName, completedSteps));
+            }
+        }
+
+        summary.finish();
+        logger.info("Pipeline execution finished");
+        summary.log(logger);
+        writeReport(summary, runId);
+        return summary;
+    }
+
+    private void writeReport(PipelineSummary summary, String runId) {
+        try {
+            File reportFile = metrics.writeReport(summary, runId);
+            if (options.isSharded()) {
+                // Keep the shard's report next to its results, that is what gets merged
+                Files.copy(reportFile.toPath(), workArea.getDurableRoot().resolve(RunMetrics.REPORT_FILE),
+                           StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            logger.warning("Failed to write run report: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Runs every step as its own stage so that different files can be in
+     * different steps at the same time.
+     */
+    private void executeStaged(String[] fileNames, Map<String, Integer> completedSteps, PipelineSummary summary)
+            throws PipelineStepException {
+        try {
+            new StagedExecution(this, _steps, options).run(fileNames, completedSteps, summary);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PipelineStepException("staged execution", 0, "Interrupted while waiting for stages", e);
+        }
+    }
+
+    /**
+     * Runs independent files concurrently on a bounded pool of {@code --jobs} workers.
+     * Each worker still runs the steps of its file strictly in order.
+     */
+    private void executeParallel(String[] fileNames, Map<String, Integer> completedSteps, PipelineSummary summary)
+            throws PipelineStepException {
+        int workers = Math.min(options.getJobs(), fileNames.length);
+        logger.info("Running " + fileNames.length + " files on " + workers + " parallel workers");
+
+        AtomicInteger threadCounter = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(workers, runnable -> {
+            Thread thread = new Thread(runnable, "pipeline-worker-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try {
+            List<Future<FileOutcome>> futures = new ArrayList<>();
+            for (String fileName : fileNames) {
+                futures.add(executor.submit(() -> executeFile(fileName, completedSteps)));
+            }
 
+            for (int i = 0; i < futures.size(); i++) {
                 try {
-                    boolean success = step.execute(fileName); // pass current file to step
-                    if (!success) {
-                        logger.warning("Step " + step.getStepName() + " failed for file " + fileName + ", skipping remaining steps");
-                        fileProcessingFailed = true;
+                    summary.add(futures.get(i).get());
+                } catch (ExecutionException e) {
+                    // executeFile isolates step failures, so this is an unexpected worker error
+                    summary.add(FileOutcome.failed(fileNames[i], 0, "worker", e.getCause().getMessage(), 0));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PipelineStepException("parallel execution", 0, "Interrupted while waiting for workers", e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Processes the files this worker can claim in the shared work queue, on up to
+     * {@code --jobs} threads. Files held by other workers are waited for until they
+     * are done or their lease expires, so the files of a crashed worker are picked
+     * up by the survivors. The summary only contains the files of this worker.
+     */
+    private void executeQueued(String[] fileNames, Map<String, Integer> completedSteps, PipelineSummary summary)
+            throws PipelineStepException {
+        Duration ttl = Duration.ofSeconds(options.getLeaseTtlSeconds());
+        LeaseQueue queue;
+        try {
+            queue = new LeaseQueue(Paths.get(options.getWorkQueue()), ttl);
+        } catch (IOException e) {
+            throw new PipelineStepException("work queue", 0, "Cannot use work queue " + options.getWorkQueue(), e);
+        }
+        metrics.setRunAttribute("worker", queue.getWorkerId());
+
+        List<String> pending = new ArrayList<>(Arrays.asList(fileNames));
+        int workers = Math.min(options.getJobs(), fileNames.length);
+        AtomicInteger threadCounter = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(workers, runnable -> {
+            Thread thread = new Thread(runnable, "queue-worker-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < workers; i++) {
+                futures.add(executor.submit(() -> {
+                    LeaseQueue.Lease lease;
+                    while ((lease = claimNext(queue, pending, ttl)) != null) {
+                        FileOutcome outcome = executeFile(lease.getFileName(), completedSteps);
+                        summary.add(outcome);
+                        queue.complete(lease, outcome);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            throw new PipelineStepException("work queue", 0, "Queue worker failed: " + e.getCause().getMessage(), e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PipelineStepException("work queue", 0, "Interrupted while waiting for queue workers", e);
+        } finally {
+            executor.shutdownNow();
+            queue.close();
+        }
+        logger.info("Work queue drained, this worker processed " + summary.getTotalCount() + " of " + fileNames.length + " files");
+    }
+
+    /**
+     * Claims the next file nobody else is working on, waiting for leases of other
+     * workers to finish or expire.
+     *
+     * @return the lease, or {@code null} once every file is done
+     */
+    private static LeaseQueue.Lease claimNext(LeaseQueue queue, List<String> pending, Duration ttl)
+            throws IOException, InterruptedException {
+        long pollMillis = Math.max(250, ttl.toMillis() / 4);
+        while (true) {
+            synchronized (pending) {
+                Iterator<String> iterator = pending.iterator();
+                while (iterator.hasNext()) {
+                    String fileName = iterator.next();
+                    if (queue.isDone(fileName)) {
+                        iterator.remove();
+                        continue;
                     }
-                } catch (CompilerException e) {
-                    // Handle compilation failures gracefully - log and continue with next file
-                    logger.warning("Compilation failed for file " + fileName + ": " + e.getMessage());
-                    fileProcessingFailed = true;
-                } catch (Exception e) {
-                    logger.log(Level.WARNING,
-                               "Step " + step.getStepName() + " failed for file " + fileName + " with exception: " + e.getMessage(),
-                               e);
-                    fileProcessingFailed = true; // Mark this file as failed and continue with next file
+                    LeaseQueue.Lease lease = queue.tryClaim(fileName);
+                    if (lease != null) {
+                        iterator.remove();
+                        return lease;
+                    }
+                }
+                if (pending.isEmpty()) {
+                    return null;
+                }
+            }
+            Thread.sleep(pollMillis);
+        }
+    }
+
+    private boolean hasBatchSteps() {
+        for (int i = firstStepIndex; i <= lastStepIndex; i++) {
+            if (_steps.get(i).supportsBatch()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Runs the pipeline step by step instead of file by file: every step sees all
+     * files that reached it in one go, so steps that support batching can process
+     * them in a single call. A failed file drops out of the remaining steps.
+     */
+    private void executeBatched(String[] fileNames, Map<String, Integer> completedSteps, PipelineSummary summary) {
+        List<FileRun> active = new ArrayList<>();
+        for (String fileName : fileNames) {
+            FileRun run = new FileRun(fileName, getFirstStepIndex(fileName, completedSteps), cancellation);
+            if (run.getStepIndex() > lastStepIndex) {
+                logger.info("All selected steps already completed for " + fileName + ", nothing to resume");
+                summary.add(run.completed());
+            } else {
+                active.add(run);
+            }
+        }
+
+        for (int i = firstStepIndex; i <= lastStepIndex && !active.isEmpty(); i++) {
+            PipelineStepBase step = _steps.get(i);
+            List<FileRun> due = new ArrayList<>();
+            for (FileRun run : active) {
+                if (run.getStepIndex() == i) {
+                    due.add(run);
+                }
+            }
+            if (due.isEmpty()) {
+                continue;
+            }
+
+            logger.fine("Executing step " + (i + 1) + "/" + _steps.size() + ": " + step.getStepName() + " for " + due.size() + " files");
+            Map<String, String> failures = step.supportsBatch() ? runBatch(step, due) : runEach(step, due);
+            for (FileRun run : due) {
+                String failure = failures.get(run.getFileName());
+                if (failure != null) {
+                    summary.add(run.failed(step.getStepName(), failure));
+                    active.remove(run);
+                } else {
+                    run.advance();
                 }
             }
         }
 
-        logger.info("Pipeline execution completed successfully");
+        for (FileRun run : active) {
+            summary.add(run.completed());
+        }
+    }
+
+    private Map<String, String> runEach(PipelineStepBase step, List<FileRun> runs) {
+        Map<String, String> failures = new HashMap<>();
+        for (FileRun run : runs) {
+            String failure = runStep(step, run.getContext());
+            if (failure != null) {
+                failures.put(run.getFileName(), failure);
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * Runs one batch-capable step for several files in one call.
+     *
+     * @return failure descriptions for the files that failed
+     */
+    private Map<String, String> runBatch(PipelineStepBase step, List<FileRun> runs) {
+        Map<String, String> failures = new HashMap<>();
+        if (cancellation.isCancelled()) {
+            for (FileRun run : runs) {
+                failures.put(run.getFileName(), "cancelled: " + cancellation.getReason());
+            }
+            return failures;
+        }
+
+        List<FileContext> contexts = new ArrayList<>();
+        for (FileRun run : runs) {
+            journal.record(run.getFileName(), step.getOrder(), step.getStepName(), RunJournal.Status.STARTED);
+            contexts.add(run.getContext());
+        }
+
+        try {
+            Map<String, Boolean> results = step.executeBatch(contexts);
+            for (FileRun run : runs) {
+                if (Boolean.TRUE.equals(results.get(run.getFileName()))) {
+                    journal.record(run.getFileName(), step.getOrder(), step.getStepName(), RunJournal.Status.COMPLETED);
+                } else {
+                    logger.warning("Step " + step.getStepName() + " failed for file " + run.getFileName() + ", skipping remaining steps");
+                    journal.record(run.getFileName(), step.getOrder(), step.getStepName(), RunJournal.Status.FAILED);
+                    failures.put(run.getFileName(), "step reported failure");
+                }
+            }
+        } catch (Exception e) {
+            logger.log(Level.WARNING, "Batched step " + step.getStepName() + " failed for " + runs.size() + " files: " + e.getMessage(), e);
+            String message = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+            for (FileRun run : runs) {
+                journal.record(run.getFileName(), step.getOrder(), step.getStepName(), RunJournal.Status.FAILED);
+                failures.put(run.getFileName(), message);
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * Runs all selected steps for a single file. A failing step skips the remaining
+     * steps of this file only; the outcome records where processing stopped.
+     */
+    public FileOutcome executeFile(String fileName) {
+        return executeFile(fileName, Collections.emptyMap());
+    }
+
+    private FileOutcome executeFile(String fileName, Map<String, Integer> completedSteps) {
+        logger.fine("Processing file: " + fileName);
+        FileRun run = new FileRun(fileName, getFirstStepIndex(fileName, completedSteps), cancellation);
+
+        if (run.getStepIndex() > lastStepIndex) {
+            logger.info("All selected steps already completed for " + fileName + ", nothing to resume");
+        }
+
+        while (run.getStepIndex() <= lastStepIndex) {
+            PipelineStepBase step = _steps.get(run.getStepIndex());
+            logger.fine("Executing step " + (run.getStepIndex() + 1) + "/" + _steps.size() + ": " + step.getStepName() + " for " + fileName);
+
+            String failure = runStep(step, run.getContext());
+            if (failure != null) {
+                return run.failed(step.getStepName(), failure);
+            }
+            run.advance();
+        }
+
+        return run.completed();
+    }
+
+    /**
+     * Index of the first step to run for a file, honouring --from-step/--only-step
+     * and the last step recorded as completed for it (from the journal with --resume).
+     */
+    int getFirstStepIndex(String fileName, Map<String, Integer> completedSteps) {
+        int first = firstStepIndex;
+        Integer completedOrder = completedSteps.get(fileName);
+        if (completedOrder != null) {
+            while (first < _steps.size() && _steps.get(first).getOrder() <= completedOrder) {
+                first++;
+            }
+            if (first > firstStepIndex) {
+                logger.fine("Resuming " + fileName + " after step " + completedOrder);
+            }
+        }
+        return first;
+    }
+
+    int getLastStepIndex() {
+        return lastStepIndex;
+    }
+
+    /**
+     * Runs one step for one file and isolates its failure.
+     *
+     * @return {@code null} if the step succeeded, otherwise a short failure description
+     */
+    String runStep(PipelineStepBase step, FileContext context) {
+        String fileName = context.getFileName();
+        if (cancellation.isCancelled()) {
+            return "cancelled: " + cancellation.getReason();
+        }
+        journal.record(fileName, step.getOrder(), step.getStepName(), RunJournal.Status.STARTED);
+        try {
+            boolean success = step.execute(fileName, context); // pass current file to step
+            if (!success) {
+                logger.warning("Step " + step.getStepName() + " failed for file " + fileName + ", skipping remaining steps");
+                journal.record(fileName, step.getOrder(), step.getStepName(), RunJournal.Status.FAILED);
+                return "step reported failure";
+            }
+            journal.record(fileName, step.getOrder(), step.getStepName(), RunJournal.Status.COMPLETED);
+            return null;
+        } catch (Exception e) {
+            journal.record(fileName, step.getOrder(), step.getStepName(), RunJournal.Status.FAILED);
+            Throwable cause = e.getCause() instanceof CompilerException ? e.getCause() : e;
+            if (cause instanceof CompilerException) {
+                // Handle compilation failures gracefully - log and continue with next file
+                logger.warning("Compilation failed for file " + fileName + ": " + cause.getMessage());
+            } else {
+                logger.log(Level.WARNING,
+                           "Step " + step.getStepName() + " failed for file " + fileName + " with exception: " + e.getMessage(),
+                           e);
+            }
+            return cause.getMessage() != null ? cause.getMessage() : cause.getClass().getSimpleName();
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,68 @@
+package com.translation.pipeline;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Collects the per-file outcomes of a pipeline run.
+ */
+public class PipelineSummary {
+    private final List<FileOutcome> outcomes = Collections.synchronizedList(new ArrayList<>());
+    private final long startedAt;
+    private long finishedAt;
+
+    public PipelineSummary() {
+        this.startedAt = System.currentTimeMillis();
+    }
+
+    public void add(FileOutcome outcome) {
+        outcomes.add(outcome);
+    }
+
+    public void finish() {
+        this.finishedAt = System.currentTimeMillis();
+    }
+
+    public List<FileOutcome> getOutcomes() {
+        synchronized (outcomes) {
+            return new ArrayList<>(outcomes);
+        }
+    }
+
+    public List<FileOutcome> getFailed() {
+        List<FileOutcome> failed = new ArrayList<>();
+        for (FileOutcome outcome : getOutcomes()) {
+            if (!outcome.isSuccessful()) {
+                failed.add(outcome);
+            }
+        }
+        return failed;
+    }
+
+    public int getTotalCount() {
+        return outcomes.size();
+    }
+
+    public int getSucceededCount() {
+        return getTotalCount() - getFailed().size();
+    }
+
+    public long getStartedAt() {
+        return startedAt;
+    }
+
+    public long getDurationMillis() {
+        return (finishedAt > 0 ? finishedAt : System.currentTimeMillis()) - startedAt;
+    }
+
+    public void log(Logger logger) {
+        List<FileOutcome> failed = getFailed();
+        logger.info("Pipeline summary: " + getSucceededCount() + "/" + getTotalCount() + " files completed, "
+                + failed.size() + " failed, total time " + getDurationMillis() + "ms");
+        for (FileOutcome outcome : failed) {
+            logger.warning("  " + outcome);
+        }
+    }
+}
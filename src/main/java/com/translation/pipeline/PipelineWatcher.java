@@ -0,0 +1,152 @@
+package com.translation.pipeline;
+
+import com.google.inject.Inject;
+import com.translation.Constants;
+import com.translation.config.PipelineOptions;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Watch mode ({@code --watch}): after the first pass, keeps the injector and its
+ * services alive and re-runs a deck as soon as one of its inputs in
+ * {@code .work/step-0} or {@code manual-work} changes. A deck only goes through
+ * the steps from the first one that reads the changed file; the build cache
+ * takes care of anything else that is still up to date.
+ */
+public class PipelineWatcher {
+    private static final Logger logger = Logger.getLogger(PipelineWatcher.class.getName());
+    // Editors and downloads write in several chunks; wait until a file has been quiet for this long
+    private static final long DEBOUNCE_MILLIS = 750;
+
+    private final Pipeline pipeline;
+    private final PipelineOptions options;
+    private final WorkArea workArea;
+    private final Set<String> completedDecks = new HashSet<>();
+    private final Map<Path, Long> pendingChanges = new LinkedHashMap<>();
+
+    @Inject
+    public PipelineWatcher(Pipeline pipeline, PipelineOptions options, WorkArea workArea) {
+        this.pipeline = pipeline;
+        this.options = options;
+        this.workArea = workArea;
+    }
+
+    /**
+     * Watches for changes until the thread is interrupted.
+     *
+     * @param initialRun summary of the first pass, used to know which decks have intermediates
+     */
+    public void watch(PipelineSummary initialRun) throws IOException {
+        remember(initialRun);
+
+        try (WatchService watchService = FileSystems.getDefault().newWatchService()) {
+            Map<WatchKey, Path> directories = new HashMap<>();
+            register(watchService, directories, workArea.getStepDirectory(0));
+            register(watchService, directories, Paths.get(Constants.MANUAL_WORK_DIR));
+            logger.info("Watching " + directories.values() + " for changes (Ctrl+C to stop)");
+
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key = pendingChanges.isEmpty()
+                        ? watchService.take()
+                        : watchService.poll(DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    collectChanges(key, directories.get(key));
+                    if (!key.reset()) {
+                        logger.warning("Stopped watching " + directories.remove(key));
+                    }
+                }
+                runDueChanges();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.info("Watch mode stopped");
+        }
+    }
+
+    private static void register(WatchService watchService, Map<WatchKey, Path> directories, Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            logger.fine("Not watching missing directory " + directory);
+            return;
+        }
+        WatchKey key = directory.register(watchService,
+                                          StandardWatchEventKinds.ENTRY_CREATE,
+                                          StandardWatchEventKinds.ENTRY_MODIFY);
+        directories.put(key, directory);
+    }
+
+    private void collectChanges(WatchKey key, Path directory) {
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                logger.warning("Missed file system events in " + directory + ", touch the changed files again");
+                continue;
+            }
+            Path changed = directory.resolve((Path) event.context());
+            pendingChanges.put(changed, System.currentTimeMillis());
+        }
+    }
+
+    private void runDueChanges() {
+        long now = System.currentTimeMillis();
+        Map<String, Integer> completedSteps = new LinkedHashMap<>();
+
+        Iterator<Map.Entry<Path, Long>> iterator = pendingChanges.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Path, Long> change = iterator.next();
+            if (now - change.getValue() < DEBOUNCE_MILLIS) {
+                continue;
+            }
+            iterator.remove();
+
+            Path changed = change.getKey();
+            String deck = stripExtension(changed.getFileName().toString());
+            Integer readingStep = pipeline.findFirstStepReading(deck, changed);
+            if (readingStep == null) {
+                logger.fine("Ignoring change of " + changed + ": no step reads it");
+                continue;
+            }
+
+            logger.info("Detected change of " + changed + ", re-running " + deck + " from step " + readingStep);
+            // Later steps can only start from intermediates of an earlier pass of the same deck
+            int skipThrough = completedDecks.contains(deck) && options.isPersistIntermediates() ? readingStep - 1 : 0;
+            completedSteps.merge(deck, skipThrough, Math::min);
+        }
+
+        if (completedSteps.isEmpty()) {
+            return;
+        }
+        try {
+            remember(pipeline.rerun(completedSteps));
+        } catch (PipelineStepException e) {
+            logger.warning("Re-run of " + completedSteps.keySet() + " failed: " + e.getMessage());
+        }
+    }
+
+    private void remember(PipelineSummary summary) {
+        for (FileOutcome outcome : summary.getOutcomes()) {
+            if (outcome.isSuccessful()) {
+                completedDecks.add(outcome.getFileName());
+            }
+        }
+    }
+
+    private static String stripExtension(String fileName) {
+        int dot = fileName.lastIndexOf('.');
+        return dot == -1 ? fileName : fileName.substring(0, dot);
+    }
+}
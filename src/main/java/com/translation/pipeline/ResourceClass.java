@@ -0,0 +1,14 @@
+package com.translation.pipeline;
+
+/**
+ * The kind of resource a pipeline step is bound by. Used to size the
+ * concurrency of each stage when the pipeline runs in staged mode.
+ */
+public enum ResourceClass {
+    /** External tool invocations (ipeextract, ipetoipe, LaTeX). */
+    PROCESS,
+    /** In-JVM work such as XML parsing and text replacement. */
+    CPU,
+    /** Remote services such as the DeepL API. */
+    NETWORK
+}
@@ -0,0 +1,246 @@
+package com.translation.pipeline;
+
+import com.translation.util.CancellationToken;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+
+/**
+ * How often and how long a step may try to process a file. Every attempt runs with
+ * its own {@link CancellationToken}, which is cancelled when the attempt exceeds
+ * its timeout; the step's subprocesses are killed and its thread is interrupted.
+ * Failed attempts are repeated with exponential backoff if the failure is one the
+ * policy retries on and the overall deadline leaves room for another attempt.
+ * A step that reports failure by returning {@code false} is never retried.
+ * <pre>
+ * RetryPolicy.attempts(3)
+ *            .withBackoff(Duration.ofSeconds(5), 2.0)
+ *            .withAttemptTimeout(Duration.ofMinutes(5))
+ *            .withDeadline(Duration.ofMinutes(15))
+ *            .retryingOn(IOException.class)
+ * </pre>
+ */
+public final class RetryPolicy {
+    private static final Logger logger = Logger.getLogger(RetryPolicy.class.getName());
+    private static final Duration MAX_BACKOFF = Duration.ofMinutes(1);
+
+    /**
+     * A single attempt without a timeout, the default for steps.
+     */
+    public static final RetryPolicy NONE = new RetryPolicy(1, Duration.ZERO, 1.0, null, null,
+                                                             Collections.emptyList(), Collections.emptyList());
+
+    private final int maxAttempts;
+    private final Duration initialBackoff;
+    private final double backoffMultiplier;
+    private final Duration attemptTimeout;
+    private final Duration deadline;
+    private final List<Class<? extends Throwable>> retryableFailures;
+    private final List<Class<? extends Throwable>> permanentFailures;
+
+    private RetryPolicy(int maxAttempts, Duration initialBackoff, double backoffMultiplier, Duration attemptTimeout,
+                        Duration deadline, List<Class<? extends Throwable>> retryableFailures,
+                        List<Class<? extends Throwable>> permanentFailures) {
+        this.maxAttempts = maxAttempts;
+        this.initialBackoff = initialBackoff;
+        this.backoffMultiplier = backoffMultiplier;
+        this.attemptTimeout = attemptTimeout;
+        this.deadline = deadline;
+        this.retryableFailures = retryableFailures;
+        this.permanentFailures = permanentFailures;
+    }
+
+    /**
+     * Up to the given number of attempts, retrying only on timeouts until
+     * {@link #retryingOn} adds other failures.
+     */
+    public static RetryPolicy attempts(int maxAttempts) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("A step needs at least one attempt");
+        }
+        return new RetryPolicy(maxAttempts, Duration.ofSeconds(1), 2.0, null, null, Collections.emptyList(), Collections.emptyList());
+    }
+
+    public RetryPolicy withBackoff(Duration initialBackoff, double multiplier) {
+        return new RetryPolicy(maxAttempts, initialBackoff, multiplier, attemptTimeout, deadline, retryableFailures, permanentFailures);
+    }
+
+    public RetryPolicy withAttemptTimeout(Duration attemptTimeout) {
+        return new RetryPolicy(maxAttempts, initialBackoff, backoffMultiplier, attemptTimeout, deadline, retryableFailures, permanentFailures);
+    }
+
+    /**
+     * Limits the time of all attempts and backoffs together.
+     */
+    public RetryPolicy withDeadline(Duration deadline) {
+        return new RetryPolicy(maxAttempts, initialBackoff, backoffMultiplier, attemptTimeout, deadline, retryableFailures, permanentFailures);
+    }
+
+    /**
+     * Also retries failures of the given types, found anywhere in the cause chain.
+     */
+    @SafeVarargs
+    public final RetryPolicy retryingOn(Class<? extends Throwable>... failures) {
+        List<Class<? extends Throwable>> retryable = new ArrayList<>(retryableFailures);
+        retryable.addAll(Arrays.asList(failures));
+        return new RetryPolicy(maxAttempts, initialBackoff, backoffMultiplier, attemptTimeout, deadline,
+                               Collections.unmodifiableList(retryable), permanentFailures);
+    }
+
+    /**
+     * Never retries failures of the given types, even if they are subtypes of a
+     * retried failure, e.g. an authorization error among the API errors.
+     */
+    @SafeVarargs
+    public final RetryPolicy notRetryingOn(Class<? extends Throwable>... failures) {
+        List<Class<? extends Throwable>> permanent = new ArrayList<>(permanentFailures);
+        permanent.addAll(Arrays.asList(failures));
+        return new RetryPolicy(maxAttempts, initialBackoff, backoffMultiplier, attemptTimeout, deadline,
+                               retryableFailures, Collections.unmodifiableList(permanent));
+    }
+
+    /**
+     * The same policy for work that takes the given number of times as long, e.g. a
+     * batch of files: attempt timeout and deadline are multiplied, the rest stays.
+     */
+    public RetryPolicy scaledBy(int factor) {
+        if (factor < 1) {
+            throw new IllegalArgumentException("Scale factor must be at least 1: " + factor);
+        }
+        return new RetryPolicy(maxAttempts, initialBackoff, backoffMultiplier, multiply(attemptTimeout, factor),
+                               multiply(deadline, factor), retryableFailures, permanentFailures);
+    }
+
+    private static Duration multiply(Duration duration, int factor) {
+        return duration != null ? duration.multipliedBy(factor) : null;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public Duration getAttemptTimeout() {
+        return attemptTimeout;
+    }
+
+    public Duration getDeadline() {
+        return deadline;
+    }
+
+    /**
+     * Work of one attempt, which should stop when the token is cancelled.
+     */
+    public interface Attempt<T> {
+        T run(CancellationToken token) throws Exception;
+    }
+
+    /**
+     * Runs the attempt under this policy.
+     *
+     * @param description what is being attempted, for log messages
+     * @param parent      token of the run; once cancelled, no further attempts are made
+     * @throws TimeoutException if the last attempt timed out
+     */
+    public <T> T execute(String description, CancellationToken parent, Attempt<T> attempt) throws Exception {
+        long startedAt = System.currentTimeMillis();
+        long deadlineAt = deadline != null ? startedAt + deadline.toMillis() : Long.MAX_VALUE;
+
+        for (int number = 1; ; number++) {
+            parent.throwIfCancelled();
+
+            Exception failure;
+            AtomicBoolean interrupted = new AtomicBoolean();
+            Thread worker = Thread.currentThread();
+            try (CancellationToken.Child token = parent.child()) {
+                Duration timeout = remaining(attemptTimeout, deadlineAt);
+                if (timeout != null) {
+                    token.cancelAfter(timeout, description + " timed out after " + timeout.toMillis() + "ms");
+                }
+                // Sleeps and blocking waits of the attempt end with an InterruptedException
+                CancellationToken.Registration interruption = token.onCancel(() -> {
+                    interrupted.set(true);
+                    worker.interrupt();
+                });
+                try {
+                    T result = attempt.run(token);
+                    token.throwIfCancelled(); // a killed tool may look like an ordinary failure
+                    return result;
+                } catch (Exception e) {
+                    failure = token.isCancelled() && !parent.isCancelled() ? timeout(token.getReason(), e) : e;
+                } finally {
+                    interruption.close();
+                    if (interrupted.get()) {
+                        Thread.interrupted(); // the interrupt was meant for this attempt only
+                    }
+                }
+            }
+
+            if (parent.isCancelled()) {
+                CancellationException cancelled = new CancellationException(parent.getReason());
+                cancelled.initCause(failure);
+                throw cancelled;
+            }
+            if (number >= maxAttempts || !isRetryable(failure)) {
+                throw failure;
+            }
+            Duration backoff = getBackoff(number);
+            if (System.currentTimeMillis() + backoff.toMillis() >= deadlineAt) {
+                logger.warning(description + " failed and its deadline of " + deadline.toMillis() + "ms leaves no room for another attempt");
+                throw failure;
+            }
+            logger.warning(description + " failed (attempt " + number + "/" + maxAttempts + "): " + failure.getMessage()
+                           + ", retrying in " + backoff.toMillis() + "ms");
+            parent.await(backoff); // checked at the start of the next attempt
+        }
+    }
+
+    private static Duration remaining(Duration timeout, long deadlineAt) {
+        if (deadlineAt == Long.MAX_VALUE) {
+            return timeout;
+        }
+        Duration left = Duration.ofMillis(Math.max(0, deadlineAt - System.currentTimeMillis()));
+        return timeout == null || left.compareTo(timeout) < 0 ? left : timeout;
+    }
+
+    private static TimeoutException timeout(String reason, Exception cause) {
+        TimeoutException timeout = new TimeoutException(reason);
+        timeout.initCause(cause);
+        return timeout;
+    }
+
+    Duration getBackoff(int attempt) {
+        double millis = initialBackoff.toMillis() * Math.pow(backoffMultiplier, attempt - 1);
+        return Duration.ofMillis((long) Math.min(millis, MAX_BACKOFF.toMillis()));
+    }
+
+    boolean isRetryable(Throwable failure) {
+        if (failure instanceof TimeoutException) {
+            return true;
+        }
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (matches(permanentFailures, cause)) {
+                return false;
+            }
+            if (matches(retryableFailures, cause)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean matches(List<Class<? extends Throwable>> types, Throwable failure) {
+        for (Class<? extends Throwable> type : types) {
+            if (type.isInstance(failure)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,127 @@
+package com.translation.pipeline;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.translation.config.PipelineOptions;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Durable, append-only journal of step executions ({@code .work/journal.log}).
+ * Every line is a JSON object with the file, step, status and timestamp and is
+ * forced to disk before the step continues, so an interrupted run can be resumed
+ * from the last completed step of each file.
+ *
+ * <p>With {@code --in-memory} the outputs of intermediate steps are never written,
+ * so completions are not recorded: a later {@code --resume} must not start from
+ * step directories that hold nothing or the results of an older run.
+ */
+@Singleton
+public class RunJournal {
+    private static final Logger logger = Logger.getLogger(RunJournal.class.getName());
+    private static final String JOURNAL_FILE = "journal.log";
+
+    public enum Status {
+        STARTED,
+        COMPLETED,
+        FAILED
+    }
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final File journalFile;
+    private final boolean recordCompletions;
+    private FileChannel channel;
+
+    @Inject
+    public RunJournal(WorkArea workArea, PipelineOptions options) {
+        this.journalFile = workArea.getWorkRoot().resolve(JOURNAL_FILE).toFile();
+        this.recordCompletions = options.isPersistIntermediates();
+    }
+
+    public synchronized void record(String fileName, int stepOrder, String stepName, Status status) {
+        if (status == Status.COMPLETED && !recordCompletions) {
+            return;
+        }
+        Entry entry = new Entry();
+        entry.timestamp = Instant.now().toString();
+        entry.file = fileName;
+        entry.step = stepOrder;
+        entry.stepName = stepName;
+        entry.status = status;
+
+        try {
+            if (channel == null) {
+                journalFile.getParentFile().mkdirs();
+                channel = FileChannel.open(journalFile.toPath(),
+                        StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            }
+            byte[] line = (objectMapper.writeValueAsString(entry) + "\n").getBytes(StandardCharsets.UTF_8);
+            ByteBuffer buffer = ByteBuffer.wrap(line);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            // The journal is a recovery aid; never fail the step because of it
+            logger.warning("Failed to write run journal entry for " + fileName + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Reads the journal and returns, per file, the order of the last step that
+     * completed in the most recent attempt. A step that was started again after
+     * it completed (a new run) resets the progress of that file.
+     */
+    public synchronized Map<String, Integer> readCompletedSteps() {
+        Map<String, Integer> completed = new HashMap<>();
+        if (!journalFile.exists()) {
+            return completed;
+        }
+
+        try (BufferedReader reader = Files.newBufferedReader(journalFile.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                Entry entry;
+                try {
+                    entry = objectMapper.readValue(line, Entry.class);
+                } catch (IOException e) {
+                    // A crash can leave a torn last line behind
+                    logger.fine("Skipping unreadable journal line: " + line);
+                    continue;
+                }
+                int last = completed.getOrDefault(entry.file, 0);
+                if (entry.status == Status.COMPLETED && entry.step > last) {
+                    completed.put(entry.file, entry.step);
+                } else if (entry.status == Status.STARTED && entry.step <= last) {
+                    completed.put(entry.file, entry.step - 1);
+                }
+            }
+        } catch (IOException e) {
+            logger.warning("Failed to read run journal " + journalFile.getAbsolutePath() + ": " + e.getMessage());
+        }
+        return completed;
+    }
+
+    public static class Entry {
+        public String timestamp;
+        public String file;
+        public int step;
+        public String stepName;
+        public Status status;
+    }
+}
@@ -0,0 +1,151 @@
+package com.translation.pipeline;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.inject.Inject;
+import com.translation.metrics.RunMetrics;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.logging.Logger;
+
+/**
+ * Merge command ({@code --merge <output> <shard-dir>...}): collects the directories
+ * that sharded runs left in {@code .work/shard-i-of-n} on the build nodes into one
+ * output tree with the final PDFs of all shards, the shard reports in
+ * {@code reports/} and a combined {@code run-report.json}.
+ */
+public class ShardMerger {
+    private static final Logger logger = Logger.getLogger(ShardMerger.class.getName());
+
+    private final Pipeline pipeline;
+    private final WorkArea workArea;
+    private final ObjectMapper objectMapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+    @Inject
+    public ShardMerger(Pipeline pipeline, WorkArea workArea) {
+        this.pipeline = pipeline;
+        this.workArea = workArea;
+    }
+
+    /**
+     * Merges the given shard directories into the output directory.
+     *
+     * @return whether every deck of every shard was translated
+     */
+    public boolean merge(Path output, List<Path> shardDirectories) throws IOException {
+        Path reportsDir = output.resolve("reports");
+        Files.createDirectories(reportsDir);
+
+        List<Map<String, Object>> shards = new ArrayList<>();
+        Map<String, JsonNode> files = new LinkedHashMap<>();
+        TreeSet<Integer> shardIndexes = new TreeSet<>();
+        int shardCount = 0;
+        long wallMillis = 0;
+        int copied = 0;
+
+        for (Path shardDir : shardDirectories) {
+            Path reportFile = shardDir.resolve(RunMetrics.REPORT_FILE);
+            if (!Files.exists(reportFile)) {
+                throw new IOException("No " + RunMetrics.REPORT_FILE + " in " + shardDir + ", is it the directory of a sharded run?");
+            }
+            JsonNode report = objectMapper.readTree(reportFile.toFile());
+            String shard = report.path("run").path("shard").asText(shardDir.getFileName().toString());
+            Files.copy(reportFile, reportsDir.resolve(shardDir.getFileName() + ".json"), StandardCopyOption.REPLACE_EXISTING);
+
+            String[] position = shard.split("/");
+            if (position.length == 2) {
+                shardIndexes.add(Integer.parseInt(position[0]));
+                shardCount = Math.max(shardCount, Integer.parseInt(position[1]));
+            }
+            wallMillis = Math.max(wallMillis, report.path("durationMillis").asLong());
+
+            Map<String, Object> summary = new LinkedHashMap<>();
+            summary.put("shard", shard);
+            summary.put("directory", shardDir.toString());
+            summary.put("startedAt", report.path("startedAt").asText());
+            summary.put("durationMillis", report.path("durationMillis").asLong());
+            summary.put("totals", report.path("totals"));
+            shards.add(summary);
+
+            for (JsonNode file : report.path("files")) {
+                String fileName = file.path("file").asText();
+                if (files.containsKey(fileName)) {
+                    logger.warning(fileName + " appears in more than one shard, keeping the result of shard "
+                                   + files.get(fileName).path("shard").asText());
+                    continue;
+                }
+                ((ObjectNode) file).put("shard", shard);
+                files.put(fileName, file);
+                if (FileOutcome.Status.COMPLETED.name().equals(file.path("status").asText())) {
+                    copied += copyResults(fileName, shardDir, output);
+                }
+            }
+        }
+
+        for (int index = 1; index <= shardCount; index++) {
+            if (!shardIndexes.contains(index)) {
+                logger.warning("Shard " + index + "/" + shardCount + " is missing from the merge");
+            }
+        }
+
+        List<JsonNode> sortedFiles = new ArrayList<>(files.values());
+        sortedFiles.sort(Comparator.comparing(file -> file.path("file").asText()));
+        long succeeded = sortedFiles.stream()
+                                    .filter(file -> FileOutcome.Status.COMPLETED.name().equals(file.path("status").asText()))
+                                    .count();
+
+        Map<String, Object> totals = new LinkedHashMap<>();
+        totals.put("shards", shards.size());
+        totals.put("files", sortedFiles.size());
+        totals.put("succeeded", succeeded);
+        totals.put("failed", sortedFiles.size() - succeeded);
+        totals.put("wallMillis", wallMillis);
+
+        Map<String, Object> merged = new LinkedHashMap<>();
+        merged.put("mergedAt", Instant.now().toString());
+        merged.put("totals", totals);
+        merged.put("shards", shards);
+        merged.put("files", sortedFiles);
+        Path mergedReport = output.resolve(RunMetrics.REPORT_FILE);
+        objectMapper.writeValue(mergedReport.toFile(), merged);
+
+        logger.info("Merged " + shards.size() + " shards into " + output.toAbsolutePath() + ": " + copied + " result files, "
+                    + succeeded + " of " + sortedFiles.size() + " files translated");
+        return succeeded == sortedFiles.size() && shardIndexes.size() >= shardCount;
+    }
+
+    /**
+     * Copies the final results of a file, which the shard keeps at the same place
+     * relative to its directory as this node keeps them in {@code .work}.
+     */
+    private int copyResults(String fileName, Path shardDir, Path output) throws IOException {
+        int copied = 0;
+        Path durableRoot = workArea.getDurableRoot().toAbsolutePath();
+        for (Path result : pipeline.getResultFiles(fileName)) {
+            Path relative = durableRoot.relativize(result.toAbsolutePath());
+            Path source = shardDir.resolve(relative.toString());
+            if (!Files.exists(source)) {
+                logger.warning("Missing result " + relative + " of " + fileName + " in " + shardDir);
+                continue;
+            }
+            Path target = output.resolve(relative.toString());
+            Files.createDirectories(target.getParent());
+            Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
+            copied++;
+        }
+        return copied;
+    }
+
+}
@@ -0,0 +1,115 @@
+package com.translation.pipeline;
+
+import com.google.inject.Inject;
+import com.translation.config.PipelineOptions;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Picks the files of this node's shard ({@code --shard i/n}). The assignment only
+ * depends on the file names, or with {@code --shard-strategy size} on the names
+ * and the sizes of the downloaded PDFs, so every node computes the same partition
+ * without talking to the others.
+ * <ul>
+ *   <li>{@code hash}: a file belongs to shard {@code crc32(name) mod n + 1}</li>
+ *   <li>{@code size}: files are dealt largest first to the shard with the least
+ *       bytes so far, which balances shards when a few decks are much larger</li>
+ * </ul>
+ */
+public class ShardSelector {
+    private static final Logger logger = Logger.getLogger(ShardSelector.class.getName());
+    public static final String HASH = "hash";
+    public static final String SIZE = "size";
+
+    private final PipelineOptions options;
+    private final WorkArea workArea;
+
+    @Inject
+    public ShardSelector(PipelineOptions options, WorkArea workArea) {
+        this.options = options;
+        this.workArea = workArea;
+    }
+
+    /**
+     * Returns the files of this node's shard in their original order, or all
+     * files if the run is not sharded.
+     */
+    public String[] select(String[] fileNames) {
+        if (!options.isSharded()) {
+            return fileNames;
+        }
+
+        int[] shards = SIZE.equals(options.getShardStrategy())
+                ? assignBySize(fileNames, options.getShardCount())
+                : assignByHash(fileNames, options.getShardCount());
+
+        List<String> selected = new ArrayList<>();
+        for (int i = 0; i < fileNames.length; i++) {
+            if (shards[i] == options.getShardIndex() - 1) {
+                selected.add(fileNames[i]);
+            }
+        }
+        logger.info("Shard " + options.getShardIndex() + "/" + options.getShardCount() + " (" + options.getShardStrategy()
+                    + "): " + selected.size() + " of " + fileNames.length + " files " + selected);
+        return selected.toArray(new String[0]);
+    }
+
+    private static int[] assignByHash(String[] fileNames, int shardCount) {
+        int[] shards = new int[fileNames.length];
+        for (int i = 0; i < fileNames.length; i++) {
+            // String.hashCode is stable too, but CRC32 spreads similar names like 01-..., 02-... better
+            CRC32 crc = new CRC32();
+            crc.update(fileNames[i].getBytes(StandardCharsets.UTF_8));
+            shards[i] = (int) (crc.getValue() % shardCount);
+        }
+        return shards;
+    }
+
+    private int[] assignBySize(String[] fileNames, int shardCount) {
+        Map<String, Long> sizes = new HashMap<>();
+        for (String fileName : fileNames) {
+            sizes.put(fileName, sizeOf(workArea.getStepDirectory(0).resolve(fileName + ".pdf")));
+        }
+
+        // Ties are broken by name so that the order does not depend on how the list was built
+        Integer[] byCost = new Integer[fileNames.length];
+        for (int i = 0; i < byCost.length; i++) {
+            byCost[i] = i;
+        }
+        Arrays.sort(byCost, Comparator.comparing((Integer i) -> sizes.get(fileNames[i])).reversed()
+                                      .thenComparing(i -> fileNames[i]));
+
+        long[] load = new long[shardCount];
+        int[] shards = new int[fileNames.length];
+        for (int i : byCost) {
+            int lightest = 0;
+            for (int shard = 1; shard < shardCount; shard++) {
+                if (load[shard] < load[lightest]) {
+                    lightest = shard;
+                }
+            }
+            shards[i] = lightest;
+            load[lightest] += Math.max(1, sizes.get(fileNames[i]));
+        }
+        return shards;
+    }
+
+    private static long sizeOf(Path file) {
+        try {
+            return Files.exists(file) ? Files.size(file) : 0;
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.translation.pipeline;
+
+import com.translation.config.PipelineOptions;
+import com.translation.pipeline.steps.PipelineStepBase;
+import com.translation.util.CancellationToken;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs the pipeline as a chain of stages, one per step. Stages are connected by
+ * bounded queues and every stage has its own worker pool sized by the step's
+ * {@link ResourceClass}, so decompiling, translating and compiling different
+ * files overlap and throughput is limited by the slowest stage only.
+ */
+class StagedExecution {
+    private static final Logger logger = Logger.getLogger(StagedExecution.class.getName());
+
+    /** Marks the end of the input; every stage passes it on once all its workers are done. */
+    private static final FileRun END = new FileRun(null, 0, CancellationToken.NONE);
+
+    private final Pipeline pipeline;
+    private final List<PipelineStepBase> steps;
+    private final PipelineOptions options;
+
+    StagedExecution(Pipeline pipeline, List<PipelineStepBase> steps, PipelineOptions options) {
+        this.pipeline = pipeline;
+        this.steps = steps;
+        this.options = options;
+    }
+
+    void run(String[] fileNames, Map<String, Integer> completedSteps, PipelineSummary summary) throws InterruptedException {
+        List<Stage> stages = new ArrayList<>();
+        for (PipelineStepBase step : steps) {
+            stages.add(new Stage(step, options.getStageConcurrency(step.getResourceClass()), options.getQueueCapacity()));
+        }
+        if (stages.isEmpty()) {
+            for (String fileName : fileNames) {
+                summary.add(FileOutcome.completed(fileName, 0, 0));
+            }
+            return;
+        }
+        for (int i = 0; i < stages.size() - 1; i++) {
+            stages.get(i).next = stages.get(i + 1);
+        }
+
+        for (Stage stage : stages) {
+            logger.info("Stage " + stage.step.getStepName() + " (" + stage.step.getResourceClass() + "): "
+                        + stage.workers + " workers, queue capacity " + options.getQueueCapacity());
+            stage.start(summary);
+        }
+
+        // Feeding blocks while a stage is saturated, which keeps the number of in-flight files bounded.
+        // Files resumed from the journal enter at their first pending stage.
+        for (String fileName : fileNames) {
+            int firstIndex = pipeline.getFirstStepIndex(fileName, completedSteps);
+            if (firstIndex > pipeline.getLastStepIndex()) {
+                summary.add(FileOutcome.completed(fileName, 0, 0));
+            } else {
+                stages.get(firstIndex).input.put(new FileRun(fileName, firstIndex, pipeline.getCancellationToken()));
+            }
+        }
+        stages.get(0).input.put(END);
+
+        for (Stage stage : stages) {
+            stage.join();
+        }
+    }
+
+    private final class Stage {
+        private final PipelineStepBase step;
+        private final int workers;
+        private final BlockingQueue<FileRun> input;
+        private final AtomicInteger activeWorkers;
+        private final List<Thread> threads = new ArrayList<>();
+        private Stage next;
+
+        private Stage(PipelineStepBase step, int workers, int queueCapacity) {
+            this.step = step;
+            this.workers = workers;
+            this.input = new ArrayBlockingQueue<>(queueCapacity);
+            this.activeWorkers = new AtomicInteger(workers);
+        }
+
+        private void start(PipelineSummary summary) {
+            for (int i = 0; i < workers; i++) {
+                Thread thread = new Thread(() -> work(summary), "stage-" + step.getOrder() + "-worker-" + (i + 1));
+                thread.setDaemon(true);
+                threads.add(thread);
+                thread.start();
+            }
+        }
+
+        private void work(PipelineSummary summary) {
+            try {
+                while (true) {
+                    FileRun task = input.take();
+                    if (task == END) {
+                        // Leave the marker for sibling workers
+                        input.put(END);
+                        return;
+                    }
+                    try {
+                        process(task, summary);
+                    } catch (RuntimeException e) {
+                        // A broken file must not take the worker with it, or END never reaches the next stage
+                        logger.log(Level.SEVERE, "Stage " + step.getStepName() + " failed for file " + task.getFileName(), e);
+                        String message = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+                        summary.add(task.failed(step.getStepName(), message));
+                    } catch (Error e) {
+                        summary.add(task.failed(step.getStepName(), e.toString()));
+                        throw e;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                logger.log(Level.WARNING, "Stage " + step.getStepName() + " worker interrupted", e);
+            } finally {
+                // The last worker to stop forwards the end of the input downstream
+                if (activeWorkers.decrementAndGet() == 0 && next != null) {
+                    next.endInput();
+                }
+            }
+        }
+
+        private void endInput() {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    input.put(END);
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void process(FileRun task, PipelineSummary summary) throws InterruptedException {
+            String failure = pipeline.runStep(step, task.getContext());
+            if (failure != null) {
+                summary.add(task.failed(step.getStepName(), failure));
+                return;
+            }
+            task.advance();
+            if (next != null && task.getStepIndex() <= pipeline.getLastStepIndex()) {
+                next.input.put(task);
+            } else {
+                summary.add(task.completed());
+            }
+        }
+
+        private void join() throws InterruptedException {
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package com.translation.pipeline;
+
+import com.google.common.jimfs.Jimfs;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.translation.config.Configuration;
+import com.translation.config.PipelineOptions;
+import com.translation.util.ContentHasher;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Storage for the step directories of one job. The job's work directory is
+ * {@code working_directory} from the settings or {@code --work-dir}, {@code .work}
+ * by default. Intermediate step directories are selected with {@code --work-area}:
+ * <ul>
+ *   <li>{@code disk} (default): {@code .work/step-N}</li>
+ *   <li>{@code memory}: an in-memory file system that is gone after the run</li>
+ *   <li>any other value: a directory to use instead of {@code .work}, e.g. on tmpfs;
+ *       each job and shard gets its own subdirectory in it</li>
+ * </ul>
+ * The downloaded sources in step 0 and the final PDFs always live in {@code .work}.
+ * A sharded run ({@code --shard i/n}) keeps everything but step 0 in its own
+ * {@code .work/shard-i-of-n}, so shards can be collected and merged afterwards.
+ * Workers of a shared work queue ({@code --work-queue <dir>}) use the shared
+ * directory in place of {@code .work} for the sources and the final PDFs.
+ */
+@Singleton
+public class WorkArea implements Closeable {
+    private static final Logger logger = Logger.getLogger(WorkArea.class.getName());
+    public static final String DISK = "disk";
+    public static final String MEMORY = "memory";
+
+    private final Path workRoot;
+    private final Path sourceRoot;
+    private final Path durableRoot;
+    private final Path root;
+    private final FileSystem memory;
+    private final boolean persistent;
+    private final Map<Path, Boolean> createdDirectories = new ConcurrentHashMap<>();
+
+    @Inject
+    public WorkArea(PipelineOptions options, Configuration configuration) {
+        this.workRoot = Paths.get(options.getWorkDirectory() != null ? options.getWorkDirectory() : configuration.getWorkingDirectory());
+        this.sourceRoot = options.isQueued() ? Paths.get(options.getWorkQueue()) : workRoot;
+        this.durableRoot = options.isSharded() ? sourceRoot.resolve(options.getShardName()) : sourceRoot;
+        String workArea = options.getWorkArea();
+        if (DISK.equals(workArea)) {
+            this.root = durableRoot;
+            this.memory = null;
+            this.persistent = true;
+        } else if (MEMORY.equals(workArea)) {
+            this.memory = Jimfs.newFileSystem(com.google.common.jimfs.Configuration.unix());
+            this.root = memory.getPath("/work");
+            this.persistent = false;
+            logger.info("Keeping intermediate artifacts in memory");
+        } else {
+            // Jobs with their own work directory and shards on one machine must not share step files;
+            // the name stays the same across runs, so the artifacts can still be reused
+            String key = ContentHasher.hashString(durableRoot.toAbsolutePath().normalize().toString());
+            this.root = Paths.get(workArea).resolve("work-" + key.substring(0, 12));
+            this.memory = null;
+            this.persistent = true;
+            logger.info("Keeping intermediate artifacts in " + root.toAbsolutePath());
+        }
+    }
+
+    /**
+     * The job's work directory, which also holds the journal, build manifest and run reports.
+     */
+    public Path getWorkRoot() {
+        return workRoot;
+    }
+
+    /**
+     * Directory holding the results of the given step, created on first use.
+     * Step 0 holds the downloaded sources and is always on disk.
+     */
+    public Path getStepDirectory(int stepOrder) {
+        if (stepOrder == 0) {
+            return createDirectory(sourceRoot.resolve("step-0"));
+        }
+        return createDirectory(root.resolve("step-" + stepOrder));
+    }
+
+    /**
+     * Directory in {@code .work} for results that must outlive the run, e.g. final PDFs.
+     */
+    public Path getDurableDirectory(int stepOrder) {
+        if (stepOrder == 0) {
+            return getStepDirectory(0);
+        }
+        return createDirectory(durableRoot.resolve("step-" + stepOrder));
+    }
+
+    /**
+     * Directory for the logs of external tools, next to the durable results so
+     * failures can be diagnosed after the run, created on first use.
+     */
+    public Path getLogDirectory() {
+        return createDirectory(durableRoot.resolve("ipelogs"));
+    }
+
+    /**
+     * Root of the durable results, {@code .work} or the shard's directory in it.
+     */
+    public Path getDurableRoot() {
+        return durableRoot;
+    }
+
+    /**
+     * Whether artifacts survive the run, so they can be reused by later runs.
+     */
+    public boolean isPersistent() {
+        return persistent;
+    }
+
+    /**
+     * Drops the intermediate results of an in-memory work area, e.g. once a daemon
+     * has no job running in it. Work areas on disk are left alone.
+     */
+    public void discardIntermediates() {
+        if (memory == null) {
+            return;
+        }
+        createdDirectories.clear();
+        try (Stream<Path> files = Files.walk(root)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        } catch (NoSuchFileException e) {
+            // Nothing was written yet
+        } catch (IOException e) {
+            logger.warning("Failed to discard in-memory intermediates: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Releases the work area for good, freeing the memory of an in-memory one.
+     */
+    @Override
+    public void close() throws IOException {
+        if (memory != null) {
+            discardIntermediates();
+            memory.close();
+        }
+    }
+
+    /**
+     * Makes a work-area file readable by an external tool, copying it to a
+     * temporary file if it does not live on the default file system.
+     */
+    public LocalFile localInput(Path source) throws IOException {
+        if (isLocal(source)) {
+            return new LocalFile(source, source.toFile(), false);
+        }
+        Path temp = Files.createTempFile("ipe-", "-" + source.getFileName());
+        Files.copy(source, temp, StandardCopyOption.REPLACE_EXISTING);
+        return new LocalFile(source, temp.toFile(), true);
+    }
+
+    /**
+     * A file an external tool can write to; {@link LocalFile#commit()} moves the
+     * result to the given work-area location.
+     */
+    public LocalFile localOutput(Path target) throws IOException {
+        if (isLocal(target)) {
+            return new LocalFile(target, target.toFile(), false);
+        }
+        Path temp = Files.createTempFile("ipe-", "-" + target.getFileName());
+        Files.delete(temp); // tools should see a fresh location, not an empty file
+        return new LocalFile(target, temp.toFile(), true);
+    }
+
+    private static boolean isLocal(Path path) {
+        return path.getFileSystem() == FileSystems.getDefault();
+    }
+
+    private Path createDirectory(Path directory) {
+        createdDirectories.computeIfAbsent(directory, dir -> {
+            try {
+                Files.createDirectories(dir);
+                return true;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to create work directory " + dir, e);
+            }
+        });
+        return directory;
+    }
+
+    /**
+     * A file on the default file system standing in for a work-area path.
+     */
+    public static final class LocalFile implements Closeable {
+        private final Path target;
+        private final File file;
+        private final boolean staged;
+
+        private LocalFile(Path target, File file, boolean staged) {
+            this.target = target;
+            this.file = file;
+            this.staged = staged;
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        /**
+         * Copies what a tool wrote to the local file into the work area.
+         */
+        public void commit() throws IOException {
+            if (staged && file.exists()) {
+                Files.copy(file.toPath(), target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (staged) {
+                Files.deleteIfExists(file.toPath());
+            }
+        }
+    }
+}
@@ -1,33 +1,58 @@
 package com.translation.pipeline.steps;
 
 import com.google.inject.Inject;
+import com.translation.pipeline.FileContext;
+import com.translation.pipeline.ResourceClass;
+import com.translation.pipeline.RetryPolicy;
+import com.translation.pipeline.WorkArea;
 import com.translation.config.Configuration;
+import com.translation.extraction.ExtractionResult;
+import com.translation.extraction.TextElement;
+import com.translation.extraction.TranslationValidator;
 import com.translation.ipe.CompilerException;
+import com.translation.util.FileManager;
 import com.translation.util.IpeWrapper;
-import java.io.File;
+import com.translation.util.ProcessResult;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
 
 public class CompileStep extends PipelineStepBase {
     private static final int STEP_ORDER = 5;
     private final IpeWrapper ipeWrapper;
+    private final TranslationValidator validator;
+    private final Configuration configuration;
 
     // file-handling
     private static final String INPUT_EXT = ".xml";
     private static final String OUTPUT_EXT = ".pdf";
     
-    // IPE log file handling
-    private static final String IPE_LOG_PATH = "C:\\Users\\raine\\AppData\\Local\\ipe\\ipetemp.log";
-    private static final String IPE_TEX_PATH = "C:\\Users\\raine\\AppData\\Local\\ipe\\ipetemp.tex";
-    private static final String IPE_LOGS_DIR = "ipelogs";
+    // output of ipetoipe, in the work area's log directory; the LaTeX files of failed decks are kept next to it
+    private static final String LOG_EXT = ".log";
+    private static final int LOG_TAIL_LINES = 20;
+
+    // structure and segments compared by the validation before compiling, if earlier runs kept them
+    private static final int EXTRACTION_STEP = 2;
+    private static final int TRANSLATION_STEP = 3;
+    private static final String SEGMENTS_EXT = ".txt";
+    private static final int MAX_REPORTED_PROBLEMS = 10;
 
     @Inject
-    public CompileStep(IpeWrapper ipeWrapper, Configuration configuration) {
+    public CompileStep(IpeWrapper ipeWrapper, TranslationValidator validator, Configuration configuration) {
         super("IPE Compilation");
         this.ipeWrapper = ipeWrapper;
+        this.validator = validator;
+        this.configuration = configuration;
     }
 
     @Override
@@ -36,68 +61,224 @@ public class CompileStep extends PipelineStepBase {
     }
 
     @Override
-    protected boolean performAction(String fileName) throws Exception {
+    public ResourceClass getResourceClass() {
+        return ResourceClass.PROCESS;
+    }
+
+    @Override
+    protected RetryPolicy getRetryPolicy() {
+        // A LaTeX error fails the same way every time, so only hangs and I/O errors are retried.
+        // ipetoipe is killed after compile_timeout_seconds, which surfaces as a TimeoutException.
+        return RetryPolicy.attempts(2)
+                          .retryingOn(IOException.class, TimeoutException.class);
+    }
+
+    @Override
+    protected boolean performAction(String fileName, FileContext context) throws Exception {
         if (fileName != null && !fileName.trim().isEmpty()) {
             // single-file compilation
-            File xmlFile = new File(getInputDirectory(), fileName + INPUT_EXT);
-            if (!xmlFile.exists()) {
-                logger.warning("XML file not found: " + xmlFile.getAbsolutePath() + " (likely previous step failed)");
+            Path xmlFile = getInputDirectory().resolve(fileName + INPUT_EXT);
+            if (!Files.exists(xmlFile)) {
+                logger.warning("XML file not found: " + xmlFile.toAbsolutePath() + " (likely previous step failed)");
                 return false;
             }
 
-            File outputFile = new File(getOutputDirectory(), fileName + OUTPUT_EXT);
-            logger.info("Compiling: " + xmlFile.getName() + " -> " + outputFile.getName());
+            validate(fileName, context, xmlFile);
 
-            try {
-                ipeWrapper.compile(xmlFile.getAbsolutePath(), outputFile.getAbsolutePath());
-                logger.fine("Successfully compiled: " + outputFile.getAbsolutePath());
-                return true;
+            Path outputFile = getOutputDirectory().resolve(fileName + OUTPUT_EXT);
+            Path logFile = getWorkArea().getLogDirectory().resolve(fileName + LOG_EXT);
+            logger.info("Compiling: " + xmlFile.getFileName() + " -> " + outputFile.getFileName());
+
+            ProcessResult result;
+            // ipetoipe can only read from the local file system
+            try (WorkArea.LocalFile localInput = getWorkArea().localInput(xmlFile)) {
+                result = ipeWrapper.compile(localInput.getFile().getAbsolutePath(), outputFile.toAbsolutePath().toString(),
+                                            logFile, context.getCancellationToken());
             } catch (Exception e) {
-                logger.warning("Failed to compile: " + xmlFile.getName() + " - " + e.getMessage());
-                saveIpeFiles(fileName);
+                logger.warning("Failed to compile: " + xmlFile.getFileName() + " - " + e.getMessage() + ", see " + logFile.toAbsolutePath());
                 // Wrap in CompilerException for more specific error handling
-                throw new CompilerException("IPE compilation failed for " + xmlFile.getName(), e);
+                throw new CompilerException("IPE compilation failed for " + xmlFile.getFileName(), e);
+            }
+
+            if (!checkResult(fileName, result)) {
+                throw new CompilerException("IPE compilation failed for " + xmlFile.getFileName() + " with exit code: " + result.getExitCode());
             }
+
+            logger.fine("Successfully compiled: " + outputFile.toAbsolutePath());
+            return true;
         } else {
             throw new Exception("No filename provided for compilation");
         }
     }
 
     /**
-     * Copies the IPE log and tex files to our ipelogs directory when compilation fails
+     * Fails a deck that cannot compile before ipetoipe spends a LaTeX run on it,
+     * naming the segments at fault.
+     *
+     * @throws CompilerException if the restored XML has problems
      */
-    private void saveIpeFiles(String xmlFileName) {
-        try {
-            // Create ipelogs directory if it doesn't exist
-            Path ipeLogsDir = Paths.get(IPE_LOGS_DIR);
-            if (!Files.exists(ipeLogsDir)) {
-                Files.createDirectories(ipeLogsDir);
+    private void validate(String fileName, FileContext context, Path xmlFile) throws CompilerException, IOException {
+        if (!configuration.isValidateBeforeCompile()) {
+            return;
+        }
+        String restoredXml = context.get(TextRestorationStep.RESTORED_XML);
+        if (restoredXml == null) {
+            restoredXml = FileManager.readFile(xmlFile);
+        }
+        String structureXml = null;
+        ExtractionResult extraction = context.get(TextExtractionStep.EXTRACTION_RESULT);
+        if (extraction != null) {
+            structureXml = extraction.getProcessedXml();
+        } else if (Files.exists(getStepDirectory(EXTRACTION_STEP).resolve(fileName + INPUT_EXT))) {
+            structureXml = FileManager.readFile(getStepDirectory(EXTRACTION_STEP).resolve(fileName + INPUT_EXT));
+        }
+        Map<Integer, String> originalTexts;
+        if (extraction != null) {
+            originalTexts = new LinkedHashMap<>();
+            for (TextElement element : extraction.getTextElements()) {
+                originalTexts.put(element.getId(), element.getOriginalText());
             }
+        } else {
+            List<String> originalSegments = readSegments(getStepDirectory(EXTRACTION_STEP).resolve(fileName + SEGMENTS_EXT));
+            originalTexts = originalSegments != null ? TranslationValidator.originalTexts(originalSegments) : null;
+        }
+        List<String> translatedSegments = context.get(TranslationStep.TRANSLATED_SEGMENTS);
+        if (translatedSegments == null) {
+            translatedSegments = readSegments(getStepDirectory(TRANSLATION_STEP).resolve(fileName + SEGMENTS_EXT));
+        }
+
+        List<TranslationValidator.Problem> problems = validator.validate(structureXml, restoredXml, originalTexts, translatedSegments);
+        recordMetric(fileName, "validationProblems", problems.size());
+        if (problems.isEmpty()) {
+            return;
+        }
+
+        StringBuilder report = new StringBuilder();
+        for (TranslationValidator.Problem problem : problems.subList(0, Math.min(problems.size(), MAX_REPORTED_PROBLEMS))) {
+            report.append(System.lineSeparator()).append("  ").append(problem);
+        }
+        if (problems.size() > MAX_REPORTED_PROBLEMS) {
+            report.append(System.lineSeparator()).append("  ... ").append(problems.size() - MAX_REPORTED_PROBLEMS).append(" more");
+        }
+        logger.warning("Not compiling " + xmlFile.getFileName() + ", the translation has " + problems.size() + " problems:" + report);
 
-            // Save log file
-            Path ipeLogPath = Paths.get(IPE_LOG_PATH);
-            if (Files.exists(ipeLogPath)) {
-                String logFileName = xmlFileName + ".log";
-                Path destinationLogPath = ipeLogsDir.resolve(logFileName);
-                Files.copy(ipeLogPath, destinationLogPath, StandardCopyOption.REPLACE_EXISTING);
-                logger.info("Saved IPE compilation log to: " + destinationLogPath.toAbsolutePath());
-            } else {
-                logger.warning("IPE log file not found at: " + IPE_LOG_PATH);
+        Set<Integer> segments = new TreeSet<>();
+        for (TranslationValidator.Problem problem : problems) {
+            if (problem.getSegmentId() != null) {
+                segments.add(problem.getSegmentId());
             }
+        }
+        throw new CompilerException("Validation failed for " + xmlFile.getFileName()
+                                    + (segments.isEmpty() ? ": " + problems.get(0) : " in segments " + segments));
+    }
 
-            // Save tex file
-            Path ipeTexPath = Paths.get(IPE_TEX_PATH);
-            if (Files.exists(ipeTexPath)) {
-                String texFileName = xmlFileName + ".tex";
-                Path destinationTexPath = ipeLogsDir.resolve(texFileName);
-                Files.copy(ipeTexPath, destinationTexPath, StandardCopyOption.REPLACE_EXISTING);
-                logger.info("Saved IPE compilation tex file to: " + destinationTexPath.toAbsolutePath());
-            } else {
-                logger.warning("IPE tex file not found at: " + IPE_TEX_PATH);
+    private static List<String> readSegments(Path segmentsFile) throws IOException {
+        return Files.exists(segmentsFile) ? Files.readAllLines(segmentsFile) : null;
+    }
+
+    /**
+     * Records the metrics of a compilation and logs why it failed, if it did.
+     *
+     * @return whether the PDF was produced
+     */
+    private boolean checkResult(String fileName, ProcessResult result) {
+        recordMetric(fileName, "exitCode", result.getExitCode());
+        recordMetric(fileName, "toolMillis", result.getDuration().toMillis());
+        if (result.getExitCode() != 0) {
+            logger.warning("Failed to compile: " + fileName + INPUT_EXT + " - exit code " + result.getExitCode()
+                           + ", see " + result.getLogFile().toAbsolutePath() + System.lineSeparator() + result.getOutputTail(LOG_TAIL_LINES));
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Batches pay off with ipescript workers, which stay busy when they are handed
+     * all decks at once instead of one after the other.
+     */
+    @Override
+    public boolean supportsBatch() {
+        return configuration.getIpeScriptWorkers() > 0;
+    }
+
+    /**
+     * Queues the compilation of all files at once. A deck whose compilation failed
+     * for another reason than LaTeX, e.g. a timeout, is compiled once more on its own.
+     */
+    @Override
+    protected Map<String, Boolean> performBatch(List<FileContext> contexts) throws Exception {
+        Map<String, Boolean> results = new LinkedHashMap<>();
+        Map<String, WorkArea.LocalFile> inputs = new LinkedHashMap<>();
+        Map<String, CompletableFuture<ProcessResult>> compilations = new LinkedHashMap<>();
+        List<FileContext> retries = new ArrayList<>();
+        try {
+            for (FileContext context : contexts) {
+                String fileName = context.getFileName();
+                Path xmlFile = getInputDirectory().resolve(fileName + INPUT_EXT);
+                if (!Files.exists(xmlFile)) {
+                    logger.warning("XML file not found: " + xmlFile.toAbsolutePath() + " (likely previous step failed)");
+                    results.put(fileName, false);
+                    continue;
+                }
+                try {
+                    validate(fileName, context, xmlFile);
+                } catch (CompilerException e) {
+                    results.put(fileName, false);
+                    continue;
+                }
+                WorkArea.LocalFile localInput = getWorkArea().localInput(xmlFile);
+                inputs.put(fileName, localInput);
+                Path outputFile = getOutputDirectory().resolve(fileName + OUTPUT_EXT);
+                Path logFile = getWorkArea().getLogDirectory().resolve(fileName + LOG_EXT);
+                compilations.put(fileName, ipeWrapper.compileAsync(localInput.getFile().getAbsolutePath(),
+                                                                   outputFile.toAbsolutePath().toString(), logFile,
+                                                                   context.getCancellationToken()));
+            }
+            logger.info("Compiling " + compilations.size() + " files");
+
+            for (FileContext context : contexts) {
+                CompletableFuture<ProcessResult> compilation = compilations.get(context.getFileName());
+                if (compilation == null) {
+                    continue;
+                }
+                try {
+                    results.put(context.getFileName(), checkResult(context.getFileName(), compilation.get()));
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof CancellationException) {
+                        throw (CancellationException) e.getCause();
+                    }
+                    logger.warning("Failed to compile: " + context.getFileName() + INPUT_EXT + " - " + e.getCause().getMessage());
+                    retries.add(context);
+                }
+            }
+        } finally {
+            for (WorkArea.LocalFile input : inputs.values()) {
+                input.close();
             }
+        }
 
-        } catch (IOException e) {
-            logger.warning("Failed to save IPE files: " + e.getMessage());
+        for (FileContext context : retries) {
+            try {
+                results.put(context.getFileName(), performAction(context.getFileName(), context));
+            } catch (CompilerException e) {
+                results.put(context.getFileName(), false);
+            }
         }
+        return results;
+    }
+
+    @Override
+    protected boolean producesFinalOutput() {
+        return true;
+    }
+
+    @Override
+    protected List<Path> getInputFiles(String fileName) {
+        return List.of(getInputDirectory().resolve(fileName + INPUT_EXT));
+    }
+
+    @Override
+    protected List<Path> getOutputFiles(String fileName) {
+        return List.of(getOutputDirectory().resolve(fileName + OUTPUT_EXT));
     }
 }
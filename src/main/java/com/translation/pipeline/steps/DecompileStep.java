@@ -1,24 +1,59 @@
 package com.translation.pipeline.steps;
 
 import com.google.inject.Inject;
+import com.translation.pipeline.FileContext;
+import com.translation.pipeline.ResourceClass;
+import com.translation.pipeline.RetryPolicy;
 import com.translation.config.Configuration;
+import com.translation.ipe.IpeFileSniffer;
+import com.translation.ipe.IpePdfExtractor;
+import com.translation.util.CancellationToken;
 import com.translation.util.IpeWrapper;
 
+import com.translation.pipeline.WorkArea;
+
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class DecompileStep extends PipelineStepBase {
     private static final int STEP_ORDER = 1;
     private final IpeWrapper ipeWrapper;
+    private final IpePdfExtractor pdfExtractor;
+    private final IpeFileSniffer sniffer;
     private final Configuration configuration;
 
     // file-handling
     private static final String INPUT_EXT = ".pdf";
     private static final String OUTPUT_EXT = ".xml";
 
+    // In-process extraction maps and inflates whole PDFs, which does not belong on the common pool
+    private static final AtomicInteger extractorCounter = new AtomicInteger();
+    private static final ExecutorService extractors = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(), runnable -> {
+                Thread thread = new Thread(runnable, "pdf-extractor-" + extractorCounter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+
     @Inject
-    public DecompileStep(IpeWrapper ipeWrapper, Configuration configuration) {
+    public DecompileStep(IpeWrapper ipeWrapper, IpePdfExtractor pdfExtractor, IpeFileSniffer sniffer,
+                         Configuration configuration) {
         super("decompile");
         this.ipeWrapper = ipeWrapper;
+        this.pdfExtractor = pdfExtractor;
+        this.sniffer = sniffer;
         this.configuration = configuration;
     }
 
@@ -28,25 +63,163 @@ public class DecompileStep extends PipelineStepBase {
     }
 
     @Override
-    protected boolean performAction(String fileName) throws Exception {
+    public ResourceClass getResourceClass() {
+        // Decks are inflated in-process; the few that need ipeextract are limited by its process pool
+        return ResourceClass.CPU;
+    }
+
+    @Override
+    protected RetryPolicy getRetryPolicy() {
+        // ipeextract is killed after 15s; a batch may wait longer than that for the process pool
+        return RetryPolicy.attempts(2)
+                          .retryingOn(IOException.class);
+    }
+
+    @Override
+    protected boolean performAction(String fileName, FileContext context) throws Exception {
         if (fileName == null || fileName.trim().isEmpty()) {
             throw new Exception("Single-file mode: filename (without extension) must be provided");
         }
 
-        File pdfFile = new File(getInputDirectory(), fileName + INPUT_EXT);
-        if (!pdfFile.exists()) {
-            throw new Exception("PDF file not found: " + pdfFile.getAbsolutePath());
+        Path pdfFile = getInputDirectory().resolve(fileName + INPUT_EXT);
+        if (!Files.exists(pdfFile)) {
+            throw new Exception("PDF file not found: " + pdfFile.toAbsolutePath());
         }
 
-        File outputFile = new File(getOutputDirectory(), fileName + OUTPUT_EXT);
-        logger.info("Extracting IPE XML from: " + pdfFile.getName() + " -> " + outputFile.getName());
+        Path outputFile = getOutputDirectory().resolve(fileName + OUTPUT_EXT);
+        logger.info("Extracting IPE XML from: " + pdfFile.getFileName() + " -> " + outputFile.getFileName());
 
-        if (!ipeWrapper.extractXml(pdfFile, outputFile)) {
-            logger.warning("Failed to extract IPE XML from: " + pdfFile.getName() + " (likely not an IPE file)");
-            return false;
+        // ipeextract can only write to the local file system
+        try (WorkArea.LocalFile localOutput = getWorkArea().localOutput(outputFile)) {
+            if (!extractInProcess(pdfFile, localOutput.getFile())
+                    && (isNotIpe(pdfFile)
+                        || !ipeWrapper.extractXml(pdfFile.toFile(), localOutput.getFile(), context.getCancellationToken()))) {
+                logger.warning("Failed to extract IPE XML from: " + pdfFile.getFileName() + " (likely not an IPE file)");
+                return false;
+            }
+            localOutput.commit();
         }
 
-        logger.fine("Successfully extracted IPE XML to: " + outputFile.getAbsolutePath());
+        logger.fine("Successfully extracted IPE XML to: " + outputFile.toAbsolutePath());
         return true;
     }
-}
\ No newline at end of file
+
+    @Override
+    public boolean supportsBatch() {
+        return true;
+    }
+
+    /**
+     * Extracts all files at once: the in-process extractions run in parallel and
+     * the process pool decides how many ipeextract fallbacks run at the same time.
+     * A file whose extraction threw, e.g. an I/O error, is extracted once more on
+     * its own, so it does not fail the other files of the batch.
+     */
+    @Override
+    protected Map<String, Boolean> performBatch(List<FileContext> contexts) throws Exception {
+        Map<String, Boolean> results = new LinkedHashMap<>();
+        Map<String, WorkArea.LocalFile> outputs = new LinkedHashMap<>();
+        Map<String, CompletableFuture<Boolean>> extractions = new LinkedHashMap<>();
+        Map<String, FileContext> byName = new LinkedHashMap<>();
+        List<FileContext> retries = new ArrayList<>();
+        try {
+            for (FileContext context : contexts) {
+                String fileName = context.getFileName();
+                byName.put(fileName, context);
+                Path pdfFile = getInputDirectory().resolve(fileName + INPUT_EXT);
+                if (!Files.exists(pdfFile)) {
+                    logger.warning("PDF file not found: " + pdfFile.toAbsolutePath());
+                    results.put(fileName, false);
+                    continue;
+                }
+                WorkArea.LocalFile localOutput = getWorkArea().localOutput(getOutputDirectory().resolve(fileName + OUTPUT_EXT));
+                outputs.put(fileName, localOutput);
+                extractions.put(fileName, extractAsync(pdfFile, localOutput.getFile(), context.getCancellationToken()));
+            }
+            logger.info("Extracting IPE XML from " + extractions.size() + " files");
+
+            for (Map.Entry<String, CompletableFuture<Boolean>> extraction : extractions.entrySet()) {
+                String fileName = extraction.getKey();
+                boolean extracted;
+                try {
+                    extracted = extraction.getValue().get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof CancellationException) {
+                        throw (CancellationException) e.getCause();
+                    }
+                    logger.warning("Failed to extract IPE XML from: " + fileName + INPUT_EXT + " - " + e.getCause().getMessage());
+                    retries.add(byName.get(fileName));
+                    continue;
+                }
+                if (extracted) {
+                    outputs.get(fileName).commit();
+                } else {
+                    logger.warning("Failed to extract IPE XML from: " + fileName + INPUT_EXT + " (likely not an IPE file)");
+                }
+                results.put(fileName, extracted);
+            }
+        } finally {
+            for (WorkArea.LocalFile output : outputs.values()) {
+                output.close();
+            }
+        }
+
+        for (FileContext context : retries) {
+            try {
+                results.put(context.getFileName(), performAction(context.getFileName(), context));
+            } catch (CancellationException e) {
+                throw e;
+            } catch (Exception e) {
+                logger.warning("Failed to extract IPE XML from: " + context.getFileName() + INPUT_EXT + " - " + e.getMessage());
+                results.put(context.getFileName(), false);
+            }
+        }
+        return results;
+    }
+
+    private CompletableFuture<Boolean> extractAsync(Path pdfFile, File outputFile, CancellationToken token) {
+        return CompletableFuture.supplyAsync(() -> extractInProcess(pdfFile, outputFile), extractors)
+                                .thenCompose(extracted -> extracted || isNotIpe(pdfFile)
+                                        ? CompletableFuture.completedFuture(extracted)
+                                        : ipeWrapper.extractXmlAsync(pdfFile.toFile(), outputFile, token));
+    }
+
+    /**
+     * Reads the IPE stream without ipeextract.
+     *
+     * @return whether it worked; if not, ipeextract should be tried
+     */
+    private boolean extractInProcess(Path pdfFile, File outputFile) {
+        try {
+            if (pdfExtractor.extract(pdfFile, outputFile.toPath())) {
+                return true;
+            }
+        } catch (IOException e) {
+            logger.fine("In-process extraction failed for " + pdfFile.getFileName() + ": " + e.getMessage());
+        }
+        logger.fine("Falling back to ipeextract for " + pdfFile.getFileName());
+        return false;
+    }
+
+    /**
+     * Whether the PDF certainly has no IPE stream, so ipeextract would only fail
+     * as well. Usually such files never get here, see {@code IpeFileSelector}.
+     */
+    private boolean isNotIpe(Path pdfFile) {
+        try {
+            return sniffer.sniff(pdfFile) == IpeFileSniffer.Verdict.NOT_IPE;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    @Override
+    protected List<Path> getInputFiles(String fileName) {
+        return List.of(getInputDirectory().resolve(fileName + INPUT_EXT));
+    }
+
+    @Override
+    protected List<Path> getOutputFiles(String fileName) {
+        return List.of(getOutputDirectory().resolve(fileName + OUTPUT_EXT));
+    }
+}
@@ -1,9 +1,30 @@
 package com.translation.pipeline.steps;
 
-import com.translation.Constants;
+import com.google.inject.Inject;
+import com.translation.config.PipelineOptions;
+import com.translation.metrics.RunMetrics;
+import com.translation.metrics.StepEvent;
+import com.translation.metrics.StepRecord;
+import com.translation.pipeline.BuildManifest;
+import com.translation.pipeline.FileContext;
 import com.translation.pipeline.PipelineStepException;
+import com.translation.pipeline.ResourceClass;
+import com.translation.pipeline.RetryPolicy;
+import com.translation.pipeline.WorkArea;
+import com.translation.util.CancellationToken;
 
-import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 import java.util.logging.Level;
 
@@ -11,49 +32,389 @@ public abstract class PipelineStepBase {
     protected final Logger logger;
     private final String stepName;
     private final int order;
-    private final File inputDirectory;
-    private final File outputDirectory;
+    private WorkArea workArea;
+    private BuildManifest buildManifest;
+    private RunMetrics runMetrics;
+    private boolean persistIntermediates = true;
 
     public PipelineStepBase(String stepName) {
         this.order = getStepOrder();
         this.stepName = stepName;
         this.logger = Logger.getLogger(this.getClass().getName());
-        
-        this.inputDirectory = new File(Constants.WORK_DIR + "/step-" + (order - 1));
-        this.outputDirectory = new File(Constants.WORK_DIR + "/step-" + order);
-        
-        if (!outputDirectory.exists()) {
-            outputDirectory.mkdirs();
-        }
+    }
+
+    @Inject
+    void injectServices(WorkArea workArea, BuildManifest buildManifest, PipelineOptions options, RunMetrics runMetrics) {
+        this.workArea = workArea;
+        this.buildManifest = buildManifest;
+        this.runMetrics = runMetrics;
+        this.persistIntermediates = options.isPersistIntermediates();
     }
 
     protected abstract int getStepOrder();
 
+    /**
+     * The resource this step is bound by; staged execution sizes the step's
+     * worker pool from it. Steps are CPU-bound unless they say otherwise.
+     */
+    public ResourceClass getResourceClass() {
+        return ResourceClass.CPU;
+    }
+
     public final boolean execute(String fileName) throws Exception {
+        return execute(fileName, new FileContext(fileName));
+    }
+
+    public final boolean execute(String fileName, FileContext context) throws Exception {
         logger.fine("Starting pipeline step: " + stepName);
+        Execution execution = new Execution(fileName);
         
         try {
-            boolean success = performAction(fileName);
-            if (success) {
-                logger.fine("Successfully completed pipeline step: " + stepName);
-            } else {
-                logger.fine("Pipeline step skipped: " + stepName);
+            if (execution.isUpToDate()) {
+                return true;
             }
+
+            boolean success = runAttempts(getRetryPolicy(), stepName + " for " + fileName, List.of(context),
+                                          () -> performAction(fileName, context));
+            execution.finish(success);
             return success;
         } catch (Exception e) {
             logger.log(Level.SEVERE, "Failed to execute pipeline step: " + stepName, e);
+            execution.fail();
             throw new PipelineStepException(stepName, order, e.getMessage(), e);
         }
     }
 
-    protected abstract boolean performAction(String fileName) throws Exception;
+    /**
+     * Whether handing this step many files in one {@link #performBatch} call pays
+     * off, e.g. because it shares requests or tool processes between them.
+     */
+    public boolean supportsBatch() {
+        return false;
+    }
+
+    /**
+     * Runs this step for several files at once. Files whose results are still up to
+     * date are left out of the batch. Metrics of every file in the batch cover the
+     * whole batch call.
+     *
+     * @return per file whether the step succeeded; a file that failed must skip later steps
+     * @throws PipelineStepException if the batch as a whole failed, which fails every file in it
+     */
+    public final Map<String, Boolean> executeBatch(List<FileContext> contexts) throws Exception {
+        logger.fine("Starting batched pipeline step: " + stepName + " for " + contexts.size() + " files");
+        Map<String, Boolean> results = new LinkedHashMap<>();
+        Map<String, Execution> executions = new LinkedHashMap<>();
+        List<FileContext> pending = new ArrayList<>();
+
+        for (FileContext context : contexts) {
+            Execution execution = new Execution(context.getFileName());
+            if (execution.isUpToDate()) {
+                results.put(context.getFileName(), true);
+            } else {
+                executions.put(context.getFileName(), execution);
+                pending.add(context);
+            }
+        }
+        if (pending.isEmpty()) {
+            return results;
+        }
+
+        Map<String, Boolean> batchResults;
+        try {
+            batchResults = runAttempts(getBatchRetryPolicy(pending.size()), stepName + " for " + pending.size() + " files",
+                                       pending, () -> performBatch(pending));
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "Failed to execute batched pipeline step: " + stepName, e);
+            for (Execution execution : executions.values()) {
+                execution.fail();
+            }
+            throw new PipelineStepException(stepName, order, e.getMessage(), e);
+        }
+
+        for (Map.Entry<String, Execution> entry : executions.entrySet()) {
+            boolean success = Boolean.TRUE.equals(batchResults.get(entry.getKey()));
+            entry.getValue().finish(success);
+            results.put(entry.getKey(), success);
+        }
+        return results;
+    }
+
+    /**
+     * How often and how long this step may try to process a file, see {@link RetryPolicy}.
+     * Steps run once without a timeout unless they say otherwise.
+     */
+    protected RetryPolicy getRetryPolicy() {
+        return RetryPolicy.NONE;
+    }
+
+    /**
+     * How often and how long this step may try one {@link #performBatch} call for the
+     * given number of files. By default the step's policy with timeout and deadline
+     * multiplied by the number of files, since a batch does the work of all of them.
+     */
+    protected RetryPolicy getBatchRetryPolicy(int files) {
+        return getRetryPolicy().scaledBy(files);
+    }
+
+    /**
+     * Runs the action under the given retry policy. While an attempt runs, the
+     * contexts carry its cancellation token, so tools started by the step are
+     * stopped when the attempt times out.
+     */
+    private <T> T runAttempts(RetryPolicy policy, String description, List<FileContext> contexts, Callable<T> action)
+            throws Exception {
+        List<CancellationToken> parents = new ArrayList<>();
+        for (FileContext context : contexts) {
+            parents.add(context.getCancellationToken());
+        }
+        AtomicInteger attempts = new AtomicInteger();
+        // A batch stops as soon as any of its files is cancelled
+        try (CancellationToken.Child parent = CancellationToken.anyOf(new LinkedHashSet<>(parents))) {
+            return policy.execute(description, parent, token -> {
+                attempts.incrementAndGet();
+                for (FileContext context : contexts) {
+                    context.setCancellationToken(token);
+                }
+                return action.call();
+            });
+        } finally {
+            for (int i = 0; i < contexts.size(); i++) {
+                contexts.get(i).setCancellationToken(parents.get(i));
+                if (attempts.get() > 1) {
+                    recordMetric(contexts.get(i).getFileName(), "attempts", attempts.get());
+                }
+            }
+        }
+    }
+
+    /**
+     * Processes several files in one call, amortizing fixed per-call costs. By
+     * default every file is processed on its own with {@link #performAction}, and
+     * an exception fails only the file that threw it.
+     *
+     * @return per file name whether processing succeeded; missing entries count as failed
+     */
+    protected Map<String, Boolean> performBatch(List<FileContext> contexts) throws Exception {
+        Map<String, Boolean> results = new LinkedHashMap<>();
+        for (FileContext context : contexts) {
+            try {
+                results.put(context.getFileName(), performAction(context.getFileName(), context));
+            } catch (CancellationException e) {
+                throw e;
+            } catch (Exception e) {
+                logger.log(Level.WARNING, stepName + " failed for file " + context.getFileName() + ": " + e.getMessage(), e);
+                results.put(context.getFileName(), false);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Processes one file of a batch on its own with {@link #performAction} under the
+     * step's per-file retry policy, e.g. after a request shared with other files
+     * failed. A failure fails only this file.
+     */
+    protected final boolean performAlone(FileContext context) {
+        String fileName = context.getFileName();
+        try {
+            return runAttempts(getRetryPolicy(), stepName + " for " + fileName, List.of(context),
+                               () -> performAction(fileName, context));
+        } catch (CancellationException e) {
+            throw e;
+        } catch (Exception e) {
+            logger.log(Level.WARNING, stepName + " failed for file " + fileName + ": " + e.getMessage(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Build-cache, metrics and JFR bookkeeping around one step execution for one file.
+     */
+    private final class Execution {
+        private final String fileName;
+        private final StepRecord record;
+        private final StepEvent event;
+        private String inputsHash;
+
+        private Execution(String fileName) {
+            this.fileName = fileName;
+            this.record = runMetrics != null ? runMetrics.startStep(fileName, order, stepName) : null;
+            this.event = new StepEvent();
+            event.begin();
+        }
+
+        private boolean isUpToDate() throws Exception {
+            if (buildManifest == null) {
+                return false;
+            }
+            inputsHash = buildManifest.hashInputs(getStepVersion(), getInputFiles(fileName));
+            if (buildManifest.isUpToDate(order, fileName, getStepVersion(), inputsHash, getOutputFiles(fileName))) {
+                logger.info("Step " + stepName + " is up to date for " + fileName + ", skipping");
+                finishRecord(StepRecord.Status.CACHED);
+                return true;
+            }
+            return false;
+        }
+
+        private void finish(boolean success) throws Exception {
+            if (success) {
+                logger.fine("Successfully completed pipeline step: " + stepName);
+                if (buildManifest != null) {
+                    buildManifest.record(order, fileName, getStepVersion(), inputsHash, getOutputFiles(fileName));
+                }
+            } else {
+                logger.fine("Pipeline step skipped: " + stepName);
+                if (buildManifest != null) {
+                    buildManifest.invalidate(order, fileName);
+                }
+            }
+            finishRecord(success ? StepRecord.Status.COMPLETED : StepRecord.Status.SKIPPED);
+        }
+
+        private void fail() {
+            finishRecord(StepRecord.Status.FAILED);
+            if (buildManifest != null) {
+                try {
+                    buildManifest.invalidate(order, fileName);
+                } catch (IOException e) {
+                    logger.warning("Failed to invalidate build manifest for " + fileName + ": " + e.getMessage());
+                }
+            }
+        }
+
+        private void finishRecord(StepRecord.Status status) {
+            event.end();
+            boolean commitEvent = event.shouldCommit();
+            if (record == null && !commitEvent) {
+                return;
+            }
+
+            long bytesIn = totalSize(getInputFiles(fileName));
+            long bytesOut = totalSize(getOutputFiles(fileName));
+            if (record != null) {
+                runMetrics.finishStep(record, status, bytesIn, bytesOut);
+            }
+            if (commitEvent) {
+                event.file = fileName;
+                event.step = stepName;
+                event.order = order;
+                event.outcome = status.name().toLowerCase();
+                event.bytesIn = bytesIn;
+                event.bytesOut = bytesOut;
+                event.commit();
+            }
+        }
+    }
+
+    private static long totalSize(List<Path> files) {
+        long size = 0;
+        for (Path file : files) {
+            try {
+                if (Files.exists(file)) {
+                    size += Files.size(file);
+                }
+            } catch (IOException e) {
+                // Only used for reporting, a file that vanished counts as empty
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Adds a step-specific value (e.g. number of extracted segments) to the run report.
+     */
+    protected void recordMetric(String fileName, String name, long value) {
+        if (runMetrics != null) {
+            runMetrics.addCounter(fileName, order, name, value);
+        }
+    }
+
+    /**
+     * Processes one file. Results that the next step needs should be put into the
+     * context; whether they are also written to the output directory is up to
+     * {@link #shouldPersistIntermediates()}.
+     */
+    protected abstract boolean performAction(String fileName, FileContext context) throws Exception;
+
+    /**
+     * Whether intermediate artifacts that are already handed over in memory
+     * should still be written to the step directory (for debugging, resuming
+     * and the incremental build cache). Disabled with {@code --in-memory}.
+     */
+    protected boolean shouldPersistIntermediates() {
+        return persistIntermediates;
+    }
+
+    /**
+     * Files this step reads for the given file. Together with {@link #getStepVersion()}
+     * they decide whether a previous result can be reused. Steps that declare no
+     * inputs always run.
+     */
+    protected List<Path> getInputFiles(String fileName) {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Whether the given file is one of this step's declared inputs for the given file.
+     */
+    public boolean readsFile(String fileName, Path file) {
+        Path target = file.toAbsolutePath().normalize();
+        for (Path input : getInputFiles(fileName)) {
+            if (input.toAbsolutePath().normalize().equals(target)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The files this step produces for the given file, e.g. to hand results to a client.
+     */
+    public final List<Path> getProducedFiles(String fileName) {
+        return getOutputFiles(fileName);
+    }
+
+    /**
+     * Files this step produces for the given file.
+     */
+    protected List<Path> getOutputFiles(String fileName) {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Bump when the step's behaviour changes so that cached results are rebuilt.
+     */
+    protected String getStepVersion() {
+        return "1";
+    }
     
-    protected File getInputDirectory() {
-        return inputDirectory;
+    /**
+     * Whether this step produces the end result of the pipeline. Its output then
+     * always goes to {@code .work}, whatever the work area of intermediates is.
+     */
+    protected boolean producesFinalOutput() {
+        return false;
+    }
+
+    protected Path getInputDirectory() {
+        return getStepDirectory(order - 1);
     }
     
-    protected File getOutputDirectory() {
-        return outputDirectory;
+    protected Path getOutputDirectory() {
+        return producesFinalOutput() ? getWorkArea().getDurableDirectory(order) : getStepDirectory(order);
+    }
+
+    protected Path getStepDirectory(int stepOrder) {
+        return getWorkArea().getStepDirectory(stepOrder);
+    }
+
+    protected WorkArea getWorkArea() {
+        if (workArea == null) {
+            // Without this, a step built outside the injector would quietly write to the default .work
+            throw new IllegalStateException("Step " + stepName + " has no work area, it must be created by the injector");
+        }
+        return workArea;
     }
     
     public int getOrder() {
@@ -4,11 +4,22 @@ import com.google.inject.Inject;
 import com.translation.config.Configuration;
 import com.translation.extraction.ExtractionResult;
 import com.translation.extraction.SmartTextExtractor;
+import com.translation.pipeline.ArtifactKey;
+import com.translation.pipeline.FileContext;
 import com.translation.util.FileManager;
-import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 
 public class TextExtractionStep extends PipelineStepBase {
     private static final int STEP_ORDER = 2;
+
+    /** Extraction result including the placeholdered XML structure. */
+    public static final ArtifactKey<ExtractionResult> EXTRACTION_RESULT = ArtifactKey.of("extraction-result");
+    /** Escaped {@code @(id):text} lines to translate, one per extracted element. */
+    public static final ArtifactKey<List<String>> TEXT_SEGMENTS = ArtifactKey.of("text-segments");
+
     private final SmartTextExtractor textExtractor;
 
     // file-handling
@@ -28,43 +39,62 @@ public class TextExtractionStep extends PipelineStepBase {
     }
 
     @Override
-    protected boolean performAction(String fileName) throws Exception {
+    protected boolean performAction(String fileName, FileContext context) throws Exception {
         if (fileName == null || fileName.trim().isEmpty()) {
             throw new Exception("Single-file mode: filename (without extension) must be provided");
         }
 
-        File xmlFile = new File(getInputDirectory(), fileName + INPUT_EXT);
-        if (!xmlFile.exists()) {
-            logger.warning("XML file not found: " + xmlFile.getAbsolutePath() + " (likely previous step failed)");
+        Path xmlFile = getInputDirectory().resolve(fileName + INPUT_EXT);
+        if (!Files.exists(xmlFile)) {
+            logger.warning("XML file not found: " + xmlFile.toAbsolutePath() + " (likely previous step failed)");
             return false;
         }
 
-        logger.info("Processing XML file: " + xmlFile.getName());
+        logger.info("Processing XML file: " + xmlFile.getFileName());
 
-        getOutputDirectory().mkdirs();
-
-        String xmlContent = FileManager.readFile(xmlFile.getAbsolutePath());
+        String xmlContent = FileManager.readFile(xmlFile);
         ExtractionResult result = textExtractor.extractText(xmlContent);
 
-        String baseName = fileName;
-
-        File structureFile = new File(getOutputDirectory(), baseName + OUTPUT_STRUCT_EXT);
-        FileManager.writeFile(structureFile.getAbsolutePath(), result.getProcessedXml());
-        File simpleTextFile = new File(getOutputDirectory(), baseName + OUTPUT_TEXT_EXT);
-        StringBuilder simpleTextBuilder = new StringBuilder();
+        List<String> segments = new ArrayList<>();
         result.getTextElements().forEach(element -> {
             String escaped = element.getOriginalText()
                                    .replace("\r", "\\n")
                                    .replace("\n", "\\n");
-            simpleTextBuilder.append("@(")
-                             .append(element.getId())
-                             .append("):")
-                             .append(escaped)
-                             .append("\n");
+            segments.add("@(" + element.getId() + "):" + escaped);
         });
-        FileManager.writeFile(simpleTextFile.getAbsolutePath(), simpleTextBuilder.toString());
 
-        logger.fine("Successfully processed file: " + xmlFile.getName());
+        recordMetric(fileName, "segments", segments.size());
+        recordMetric(fileName, "elementsScanned", result.getStats().getTotalElementsScanned());
+        recordMetric(fileName, "elementsSkipped", result.getStats().getElementsSkipped());
+
+        context.put(EXTRACTION_RESULT, result);
+        context.put(TEXT_SEGMENTS, segments);
+
+        if (shouldPersistIntermediates()) {
+            String baseName = fileName;
+
+            Path structureFile = getOutputDirectory().resolve(baseName + OUTPUT_STRUCT_EXT);
+            FileManager.writeFile(structureFile, result.getProcessedXml());
+            Path simpleTextFile = getOutputDirectory().resolve(baseName + OUTPUT_TEXT_EXT);
+            StringBuilder simpleTextBuilder = new StringBuilder();
+            for (String segment : segments) {
+                simpleTextBuilder.append(segment).append("\n");
+            }
+            FileManager.writeFile(simpleTextFile, simpleTextBuilder.toString());
+        }
+
+        logger.fine("Successfully processed file: " + xmlFile.getFileName());
         return true;
     }
-}
\ No newline at end of file
+
+    @Override
+    protected List<Path> getInputFiles(String fileName) {
+        return List.of(getInputDirectory().resolve(fileName + INPUT_EXT));
+    }
+
+    @Override
+    protected List<Path> getOutputFiles(String fileName) {
+        return List.of(getOutputDirectory().resolve(fileName + OUTPUT_STRUCT_EXT),
+                       getOutputDirectory().resolve(fileName + OUTPUT_TEXT_EXT));
+    }
+}
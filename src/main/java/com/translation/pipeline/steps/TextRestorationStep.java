@@ -1,12 +1,22 @@
 package com.translation.pipeline.steps;
 
 import com.google.inject.Inject;
+import com.translation.extraction.ExtractionResult;
+import com.translation.pipeline.ArtifactKey;
+import com.translation.pipeline.FileContext;
 import com.translation.util.FileManager;
-import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
 
 public class TextRestorationStep extends PipelineStepBase {
     private static final int STEP_ORDER = 4;
 
+    /** Restored XML with translated text, as written for compilation. */
+    public static final ArtifactKey<String> RESTORED_XML = ArtifactKey.of("restored-xml");
+
+    private static final int STRUCTURE_STEP = 2; // placeholdered XML written by text extraction
+
     private static final String STRUCTURE_EXT = ".xml";
     private static final String TRANSLATED_TEXT_EXT = ".txt";
     private static final String OUTPUT_EXT = ".xml";
@@ -22,40 +32,52 @@ public class TextRestorationStep extends PipelineStepBase {
     }
 
     @Override
-    protected boolean performAction(String fileName) throws Exception {
+    protected boolean performAction(String fileName, FileContext context) throws Exception {
         if (fileName == null || fileName.trim().isEmpty()) {
             throw new Exception("Single-file mode: filename (without extension) must be provided");
         }
 
-        File structureFile = new File("c:\\Dev\\Repos\\Remotes\\JavaProject\\ipe-translation-pipeline\\.work\\step-2", fileName + STRUCTURE_EXT);
-        if (!structureFile.exists()) {
-            logger.warning("Structure file not found: " + structureFile.getAbsolutePath() + " (likely previous step failed)");
+        Path structureFile = getStepDirectory(STRUCTURE_STEP).resolve(fileName + STRUCTURE_EXT);
+        Path translatedFile = getInputDirectory().resolve(fileName + TRANSLATED_TEXT_EXT);
+        Path outputFile = getOutputDirectory().resolve(fileName + OUTPUT_EXT);
+        logger.info("Restoring: " + structureFile.getFileName() + " + " + translatedFile.getFileName() + " -> " + outputFile.getFileName());
+
+        // Prefer the artifacts handed over in memory, fall back to the files of earlier runs
+        String structureContent;
+        ExtractionResult extraction = context.get(TextExtractionStep.EXTRACTION_RESULT);
+        if (extraction != null) {
+            structureContent = extraction.getProcessedXml();
+        } else if (Files.exists(structureFile)) {
+            structureContent = FileManager.readFile(structureFile);
+        } else {
+            logger.warning("Structure file not found: " + structureFile.toAbsolutePath() + " (likely previous step failed)");
             return false;
         }
 
-        File translatedFile = new File("c:\\Dev\\Repos\\Remotes\\JavaProject\\ipe-translation-pipeline\\.work\\step-3", fileName + TRANSLATED_TEXT_EXT);
-        if (!translatedFile.exists()) {
-            logger.warning("Translated text file not found: " + translatedFile.getAbsolutePath() + " (likely previous step failed)");
+        String translatedContent;
+        List<String> translatedSegments = context.get(TranslationStep.TRANSLATED_SEGMENTS);
+        if (translatedSegments != null) {
+            translatedContent = String.join("\n", translatedSegments);
+        } else if (Files.exists(translatedFile)) {
+            translatedContent = FileManager.readFile(translatedFile);
+        } else {
+            logger.warning("Translated text file not found: " + translatedFile.toAbsolutePath() + " (likely previous step failed)");
             return false;
         }
-
-        File outputFile = new File(getOutputDirectory(), fileName + OUTPUT_EXT);
-        logger.info("Restoring: " + structureFile.getName() + " + " + translatedFile.getName() + " -> " + outputFile.getName());
-
-        String structureContent = FileManager.readFile(structureFile.getAbsolutePath());
-        String translatedContent = FileManager.readFile(translatedFile.getAbsolutePath());
         
-        String restoredContent = restoreTranslatedText(structureContent, translatedContent);
+        String restoredContent = restoreTranslatedText(fileName, structureContent, translatedContent);
+        restoredContent = changeDocumentLanguage(restoredContent);
         
-        FileManager.writeFile(outputFile.getAbsolutePath(), restoredContent);
-
-        changeDocumentLanguage(outputFile.getAbsolutePath());
+        // Always written: ipetoipe compiles from this file
+        FileManager.writeFile(outputFile, restoredContent);
+        context.put(RESTORED_XML, restoredContent);
         return true;
     }
     
-    private String restoreTranslatedText(String structureContent, String translatedContent) {
+    private String restoreTranslatedText(String fileName, String structureContent, String translatedContent) {
         String[] translatedLines = translatedContent.split("\n");
         String result = structureContent;
+        int restored = 0;
         
         logger.info("Starting replacement with " + translatedLines.length + " translated lines");
         
@@ -71,24 +93,46 @@ public class TextRestorationStep extends PipelineStepBase {
                 
                 String placeholder = "@PLACEHOLDER(" + numberPart + ")@";
                 logger.fine("Replacing placeholder: " + placeholder + " with: " + translatedText.substring(0, Math.min(50, translatedText.length())));
-                result = result.replace(placeholder, translatedText);
+                if (result.contains(placeholder)) {
+                    result = result.replace(placeholder, translatedText);
+                    restored++;
+                }
             }
         }
         
         boolean stillContainsPlaceholders = result.contains("@PLACEHOLDER(");
         logger.info("After replacement, still contains placeholders: " + stillContainsPlaceholders);
+        recordMetric(fileName, "placeholdersRestored", restored);
+        recordMetric(fileName, "placeholdersRemaining", countOccurrences(result, "@PLACEHOLDER("));
         
         return result;
     }
 
-    private void changeDocumentLanguage(String filePath) throws Exception {
-        logger.info("Applying LaTeX language switching optimizations");
+    private static int countOccurrences(String text, String token) {
+        int count = 0;
+        for (int index = text.indexOf(token); index >= 0; index = text.indexOf(token, index + token.length())) {
+            count++;
+        }
+        return count;
+    }
 
-        String content = FileManager.readFile(filePath);
+    private String changeDocumentLanguage(String content) {
+        logger.info("Applying LaTeX language switching optimizations");
 
         content = content.replace("\\germantrue", "\\germanfalse");
 
-        FileManager.writeFile(filePath, content);
         logger.info("LaTeX language switching completed");
+        return content;
+    }
+
+    @Override
+    protected List<Path> getInputFiles(String fileName) {
+        return List.of(getStepDirectory(STRUCTURE_STEP).resolve(fileName + STRUCTURE_EXT),
+                       getInputDirectory().resolve(fileName + TRANSLATED_TEXT_EXT));
+    }
+
+    @Override
+    protected List<Path> getOutputFiles(String fileName) {
+        return List.of(getOutputDirectory().resolve(fileName + OUTPUT_EXT));
     }
 }
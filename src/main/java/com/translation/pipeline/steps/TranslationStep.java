@@ -1,11 +1,30 @@
 package com.translation.pipeline.steps;
 
+import com.deepl.api.AuthorizationException;
+import com.deepl.api.DeepLException;
+import com.deepl.api.QuotaExceededException;
 import com.google.inject.Inject;
+import com.translation.pipeline.ArtifactKey;
+import com.translation.pipeline.FileContext;
+import com.translation.pipeline.ResourceClass;
+import com.translation.pipeline.RetryPolicy;
 import com.translation.services.TranslationService;
-import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 public class TranslationStep extends PipelineStepBase {
     private static final int STEP_ORDER = 3;
+
+    /** Translated {@code @(id):text} lines. */
+    public static final ArtifactKey<List<String>> TRANSLATED_SEGMENTS = ArtifactKey.of("translated-segments");
+
     private final TranslationService translationService;
 
     // file-handling
@@ -24,25 +43,123 @@ public class TranslationStep extends PipelineStepBase {
     }
 
     @Override
-    protected boolean performAction(String fileName) throws Exception {
+    public ResourceClass getResourceClass() {
+        return ResourceClass.NETWORK;
+    }
+
+    @Override
+    protected RetryPolicy getRetryPolicy() {
+        // The DeepL client already retries single requests; this covers outages that outlast those retries
+        return RetryPolicy.attempts(3)
+                          .withBackoff(Duration.ofSeconds(10), 3.0)
+                          .withAttemptTimeout(Duration.ofMinutes(10))
+                          .withDeadline(Duration.ofMinutes(30))
+                          .retryingOn(DeepLException.class, IOException.class)
+                          .notRetryingOn(AuthorizationException.class, QuotaExceededException.class);
+    }
+
+    @Override
+    protected boolean performAction(String fileName, FileContext context) throws Exception {
         if (fileName == null || fileName.trim().isEmpty()) {
             throw new Exception("Single-file mode: filename (without extension) must be provided");
         }
 
-        File txtFile = new File(getInputDirectory(), fileName + INPUT_EXT);
-        if (!txtFile.exists()) {
-            logger.warning("Text file not found: " + txtFile.getAbsolutePath() + " (likely previous step failed)");
+        List<String> segments = loadSegments(context);
+        if (segments == null) {
             return false;
         }
 
-        File outputFile = new File(getOutputDirectory(), fileName + OUTPUT_EXT);
-        logger.info("Translating: " + txtFile.getName() + " -> " + outputFile.getName());
+        logger.info("Translating: " + fileName + INPUT_EXT);
+        return storeTranslation(context, translationService.translateLines(fileName, segments));
+    }
+
+    @Override
+    public boolean supportsBatch() {
+        return true;
+    }
+
+    @Override
+    protected Map<String, Boolean> performBatch(List<FileContext> contexts) throws Exception {
+        Map<String, Boolean> results = new LinkedHashMap<>();
+        Map<String, List<String>> documents = new LinkedHashMap<>();
+        for (FileContext context : contexts) {
+            List<String> segments = loadSegments(context);
+            if (segments == null) {
+                results.put(context.getFileName(), false);
+            } else {
+                documents.put(context.getFileName(), segments);
+            }
+        }
+
+        logger.info("Translating " + documents.size() + " files in one batch");
+        Map<String, List<String>> translated = translationService.translateDocuments(documents);
+        for (FileContext context : contexts) {
+            String fileName = context.getFileName();
+            if (translated.containsKey(fileName)) {
+                results.put(fileName, storeTranslation(context, translated.get(fileName)));
+            } else if (documents.containsKey(fileName)) {
+                // A shared request failed, so DeepL errors of this file get the file's own retries
+                results.put(fileName, performAlone(context));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Segments from the extraction step, in memory if available, otherwise from disk.
+     */
+    private List<String> loadSegments(FileContext context) throws IOException {
+        List<String> segments = context.get(TextExtractionStep.TEXT_SEGMENTS);
+        if (segments != null) {
+            return segments;
+        }
 
-        return translationService.translate(txtFile.getAbsolutePath(), outputFile.getAbsolutePath());
+        Path txtFile = getInputDirectory().resolve(context.getFileName() + INPUT_EXT);
+        if (!Files.exists(txtFile)) {
+            logger.warning("Text file not found: " + txtFile.toAbsolutePath() + " (likely previous step failed)");
+            return null;
+        }
+        return Files.readAllLines(txtFile);
+    }
 
+    private boolean storeTranslation(FileContext context, List<String> translated) throws IOException {
+        if (translated == null) {
+            return false;
+        }
+
+        String fileName = context.getFileName();
+        recordMetric(fileName, "segments", translated.size());
+        context.put(TRANSLATED_SEGMENTS, translated);
+        if (shouldPersistIntermediates()) {
+            Files.write(getOutputDirectory().resolve(fileName + OUTPUT_EXT), translated);
+        }
+        return true;
     }
 
     public TranslationService getTranslationService() {
         return translationService;
     }
-}
\ No newline at end of file
+
+    @Override
+    protected List<Path> getInputFiles(String fileName) {
+        Path txtFile = getInputDirectory().resolve(fileName + INPUT_EXT);
+        List<Path> inputs = new ArrayList<>();
+        inputs.add(txtFile);
+        // e.g. the manual-work dictionary, so editing one entry re-translates only that deck
+        for (String dependency : translationService.getAdditionalInputs(txtFile.toAbsolutePath().toString())) {
+            inputs.add(Paths.get(dependency));
+        }
+        return inputs;
+    }
+
+    @Override
+    protected List<Path> getOutputFiles(String fileName) {
+        return List.of(getOutputDirectory().resolve(fileName + OUTPUT_EXT));
+    }
+
+    @Override
+    protected String getStepVersion() {
+        // Results of different translation services are not interchangeable
+        return "1-" + translationService.getClass().getSimpleName();
+    }
+}
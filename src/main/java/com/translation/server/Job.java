@@ -0,0 +1,125 @@
+package com.translation.server;
+
+import com.translation.pipeline.FileOutcome;
+import com.translation.pipeline.PipelineSummary;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A pipeline run submitted to the daemon, with its progress and results.
+ */
+public class Job {
+    public enum State {
+        QUEUED,
+        RUNNING,
+        SUCCEEDED,
+        FAILED
+    }
+
+    private final String id;
+    private final boolean course;
+    private final String workDirectory;
+    private final long submittedAt;
+    private volatile List<String> files;
+    private volatile State state = State.QUEUED;
+    private volatile long startedAt;
+    private volatile long finishedAt;
+    private volatile String error;
+    private volatile PipelineSummary summary;
+    private volatile Map<String, List<Path>> resultFiles = Collections.emptyMap();
+
+    Job(String id, List<String> files, boolean course, String workDirectory) {
+        this.id = id;
+        this.files = files;
+        this.course = course;
+        this.workDirectory = workDirectory;
+        this.submittedAt = System.currentTimeMillis();
+    }
+
+    void started() {
+        startedAt = System.currentTimeMillis();
+        state = State.RUNNING;
+    }
+
+    void setFiles(List<String> files) {
+        this.files = files;
+    }
+
+    void setResultFiles(Map<String, List<Path>> resultFiles) {
+        this.resultFiles = resultFiles;
+    }
+
+    void finished(PipelineSummary summary) {
+        this.summary = summary;
+        finishedAt = System.currentTimeMillis();
+        state = summary.getFailed().isEmpty() ? State.SUCCEEDED : State.FAILED;
+    }
+
+    void failed(String error) {
+        this.error = error;
+        finishedAt = System.currentTimeMillis();
+        state = State.FAILED;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Whether this job processes the whole course, downloading it first.
+     */
+    public boolean isCourse() {
+        return course;
+    }
+
+    /**
+     * Work directory of the job, {@code null} for the daemon's own.
+     */
+    public String getWorkDirectory() {
+        return workDirectory;
+    }
+
+    public List<String> getFiles() {
+        return files;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public boolean isFinished() {
+        return state == State.SUCCEEDED || state == State.FAILED;
+    }
+
+    public long getSubmittedAt() {
+        return submittedAt;
+    }
+
+    public long getStartedAt() {
+        return startedAt;
+    }
+
+    public long getFinishedAt() {
+        return finishedAt;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    /**
+     * End results of the given file, kept so they can be served after the
+     * job's pipeline has been released.
+     */
+    public List<Path> getResultFiles(String fileName) {
+        return resultFiles.getOrDefault(fileName, Collections.emptyList());
+    }
+
+    public List<FileOutcome> getOutcomes() {
+        PipelineSummary current = summary;
+        return current != null ? current.getOutcomes() : Collections.emptyList();
+    }
+}
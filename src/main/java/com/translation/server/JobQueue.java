@@ -0,0 +1,268 @@
+package com.translation.server;
+
+import com.google.inject.Inject;
+import com.google.inject.Injector;
+import com.google.inject.Provider;
+import com.google.inject.Singleton;
+import com.translation.config.PipelineOptions;
+import com.translation.di.JobModule;
+import com.translation.pipeline.FileOutcome;
+import com.translation.pipeline.IpeFileSelector;
+import com.translation.pipeline.Pipeline;
+import com.translation.pipeline.PipelineSummary;
+import com.translation.pipeline.WorkArea;
+import com.translation.services.DownloadService;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs daemon jobs on the shared, warm pipeline. Up to {@code --max-jobs} jobs run
+ * at the same time, but never two jobs on the same deck, since they would write
+ * the same step files. A course job needs the whole work area for itself.
+ *
+ * <p>A job can ask for its own work directory. It then runs on a pipeline of its
+ * own, created once per directory in a sibling injector, and does not conflict
+ * with jobs in other directories; the services are shared by all of them. Once
+ * no job runs in such a directory and none waits for it, its injector is
+ * dropped, and in-memory intermediates are freed whenever a directory is idle.
+ */
+@Singleton
+public class JobQueue {
+    private static final Logger logger = Logger.getLogger(JobQueue.class.getName());
+    private static final int MAX_FINISHED_JOBS = 100;
+
+    private final Injector injector;
+    private final PipelineOptions options;
+    private final Provider<DownloadService> downloadService;
+    private final int maxJobs;
+    private final Map<String, Injector> jobInjectors = new HashMap<>();
+    private final Map<String, Integer> runningPerDirectory = new HashMap<>();
+    private final Set<String> exclusiveDirectories = new HashSet<>();
+    private final AtomicInteger jobCounter = new AtomicInteger();
+    private final Map<String, Job> jobs = new LinkedHashMap<>();
+    private final Deque<Job> waiting = new ArrayDeque<>();
+    private final Set<String> busyFiles = new HashSet<>();
+    private final ExecutorService executor;
+    private int running = 0;
+
+    @Inject
+    public JobQueue(Injector injector, Provider<DownloadService> downloadService, PipelineOptions options) {
+        this.injector = injector;
+        this.options = options;
+        this.downloadService = downloadService;
+        this.maxJobs = options.getMaxJobs();
+        jobInjectors.put(directoryKey(injector), injector);
+
+        AtomicInteger threadCounter = new AtomicInteger();
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "pipeline-job-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public synchronized Job submit(List<String> files, boolean course, String workDirectory) {
+        Job job = new Job("job-" + jobCounter.incrementAndGet(), course ? Collections.emptyList() : files, course, workDirectory);
+        jobs.put(job.getId(), job);
+        waiting.add(job);
+        logger.info("Queued " + job.getId() + (course ? " for the whole course" : " for " + files)
+                    + (workDirectory != null ? " in " + workDirectory : ""));
+        dispatch();
+        return job;
+    }
+
+    public synchronized Job get(String id) {
+        return jobs.get(id);
+    }
+
+    public synchronized List<Job> list() {
+        return new ArrayList<>(jobs.values());
+    }
+
+    public synchronized int getRunningCount() {
+        return running;
+    }
+
+    public synchronized int getWaitingCount() {
+        return waiting.size();
+    }
+
+    public void shutdown() {
+        List<Injector> injectors;
+        synchronized (this) {
+            injectors = new ArrayList<>(jobInjectors.values());
+        }
+        for (Injector jobInjector : injectors) {
+            jobInjector.getInstance(Pipeline.class).cancel("daemon stopped");
+        }
+        executor.shutdownNow();
+    }
+
+    private synchronized Injector injectorFor(Job job) {
+        if (job.getWorkDirectory() == null) {
+            return injector;
+        }
+        return jobInjectors.computeIfAbsent(directoryOf(job), directory -> injector.getParent().createChildInjector(
+                new JobModule(options.withWorkDirectory(directory))));
+    }
+
+    private static String directoryOf(Job job) {
+        return Paths.get(job.getWorkDirectory()).toAbsolutePath().normalize().toString();
+    }
+
+    private static Map<String, List<Path>> resultFiles(Pipeline pipeline, PipelineSummary summary) {
+        Map<String, List<Path>> resultFiles = new HashMap<>();
+        for (FileOutcome outcome : summary.getOutcomes()) {
+            if (outcome.isSuccessful()) {
+                resultFiles.put(outcome.getFileName(), pipeline.getResultFiles(outcome.getFileName()));
+            }
+        }
+        return resultFiles;
+    }
+
+    private static String directoryKey(Injector injector) {
+        return injector.getInstance(WorkArea.class).getWorkRoot().toAbsolutePath().normalize().toString();
+    }
+
+    private synchronized void dispatch() {
+        Set<String> reserved = new HashSet<>(); // directories a waiting course job is next in line for
+        Iterator<Job> iterator = waiting.iterator();
+        while (iterator.hasNext() && running < maxJobs) {
+            Job job = iterator.next();
+            String directory = directoryKey(injectorFor(job));
+            if (exclusiveDirectories.contains(directory) || reserved.contains(directory)) {
+                continue;
+            }
+            if (job.isCourse()) {
+                if (runningPerDirectory.getOrDefault(directory, 0) > 0) {
+                    reserved.add(directory); // keep later jobs from starving the course job
+                    continue;
+                }
+                exclusiveDirectories.add(directory);
+            } else if (!Collections.disjoint(busyFiles, fileKeys(directory, job))) {
+                continue;
+            } else {
+                busyFiles.addAll(fileKeys(directory, job));
+            }
+
+            iterator.remove();
+            running++;
+            runningPerDirectory.merge(directory, 1, Integer::sum);
+            job.started();
+            executor.execute(() -> run(job));
+        }
+    }
+
+    private void run(Job job) {
+        logger.info("Starting " + job.getId());
+        try {
+            Injector jobInjector = injectorFor(job);
+            if (job.isCourse()) {
+                WorkArea workArea = jobInjector.getInstance(WorkArea.class);
+                List<String> files = downloadService.get().downloadToDirectory(workArea.getStepDirectory(0).toString());
+                files.sort(String::compareTo);
+                job.setFiles(List.of(jobInjector.getInstance(IpeFileSelector.class).select(files.toArray(new String[0]))));
+            }
+            Pipeline pipeline = jobInjector.getInstance(Pipeline.class);
+            PipelineSummary summary = pipeline.execute(job.getFiles().toArray(new String[0]), job.getId());
+            job.setResultFiles(resultFiles(pipeline, summary));
+            job.finished(summary);
+            logger.info(job.getId() + " finished: " + job.getState());
+        } catch (Exception e) {
+            logger.log(Level.WARNING, job.getId() + " failed", e);
+            job.failed(e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName());
+        } finally {
+            release(job);
+        }
+    }
+
+    private synchronized void release(Job job) {
+        String directory = directoryKey(injectorFor(job));
+        running--;
+        int stillRunning = runningPerDirectory.merge(directory, -1, Integer::sum);
+        if (job.isCourse()) {
+            exclusiveDirectories.remove(directory);
+        } else {
+            busyFiles.removeAll(fileKeys(directory, job));
+        }
+        if (stillRunning == 0) {
+            runningPerDirectory.remove(directory);
+            retire(directory);
+        }
+        evictFinishedJobs();
+        dispatch();
+    }
+
+    /**
+     * Frees what the jobs of a directory left behind once none of them runs: the
+     * intermediates of an in-memory work area, and the injector of a job's own
+     * work directory if no waiting job needs it.
+     */
+    private void retire(String directory) {
+        Injector jobInjector = jobInjectors.get(directory);
+        WorkArea workArea = jobInjector.getInstance(WorkArea.class);
+        workArea.discardIntermediates();
+        if (jobInjector == injector || isWaitedFor(directory)) {
+            return;
+        }
+        jobInjectors.remove(directory);
+        logger.info("Released the pipeline of " + directory + ", no job is waiting for it");
+        try {
+            workArea.close();
+        } catch (IOException e) {
+            logger.warning("Failed to close the work area of " + directory + ": " + e.getMessage());
+        }
+    }
+
+    private boolean isWaitedFor(String directory) {
+        for (Job job : waiting) {
+            if (job.getWorkDirectory() != null && directoryOf(job).equals(directory)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static List<String> fileKeys(String directory, Job job) {
+        List<String> keys = new ArrayList<>();
+        for (String file : job.getFiles()) {
+            keys.add(directory + File.separator + file);
+        }
+        return keys;
+    }
+
+    private void evictFinishedJobs() {
+        int finished = 0;
+        for (Job job : jobs.values()) {
+            if (job.isFinished()) {
+                finished++;
+            }
+        }
+        Iterator<Job> iterator = jobs.values().iterator();
+        while (finished > MAX_FINISHED_JOBS && iterator.hasNext()) {
+            if (iterator.next().isFinished()) {
+                iterator.remove();
+                finished--;
+            }
+        }
+    }
+}
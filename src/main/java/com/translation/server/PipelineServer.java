@@ -0,0 +1,240 @@
+package com.translation.server;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.inject.Inject;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.translation.config.PipelineOptions;
+import com.translation.pipeline.FileOutcome;
+import com.translation.util.IpeWrapper;
+import com.translation.util.ProcessPool;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * Daemon mode ({@code --serve}): keeps one warm pipeline and accepts jobs over a
+ * small HTTP API on the loopback interface.
+ * <pre>
+ * POST /jobs                        {"files": ["01-o-notation"]} or {"course": true},
+ *                                   optionally with "workDirectory" to run isolated from other jobs
+ * GET  /jobs                        all known jobs
+ * GET  /jobs/{id}                   state and per-file outcomes of a job
+ * GET  /jobs/{id}/results           result files of the job's completed decks
+ * GET  /jobs/{id}/results/{name}    download one result file
+ * GET  /status                      running and waiting jobs and external processes
+ * </pre>
+ */
+public class PipelineServer {
+    private static final Logger logger = Logger.getLogger(PipelineServer.class.getName());
+    private static final Pattern FILE_NAME = Pattern.compile("[\\w.-]+");
+    private static final int HANDLER_THREADS = 4;
+
+    private final JobQueue jobQueue;
+    private final ProcessPool processPool;
+    private final int port;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    private HttpServer server;
+    private ExecutorService handlers;
+
+    @Inject
+    public PipelineServer(JobQueue jobQueue, IpeWrapper ipeWrapper, PipelineOptions options) {
+        this.jobQueue = jobQueue;
+        this.processPool = ipeWrapper.getProcessPool();
+        this.port = options.getPort();
+    }
+
+    public void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        handlers = Executors.newFixedThreadPool(HANDLER_THREADS);
+        server.setExecutor(handlers);
+        server.createContext("/jobs", this::handle);
+        server.createContext("/status", this::handleStatus);
+        server.start();
+        logger.info("Pipeline daemon listening on http://" + server.getAddress().getHostString() + ":" + port + "/jobs");
+    }
+
+    public void awaitShutdown() throws InterruptedException {
+        stopped.await();
+    }
+
+    public void stop() {
+        if (server != null) {
+            server.stop(1);
+            handlers.shutdownNow();
+            jobQueue.shutdown();
+            logger.info("Pipeline daemon stopped");
+        }
+        stopped.countDown();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String[] path = exchange.getRequestURI().getPath().replaceAll("^/+|/+$", "").split("/");
+            String method = exchange.getRequestMethod();
+
+            if (path.length == 1 && "POST".equals(method)) {
+                submit(exchange);
+            } else if (path.length == 1 && "GET".equals(method)) {
+                sendJson(exchange, 200, jobQueue.list());
+            } else if (path.length >= 2 && "GET".equals(method)) {
+                Job job = jobQueue.get(path[1]);
+                if (job == null) {
+                    sendError(exchange, 404, "Unknown job: " + path[1]);
+                } else if (path.length == 2) {
+                    sendJson(exchange, 200, job);
+                } else if (path.length == 3 && "results".equals(path[2])) {
+                    sendJson(exchange, 200, listResults(job));
+                } else if (path.length == 4 && "results".equals(path[2])) {
+                    sendResult(exchange, job, path[3]);
+                } else {
+                    sendError(exchange, 404, "Not found");
+                }
+            } else {
+                sendError(exchange, 405, "Method not allowed");
+            }
+        } catch (IllegalArgumentException e) {
+            sendError(exchange, 400, e.getMessage());
+        } catch (Exception e) {
+            logger.log(Level.WARNING, "Failed to handle " + exchange.getRequestURI(), e);
+            sendError(exchange, 500, e.getMessage());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handleStatus(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                sendError(exchange, 405, "Method not allowed");
+                return;
+            }
+            Map<String, Object> status = new LinkedHashMap<>();
+            status.put("runningJobs", jobQueue.getRunningCount());
+            status.put("waitingJobs", jobQueue.getWaitingCount());
+            status.put("activeProcesses", processPool.getActiveProcesses());
+            status.put("queuedProcesses", processPool.getQueueDepth());
+            status.put("maxProcesses", processPool.getMaxProcesses());
+            status.put("peakActiveProcesses", processPool.getPeakActiveProcesses());
+            status.put("peakQueuedProcesses", processPool.getPeakQueueDepth());
+            sendJson(exchange, 200, status);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void submit(HttpExchange exchange) throws IOException {
+        JobRequest request;
+        try (InputStream body = exchange.getRequestBody()) {
+            request = objectMapper.readValue(body, JobRequest.class);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid job request: " + e.getMessage(), e);
+        }
+
+        List<String> files = new ArrayList<>();
+        if (!request.course) {
+            if (request.files == null || request.files.isEmpty()) {
+                throw new IllegalArgumentException("A job needs \"files\" or \"course\": true");
+            }
+            for (String file : new LinkedHashSet<>(request.files)) {
+                files.add(validateFileName(file));
+            }
+        }
+
+        if (request.workDirectory != null && request.workDirectory.isBlank()) {
+            throw new IllegalArgumentException("\"workDirectory\" must not be empty");
+        }
+        Job job = jobQueue.submit(files, request.course, request.workDirectory);
+        exchange.getResponseHeaders().set("Location", "/jobs/" + job.getId());
+        sendJson(exchange, 202, job);
+    }
+
+    private List<Map<String, Object>> listResults(Job job) throws IOException {
+        List<Map<String, Object>> results = new ArrayList<>();
+        for (FileOutcome outcome : job.getOutcomes()) {
+            if (!outcome.isSuccessful()) {
+                continue;
+            }
+            for (Path file : job.getResultFiles(outcome.getFileName())) {
+                if (Files.exists(file)) {
+                    Map<String, Object> result = new LinkedHashMap<>();
+                    result.put("file", outcome.getFileName());
+                    result.put("name", file.getFileName().toString());
+                    result.put("size", Files.size(file));
+                    result.put("url", "/jobs/" + job.getId() + "/results/" + file.getFileName());
+                    results.add(result);
+                }
+            }
+        }
+        return results;
+    }
+
+    private void sendResult(HttpExchange exchange, Job job, String name) throws IOException {
+        validateFileName(name);
+        for (FileOutcome outcome : job.getOutcomes()) {
+            if (!outcome.isSuccessful()) {
+                continue;
+            }
+            for (Path file : job.getResultFiles(outcome.getFileName())) {
+                if (file.getFileName().toString().equals(name) && Files.exists(file)) {
+                    String contentType = name.endsWith(".pdf") ? "application/pdf" : "application/octet-stream";
+                    exchange.getResponseHeaders().set("Content-Type", contentType);
+                    exchange.sendResponseHeaders(200, Files.size(file));
+                    try (OutputStream out = exchange.getResponseBody()) {
+                        Files.copy(file, out);
+                    }
+                    return;
+                }
+            }
+        }
+        sendError(exchange, 404, "No result " + name + " in " + job.getId());
+    }
+
+    private static String validateFileName(String name) {
+        if (name == null || !FILE_NAME.matcher(name).matches() || name.startsWith(".")) {
+            throw new IllegalArgumentException("Invalid file name: " + name);
+        }
+        return name;
+    }
+
+    private void sendJson(HttpExchange exchange, int status, Object body) throws IOException {
+        byte[] json = objectMapper.writerWithDefaultPrettyPrinter().writeValueAsBytes(body);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, json.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(json);
+        }
+    }
+
+    private void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        Map<String, String> error = new LinkedHashMap<>();
+        error.put("error", message);
+        sendJson(exchange, status, error);
+    }
+
+    /**
+     * Body of {@code POST /jobs}.
+     */
+    public static class JobRequest {
+        public List<String> files;
+        public boolean course;
+        public String workDirectory;
+    }
+}
@@ -2,6 +2,7 @@ package com.translation.services;
 
 import com.deepl.api.*;
 import com.translation.Constants;
+import com.translation.metrics.DeepLBatchEvent;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.FileReader;
@@ -9,8 +10,13 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.logging.Logger;
 
 public class AutomatedTranslationService implements TranslationService {
@@ -19,15 +25,28 @@ public class AutomatedTranslationService implements TranslationService {
     private static final int RETRY_DELAY_INCREMENT_MS = 5000;
     private static final int MAX_BATCH_SIZE = 50;
     private static final int MAX_BATCH_CHARS = 90000;
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(60);
+
+    private static final String API_KEY_FILE = "C:\\Dev\\Repos\\Remotes\\JavaProject\\api.key";
 
-    private final String apiKey;
     private final String targetLanguage;
-    private final Translator translator;   // ← new
+    private Translator translator;
 
-    public AutomatedTranslationService() throws IOException {
-        this.apiKey = Files.readString(Paths.get("C:\\Dev\\Repos\\Remotes\\JavaProject\\api.key")).trim();
+    public AutomatedTranslationService() {
         this.targetLanguage = Constants.TARGET_LANGUAGE;
-        this.translator = new Translator(apiKey);   // ← new
+    }
+
+    /**
+     * Reads the API key and creates the DeepL client on first use, so runs that
+     * never translate (cached, --only-step, ...) do not pay for it.
+     */
+    private synchronized Translator getTranslator() throws IOException {
+        if (translator == null) {
+            String apiKey = Files.readString(Paths.get(API_KEY_FILE)).trim();
+            // Bounds every request, so a stalled connection ends up in the step's retry policy
+            translator = new Translator(apiKey, new TranslatorOptions().setTimeout(REQUEST_TIMEOUT));
+        }
+        return translator;
     }
 
     @Override
@@ -35,6 +54,17 @@ public class AutomatedTranslationService implements TranslationService {
         logger.info("Starting automated translation from " + inputFilePath + " to " + outputFilePath);
         
         List<String> lines = readLinesFromFile(inputFilePath);
+        List<String> translatedLines = translateLines(Paths.get(inputFilePath).getFileName().toString(), lines);
+        
+        writeLinesToFile(translatedLines, outputFilePath);
+
+        logger.info("Translation completed successfully");
+        return true;
+    }
+    
+    @Override
+    public List<String> translateLines(String documentName, List<String> lines) throws Exception {
+        logger.fine("Translating " + lines.size() + " lines of " + documentName);
         List<String> translatedLines = new ArrayList<>();
         
         List<String> batch = new ArrayList<>();
@@ -47,7 +77,7 @@ public class AutomatedTranslationService implements TranslationService {
             }
             
             if (batchChars + line.length() > MAX_BATCH_CHARS || batch.size() >= MAX_BATCH_SIZE) {
-                List<TextResult> results = translateBatchWithDeepL(batch);
+                List<TextResult> results = translateBatchWithDeepL(documentName, batch);
                 for (TextResult result : results) {
                     translatedLines.add(result.getText());
                 }
@@ -61,35 +91,125 @@ public class AutomatedTranslationService implements TranslationService {
         }
         
         if (!batch.isEmpty()) {
-            List<TextResult> results = translateBatchWithDeepL(batch);
+            List<TextResult> results = translateBatchWithDeepL(documentName, batch);
             for (TextResult result : results) {
                 translatedLines.add(result.getText());
             }
         }
         
-        writeLinesToFile(translatedLines, outputFilePath);
-
-        logger.info("Translation completed successfully");
-        return true;
+        return translatedLines;
     }
     
-    private List<TextResult> translateBatchWithDeepL(List<String> texts) throws Exception {
+    /**
+     * Packs the segments of all documents into shared DeepL requests, so a handful of
+     * short documents costs one round trip instead of one each. If a request fails,
+     * only the documents whose segments were all in earlier requests are returned;
+     * the others are left to the caller, which translates them one by one.
+     */
+    @Override
+    public Map<String, List<String>> translateDocuments(Map<String, List<String>> documents) throws Exception {
+        Map<String, List<String>> translated = new LinkedHashMap<>();
+        List<List<String>> batchTargets = new ArrayList<>();
+        List<Integer> batchIndices = new ArrayList<>();
+        List<String> batch = new ArrayList<>();
+        Set<String> batchDocuments = new LinkedHashSet<>();
+        // Documents whose segments are all in the batch or earlier ones, and those already translated
+        List<String> enumerated = new ArrayList<>();
+        Set<String> completed = new LinkedHashSet<>();
+        int batchChars = 0;
+
+        try {
+            for (Map.Entry<String, List<String>> document : documents.entrySet()) {
+                // Blank lines are kept as they are, all others get replaced in place
+                List<String> lines = new ArrayList<>(document.getValue());
+                translated.put(document.getKey(), lines);
+
+                for (int i = 0; i < lines.size(); i++) {
+                    String line = lines.get(i);
+                    if (line.trim().isEmpty()) {
+                        continue;
+                    }
+
+                    if (batchChars + line.length() > MAX_BATCH_CHARS || batch.size() >= MAX_BATCH_SIZE) {
+                        applyBatch(String.join(",", batchDocuments), batch, batchTargets, batchIndices);
+                        completed.addAll(enumerated);
+                        enumerated.clear();
+                        batch.clear();
+                        batchTargets.clear();
+                        batchIndices.clear();
+                        batchDocuments.clear();
+                        batchChars = 0;
+                        Thread.sleep(1000);
+                    }
+
+                    batch.add(line.trim());
+                    batchTargets.add(lines);
+                    batchIndices.add(i);
+                    batchDocuments.add(document.getKey());
+                    batchChars += line.length();
+                }
+                enumerated.add(document.getKey());
+            }
+
+            if (!batch.isEmpty()) {
+                applyBatch(String.join(",", batchDocuments), batch, batchTargets, batchIndices);
+            }
+        } catch (DeepLException e) {
+            // Translated documents are kept, the rest is retried per document so one bad document
+            // cannot fail its batch neighbours and no characters are paid for twice
+            translated.keySet().retainAll(completed);
+            logger.warning("Shared DeepL batch failed (" + e.getMessage() + "), " + (documents.size() - completed.size())
+                           + " of " + documents.size() + " documents are left to be translated one by one");
+        }
+
+        return translated;
+    }
+
+    private void applyBatch(String documentNames, List<String> batch, List<List<String>> targets, List<Integer> indices) throws Exception {
+        List<TextResult> results = translateBatchWithDeepL(documentNames, batch);
+        for (int i = 0; i < results.size(); i++) {
+            targets.get(i).set(indices.get(i), results.get(i).getText());
+        }
+    }
+
+    private List<TextResult> translateBatchWithDeepL(String documentName, List<String> texts) throws Exception {
+        DeepLBatchEvent event = new DeepLBatchEvent();
+        event.begin();
         int retryCount = 0;
-        while (true) {
-            try {
-                return translator.translateText(texts, null, targetLanguage);
-            } catch (TooManyRequestsException e) {
-                retryCount++;
-                int delayMs = INITIAL_RETRY_DELAY_MS + (retryCount - 1) * RETRY_DELAY_INCREMENT_MS;
-                logger.warning("DeepL rate limit hit - retry " + retryCount + " after " + delayMs + "ms");
+        try {
+            while (true) {
                 try {
-                    Thread.sleep(delayMs);
-                } catch (InterruptedException ie) {
-                    Thread.currentThread().interrupt();
-                    throw new Exception("Translation interrupted", ie);
+                    List<TextResult> results = getTranslator().translateText(texts, null, targetLanguage);
+                    event.outcome = "translated";
+                    return results;
+                } catch (TooManyRequestsException e) {
+                    retryCount++;
+                    int delayMs = INITIAL_RETRY_DELAY_MS + (retryCount - 1) * RETRY_DELAY_INCREMENT_MS;
+                    logger.warning("DeepL rate limit hit - retry " + retryCount + " after " + delayMs + "ms");
+                    try {
+                        Thread.sleep(delayMs);
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                        event.outcome = "interrupted";
+                        throw new Exception("Translation interrupted", ie);
+                    }
+                } catch (DeepLException e) {
+                    event.outcome = "error: " + e.getMessage();
+                    throw e;
+                }
+            }
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.file = documentName;
+                event.segments = texts.size();
+                long characters = 0;
+                for (String text : texts) {
+                    characters += text.length();
                 }
-            } catch (DeepLException e) {
-                throw e;
+                event.characters = characters;
+                event.retries = retryCount;
+                event.commit();
             }
         }
     }
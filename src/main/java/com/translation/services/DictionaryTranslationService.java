@@ -2,14 +2,14 @@ package com.translation.services;
 
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
-import java.io.BufferedReader;
-import java.io.FileReader;
+import com.translation.Constants;
 import java.io.IOException;
 import java.lang.reflect.Type;
 import java.nio.file.Files;
-import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
@@ -29,27 +29,46 @@ public class DictionaryTranslationService implements TranslationService {
     public boolean translate(String inputFilePath, String outputFilePath) throws Exception {
         logger.fine("Starting dictionary translation from " + inputFilePath + " to " + outputFilePath);
         
-        // inputFilePath is the text file to be translated
+        // Load German text lines from the input file
+        List<String> lines = new ArrayList<>();
+        if (Files.exists(Paths.get(inputFilePath))) {
+            lines = Files.readAllLines(Paths.get(inputFilePath));
+        } else {
+            logger.warning("Text file not found: " + inputFilePath);
+        }
+        
+        List<String> translatedLines = translateLines(getDocumentName(inputFilePath), lines);
+        if (translatedLines == null) {
+            return false;
+        }
+        
+        // Write the translated text file
+        Files.write(Paths.get(outputFilePath), translatedLines);
+        return true;
+    }
+    
+    @Override
+    public List<String> translateLines(String documentName, List<String> lines) throws Exception {
         // We need to find the corresponding JSON file in manual-work directory
-        String jsonFilePath = getCorrespondingJsonFile(inputFilePath);
+        String jsonFilePath = getJsonFileForDocument(documentName);
         
         // Load translation entries from the manual-work JSON file
         Map<String, TranslationEntry> jsonEntries = loadJsonEntries(jsonFilePath);
         
-        // Load German text entries from the input file
-        Map<String, String> textEntries = loadTextEntries(inputFilePath);
+        // Parse German text entries from the extracted lines
+        Map<String, String> textEntries = parseTextEntries(lines);
 
         // If any JSON entry is missing English translation, abort translation
         for (Map.Entry<String, TranslationEntry> entry : jsonEntries.entrySet()) {
             TranslationEntry translationEntry = entry.getValue();
             if (translationEntry.english == null || translationEntry.english.isEmpty()) {
                 logger.warning("Empty or missing English translation for ID " + entry.getKey());
-                return false;
+                return null;
             }
         }
         
         // Create translations by replacing German text with English from JSON
-        Map<String, String> translatedEntries = new HashMap<>();
+        List<String> translatedLines = new ArrayList<>();
         
         for (Map.Entry<String, String> textEntry : textEntries.entrySet()) {
             String id = textEntry.getKey();
@@ -60,19 +79,22 @@ public class DictionaryTranslationService implements TranslationService {
             
             if (jsonEntry != null && jsonEntry.english != null) {
                 // Use the English translation from the JSON file
-                translatedEntries.put(id, jsonEntry.english);
+                translatedLines.add("@(" + id + "):" + jsonEntry.english);
                 logger.fine("Translated ID " + id + ": " + germanText + " -> " + jsonEntry.english);
             } else {
                 // Keep German text as fallback
-                translatedEntries.put(id, germanText);
+                translatedLines.add("@(" + id + "):" + germanText);
                 logger.warning("No English translation found for ID " + id + ", keeping German: " + germanText);
             }
         }
         
-        // Write the translated text file
-        writeTranslatedEntries(translatedEntries, outputFilePath);
         logger.fine("Translation completed successfully. Processed " + jsonEntries.size() + " entries.");
-        return true;
+        return translatedLines;
+    }
+    
+    @Override
+    public List<String> getAdditionalInputs(String inputFilePath) {
+        return List.of(getCorrespondingJsonFile(inputFilePath));
     }
     
     private Map<String, TranslationEntry> loadJsonEntries(String filePath) throws IOException {
@@ -82,52 +104,41 @@ public class DictionaryTranslationService implements TranslationService {
     }
     
     private String getCorrespondingJsonFile(String textFilePath) {
-        Path textPath = Paths.get(textFilePath);
-        String fileName = textPath.getFileName().toString();
-        String baseName = fileName.replace(".txt", ".json");
-        return Paths.get("manual-work", baseName).toString();
+        return getJsonFileForDocument(getDocumentName(textFilePath));
     }
     
-    private Map<String, String> loadTextEntries(String textFilePath) throws IOException {
+    private String getDocumentName(String textFilePath) {
+        String fileName = Paths.get(textFilePath).getFileName().toString();
+        return fileName.endsWith(".txt") ? fileName.substring(0, fileName.length() - ".txt".length()) : fileName;
+    }
+    
+    private String getJsonFileForDocument(String documentName) {
+        return Paths.get(Constants.MANUAL_WORK_DIR, documentName + ".json").toString();
+    }
+    
+    private Map<String, String> parseTextEntries(List<String> lines) {
         Map<String, String> entries = new HashMap<>();
         
-        if (!Files.exists(Paths.get(textFilePath))) {
-            logger.warning("Text file not found: " + textFilePath);
-            return entries;
-        }
-        
-        try (BufferedReader reader = new BufferedReader(new FileReader(textFilePath))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                line = line.trim();
-                if (line.isEmpty()) {
-                    continue;
-                }
-                
-                Matcher matcher = ID_PATTERN.matcher(line);
-                if (matcher.matches()) {
-                    String id = matcher.group(1);
-                    String content = matcher.group(2);
-                    entries.put(id, content);
-                } else {
-                    logger.warning("Line doesn't match expected format: " + line);
-                }
+        for (String line : lines) {
+            line = line.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            
+            Matcher matcher = ID_PATTERN.matcher(line);
+            if (matcher.matches()) {
+                String id = matcher.group(1);
+                String content = matcher.group(2);
+                entries.put(id, content);
+            } else {
+                logger.warning("Line doesn't match expected format: " + line);
             }
         }
         
-        logger.fine("Loaded " + entries.size() + " entries from " + textFilePath);
+        logger.fine("Parsed " + entries.size() + " text entries");
         return entries;
     }
     
-    private void writeTranslatedEntries(Map<String, String> entries, String outputFilePath) throws IOException {
-        try (var writer = Files.newBufferedWriter(Paths.get(outputFilePath))) {
-            for (Map.Entry<String, String> entry : entries.entrySet()) {
-                writer.write("@(" + entry.getKey() + "):" + entry.getValue());
-                writer.newLine();
-            }
-        }
-    }
-    
     // Inner class to represent translation entries
     private static class TranslationEntry {
         public String english;
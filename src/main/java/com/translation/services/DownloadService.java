@@ -8,8 +8,12 @@ import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
 
 import java.io.File;
-import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
@@ -87,6 +91,7 @@ public class DownloadService {
     }
     
     private boolean downloadFile(String urlString, File outputFile) {
+        Path temp = null;
         try {
             Request request = new Request.Builder()
                 .url(urlString)
@@ -104,8 +109,11 @@ public class DownloadService {
                     return false;
                 }
                 
+                // Workers of a work queue download into the same directory at the same time: the PDF
+                // only appears under its name once complete, so nobody decompiles half a file
+                temp = Files.createTempFile(outputFile.getParentFile().toPath(), "." + outputFile.getName() + ".", ".part");
                 try (InputStream inputStream = responseBody.byteStream();
-                     FileOutputStream outputStream = new FileOutputStream(outputFile)) {
+                     OutputStream outputStream = Files.newOutputStream(temp)) {
                     
                     byte[] buffer = new byte[8192];
                     int bytesRead;
@@ -113,6 +121,8 @@ public class DownloadService {
                         outputStream.write(buffer, 0, bytesRead);
                     }
                 }
+                Files.move(temp, outputFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                temp = null;
             }
             
             return true;
@@ -120,6 +130,19 @@ public class DownloadService {
         } catch (Exception e) {
             logger.warning("Download failed for " + urlString + ": " + e.getMessage());
             return false;
+        } finally {
+            deleteQuietly(temp);
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        if (file == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            logger.fine("Could not delete partial download " + file + ": " + e.getMessage());
         }
     }
     
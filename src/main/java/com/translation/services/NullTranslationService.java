@@ -3,6 +3,8 @@ package com.translation.services;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
 
 public class NullTranslationService implements TranslationService {
     
@@ -12,4 +14,9 @@ public class NullTranslationService implements TranslationService {
         Files.copy(Paths.get(inputFilePath), Paths.get(outputFilePath), StandardCopyOption.REPLACE_EXISTING);
         return true;
     }
+
+    @Override
+    public List<String> translateLines(String documentName, List<String> lines) {
+        return new ArrayList<>(lines);
+    }
 }
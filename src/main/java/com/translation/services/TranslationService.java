@@ -1,5 +1,41 @@
 package com.translation.services;
 
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 public interface TranslationService {
     boolean translate(String inputFilePath, String outputFilePath) throws Exception;
-}
\ No newline at end of file
+
+    /**
+     * Translates the extracted segment lines ({@code @(id):text}) of one document
+     * without going through files.
+     *
+     * @param documentName the file name without extension, e.g. {@code 01-o-notation}
+     * @return the translated lines, or {@code null} if the document cannot be translated
+     */
+    List<String> translateLines(String documentName, List<String> lines) throws Exception;
+
+    /**
+     * Translates the segment lines of several documents at once, so implementations
+     * can share requests between documents. A document that cannot be translated maps
+     * to {@code null}. Documents missing from the result were not translated because a
+     * shared request failed; the caller translates them with {@link #translateLines}.
+     */
+    default Map<String, List<String>> translateDocuments(Map<String, List<String>> documents) throws Exception {
+        Map<String, List<String>> translated = new LinkedHashMap<>();
+        for (Map.Entry<String, List<String>> document : documents.entrySet()) {
+            translated.put(document.getKey(), translateLines(document.getKey(), document.getValue()));
+        }
+        return translated;
+    }
+
+    /**
+     * Files besides the input text that influence the translation of the given input,
+     * used by the incremental build cache to detect changes.
+     */
+    default List<String> getAdditionalInputs(String inputFilePath) {
+        return Collections.emptyList();
+    }
+}
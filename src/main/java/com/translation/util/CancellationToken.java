@@ -0,0 +1,193 @@
+package com.translation.util;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Cooperative cancellation shared by a pipeline run, a step attempt and the
+ * subprocesses and requests it starts. Long-running work either checks
+ * {@link #throwIfCancelled()} or registers a callback, e.g. to kill a process.
+ * Cancelling a token cancels all tokens created with {@link #child()}.
+ */
+public class CancellationToken {
+    private static final Logger logger = Logger.getLogger(CancellationToken.class.getName());
+    private static final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "cancellation-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * A token that is never cancelled, for callers without a run to belong to.
+     */
+    public static final CancellationToken NONE = new CancellationToken(false);
+
+    private final boolean cancellable;
+    private final AtomicLong callbackIds = new AtomicLong();
+    private final Map<Long, Runnable> callbacks = new ConcurrentHashMap<>();
+    private volatile String reason;
+    private ScheduledFuture<?> timeout;
+
+    public CancellationToken() {
+        this(true);
+    }
+
+    private CancellationToken(boolean cancellable) {
+        this.cancellable = cancellable;
+    }
+
+    /**
+     * A token that is cancelled together with this one, but can also be cancelled on its own.
+     * {@link Registration#close() Close} it when done so the parent forgets it.
+     */
+    public Child child() {
+        Child child = new Child();
+        child.parentRegistrations.add(onCancel(() -> child.cancel(reason)));
+        return child;
+    }
+
+    /**
+     * A token that is cancelled as soon as any of the given tokens is, e.g. for
+     * work done for several files at once.
+     * {@link Registration#close() Close} it when done so the tokens forget it.
+     */
+    public static Child anyOf(Collection<CancellationToken> tokens) {
+        Child child = new Child();
+        for (CancellationToken token : tokens) {
+            child.parentRegistrations.add(token.onCancel(() -> child.cancel(token.getReason())));
+        }
+        return child;
+    }
+
+    /**
+     * Cancels the token after the given time unless it was cancelled before.
+     */
+    public synchronized CancellationToken cancelAfter(Duration delay, String reason) {
+        if (timeout != null) {
+            timeout.cancel(false);
+        }
+        timeout = timer.schedule(() -> cancel(reason), delay.toMillis(), TimeUnit.MILLISECONDS);
+        return this;
+    }
+
+    public void cancel(String reason) {
+        if (!cancellable) {
+            throw new UnsupportedOperationException("CancellationToken.NONE cannot be cancelled");
+        }
+        synchronized (this) {
+            if (this.reason != null) {
+                return;
+            }
+            this.reason = reason != null ? reason : "cancelled";
+            if (timeout != null) {
+                timeout.cancel(false);
+            }
+        }
+        for (Runnable callback : callbacks.values()) {
+            try {
+                callback.run();
+            } catch (RuntimeException e) {
+                logger.log(Level.WARNING, "Cancellation callback failed", e);
+            }
+        }
+        callbacks.clear();
+    }
+
+    public boolean isCancelled() {
+        return reason != null;
+    }
+
+    /**
+     * Why the token was cancelled, {@code null} while it is not.
+     */
+    public String getReason() {
+        return reason;
+    }
+
+    public void throwIfCancelled() {
+        String current = reason;
+        if (current != null) {
+            throw new CancellationException(current);
+        }
+    }
+
+    /**
+     * Runs the callback when the token is cancelled, right away if it already is.
+     */
+    public Registration onCancel(Runnable callback) {
+        long id = callbackIds.incrementAndGet();
+        callbacks.put(id, callback);
+        if (isCancelled() && callbacks.remove(id) != null) {
+            callback.run();
+        }
+        return () -> callbacks.remove(id);
+    }
+
+    /**
+     * Waits for the given time or until the token is cancelled.
+     *
+     * @return whether the token was cancelled
+     */
+    public boolean await(Duration duration) throws InterruptedException {
+        long end = System.nanoTime() + duration.toNanos();
+        synchronized (this) {
+            Registration registration = onCancel(this::wakeUp);
+            try {
+                long remaining;
+                while (!isCancelled() && (remaining = end - System.nanoTime()) > 0) {
+                    TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                }
+            } finally {
+                registration.close();
+            }
+        }
+        return isCancelled();
+    }
+
+    private synchronized void wakeUp() {
+        notifyAll();
+    }
+
+    /**
+     * Handle to undo {@link #onCancel(Runnable)}.
+     */
+    public interface Registration extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    /**
+     * A token derived from others, see {@link #child()} and {@link #anyOf}.
+     */
+    public static final class Child extends CancellationToken implements Registration {
+        private final List<Registration> parentRegistrations = new ArrayList<>();
+
+        private Child() {
+        }
+
+        /**
+         * Detaches the token from its parents and stops its timeout.
+         */
+        @Override
+        public void close() {
+            parentRegistrations.forEach(Registration::close);
+            synchronized (this) {
+                if (super.timeout != null) {
+                    super.timeout.cancel(false);
+                }
+            }
+        }
+    }
+}
@@ -3,16 +3,25 @@ package com.translation.util;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 
 public class FileManager {
 
     public static String readFile(String filePath) throws IOException {
-        return new String(Files.readAllBytes(Paths.get(filePath)));
+        return readFile(Paths.get(filePath));
+    }
+
+    public static String readFile(Path path) throws IOException {
+        return new String(Files.readAllBytes(path));
     }
 
     public static void writeFile(String filePath, String content) throws IOException {
-        Files.write(Paths.get(filePath), content.getBytes());
+        writeFile(Paths.get(filePath), content);
+    }
+
+    public static void writeFile(Path path, String content) throws IOException {
+        Files.write(path, content.getBytes());
     }
 
     public static boolean deleteFile(String filePath) {
@@ -0,0 +1,502 @@
+package com.translation.util;
+
+import com.translation.config.Configuration;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Long-lived ipescript processes that compile decks one after the other, so IPE's
+ * start-up cost is paid once per worker and not once per deck. Each worker runs
+ * {@code ipe-batch-compile.lua}, which reads {@code <xml>\t<pdf>} jobs from stdin
+ * and answers each with a result line. Jobs wait in one queue. Up to
+ * {@code ipescript_workers} workers take them, each with its own LaTeX directory
+ * and a slot in the {@link ProcessPool}. A worker stops after a while without work,
+ * or as soon as it is idle while other tools wait for a slot.
+ *
+ * <p>A job the script cannot handle completes with {@link Unavailable}, and the
+ * caller runs ipetoipe instead. This covers a load error, a missing ipescript and
+ * a crashed worker. After repeated failed starts the workers are switched off
+ * for the rest of the run.
+ */
+public class IpeScriptWorkers {
+    private static final Logger logger = Logger.getLogger(IpeScriptWorkers.class.getName());
+    private static final String SCRIPT_NAME = "ipe-batch-compile";
+    private static final String SCRIPT_RESOURCE = "/ipe/" + SCRIPT_NAME + ".lua";
+    private static final String SCRIPT_PATH_VARIABLE = "IPESCRIPTS";
+    private static final String RESULT_MARK = "@@ipe-batch";
+    private static final String END_OF_OUTPUT = RESULT_MARK + "\tEOF";
+    private static final Duration IDLE_TIMEOUT = Duration.ofSeconds(30);
+    private static final long IDLE_CHECK_MILLIS = 200;
+    private static final int MAX_FAILED_STARTS = 2;
+    private static final int OUTPUT_TAIL_LINES = 200;
+
+    private final Configuration configuration;
+    private final ProcessPool processPool;
+    private final int maxWorkers;
+    private final BlockingQueue<Job> jobs = new LinkedBlockingQueue<>();
+    private final Set<Worker> running = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger threadCounter = new AtomicInteger();
+    private final ExecutorService threads = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "ipescript-worker-" + threadCounter.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+    private int workers = 0;
+    private int idleWorkers = 0;
+    private int failedStarts = 0;
+    private volatile boolean unavailable = false;
+    private Path scriptDirectory;
+    private Thread shutdownHook;
+
+    public IpeScriptWorkers(Configuration configuration, ProcessPool processPool) {
+        this.configuration = configuration;
+        this.processPool = processPool;
+        // More workers than pool slots would only wait for each other
+        this.maxWorkers = Math.min(configuration.getIpeScriptWorkers(), processPool.getMaxProcesses());
+    }
+
+    /**
+     * Whether compilations should be sent to the workers.
+     */
+    public boolean isEnabled() {
+        return maxWorkers > 0 && !unavailable;
+    }
+
+    /**
+     * Queues the compilation of an IPE XML file to a PDF.
+     *
+     * @param logFile file for the output of the compilation, {@code null} to keep only its end
+     * @return completes with the result, exit code 0 for a PDF and 1 for a LaTeX error;
+     *         exceptionally with a {@link TimeoutException}, a {@link CancellationException},
+     *         or {@link Unavailable} if ipetoipe should be used instead
+     */
+    public CompletableFuture<ProcessResult> compile(String xmlFilePath, String outputFilePath, Path logFile,
+                                                    CancellationToken token) {
+        if (!isEnabled()) {
+            return CompletableFuture.failedFuture(new Unavailable("ipescript workers are not available"));
+        }
+        Job job = new Job(xmlFilePath, outputFilePath, logFile, token);
+        job.registration = token.onCancel(() -> {
+            if (jobs.remove(job)) {
+                job.future.completeExceptionally(new CancellationException(token.getReason()));
+            }
+        });
+        jobs.add(job);
+        synchronized (this) {
+            if (jobs.size() > idleWorkers && workers < maxWorkers) {
+                workers++;
+                threads.execute(new Worker());
+            }
+        }
+        return job.future;
+    }
+
+    private synchronized boolean recordFailedStart(String reason) {
+        failedStarts++;
+        if (failedStarts >= MAX_FAILED_STARTS && !unavailable) {
+            unavailable = true;
+            logger.warning("ipescript workers failed to start " + failedStarts + " times (" + reason
+                           + "), compiling with ipetoipe from now on");
+        }
+        return unavailable;
+    }
+
+    private synchronized void recordSuccessfulJob() {
+        failedStarts = 0;
+    }
+
+    /**
+     * Hands the queued jobs back to their callers once the workers are switched off.
+     */
+    private void releaseQueuedJobs() {
+        Job job;
+        while ((job = jobs.poll()) != null) {
+            job.fallBack("ipescript workers are not available");
+        }
+    }
+
+    /**
+     * Workers are daemon threads that the JVM does not wait for, so their
+     * processes and LaTeX directories are cleaned up when it exits.
+     */
+    private synchronized void registerShutdownHook() {
+        if (shutdownHook == null) {
+            shutdownHook = new Thread(() -> running.forEach(Worker::abort), "ipescript-shutdown");
+            Runtime.getRuntime().addShutdownHook(shutdownHook);
+        }
+    }
+
+    /**
+     * Directory holding the batch script, for ipescript's script search path.
+     */
+    private synchronized Path getScriptDirectory() throws IOException {
+        if (scriptDirectory == null) {
+            Path directory = Files.createTempDirectory("ipescript-");
+            Path script = directory.resolve(SCRIPT_NAME + ".lua");
+            try (InputStream in = IpeScriptWorkers.class.getResourceAsStream(SCRIPT_RESOURCE)) {
+                if (in == null) {
+                    throw new IOException("Missing resource " + SCRIPT_RESOURCE);
+                }
+                Files.copy(in, script, StandardCopyOption.REPLACE_EXISTING);
+            }
+            script.toFile().deleteOnExit();
+            directory.toFile().deleteOnExit();
+            scriptDirectory = directory;
+        }
+        return scriptDirectory;
+    }
+
+    /**
+     * Thrown when a job should be compiled with ipetoipe instead.
+     */
+    public static class Unavailable extends Exception {
+        public Unavailable(String message) {
+            super(message);
+        }
+    }
+
+    private static final class Job {
+        private final String xmlFilePath;
+        private final String outputFilePath;
+        private final Path logFile;
+        private final CancellationToken token;
+        private final long queuedAt = System.nanoTime();
+        private final CompletableFuture<ProcessResult> future = new CompletableFuture<>();
+        private CancellationToken.Registration registration;
+
+        private Job(String xmlFilePath, String outputFilePath, Path logFile, CancellationToken token) {
+            this.xmlFilePath = xmlFilePath;
+            this.outputFilePath = outputFilePath;
+            this.logFile = logFile;
+            this.token = token;
+        }
+
+        private void fallBack(String reason) {
+            registration.close();
+            future.completeExceptionally(new Unavailable(reason));
+        }
+    }
+
+    /**
+     * One ipescript process and the thread feeding it jobs.
+     */
+    private final class Worker implements Runnable {
+        private volatile Process process;
+        private Writer input;
+        private BlockingQueue<String> output;
+        private volatile Path latexDirectory;
+
+        @Override
+        public void run() {
+            running.add(this);
+            try {
+                while (true) {
+                    Job job;
+                    synchronized (IpeScriptWorkers.this) {
+                        idleWorkers++;
+                    }
+                    try {
+                        job = nextJob();
+                    } finally {
+                        synchronized (IpeScriptWorkers.this) {
+                            idleWorkers--;
+                        }
+                    }
+                    if (job == null) {
+                        synchronized (IpeScriptWorkers.this) {
+                            if (jobs.isEmpty()) {
+                                workers--;
+                                return;
+                            }
+                        }
+                        continue;
+                    }
+                    if (!job.future.isDone()) {
+                        compile(job);
+                    }
+                    if (unavailable) {
+                        releaseQueuedJobs();
+                    }
+                }
+            } catch (InterruptedException e) {
+                synchronized (IpeScriptWorkers.this) {
+                    workers--;
+                }
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                synchronized (IpeScriptWorkers.this) {
+                    workers--;
+                }
+                logger.log(Level.WARNING, "ipescript worker failed", e);
+            } finally {
+                stop();
+                running.remove(this);
+            }
+        }
+
+        /**
+         * Waits for the next job. A running ipescript gives its pool slot up when
+         * other tools are waiting for one, since the slot is idle anyway.
+         *
+         * @return {@code null} if the worker should stop
+         */
+        private Job nextJob() throws InterruptedException {
+            long deadline = System.nanoTime() + IDLE_TIMEOUT.toNanos();
+            while (true) {
+                Job job = jobs.poll(IDLE_CHECK_MILLIS, TimeUnit.MILLISECONDS);
+                if (job != null) {
+                    return job;
+                }
+                if (System.nanoTime() > deadline || (process != null && processPool.getQueueDepth() > 0)) {
+                    return null;
+                }
+            }
+        }
+
+        private void compile(Job job) throws InterruptedException {
+            job.registration.close();
+            if (unavailable) {
+                job.fallBack("ipescript workers are not available");
+                return;
+            }
+            if (process == null || !process.isAlive()) {
+                String failure = start();
+                if (failure != null) {
+                    if (recordFailedStart(failure)) {
+                        releaseQueuedJobs();
+                    }
+                    job.fallBack(failure);
+                    return;
+                }
+            }
+
+            long sentAt = System.nanoTime();
+            JobOutput jobOutput = new JobOutput(job.logFile);
+            CancellationToken.Registration killer = job.token.onCancel(this::kill);
+            try {
+                input.write(job.xmlFilePath + "\t" + job.outputFilePath + "\n");
+                input.flush();
+
+                long deadline = sentAt + TimeUnit.SECONDS.toNanos(configuration.getCompileTimeoutSeconds());
+                while (true) {
+                    String line = output.poll(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                    if (job.token.isCancelled()) {
+                        discard();
+                        job.future.completeExceptionally(new CancellationException(job.token.getReason()));
+                        return;
+                    }
+                    if (line == null) {
+                        discard();
+                        job.future.completeExceptionally(new TimeoutException("ipescript timed out after "
+                                                                              + TimeUnit.SECONDS.toMillis(configuration.getCompileTimeoutSeconds()) + "ms"));
+                        return;
+                    }
+                    if (END_OF_OUTPUT.equals(line)) {
+                        discard();
+                        recordFailedStart("ipescript exited: " + jobOutput.tail());
+                        job.fallBack("ipescript exited while compiling " + job.xmlFilePath);
+                        return;
+                    }
+                    if (line.startsWith(RESULT_MARK + "\t")) {
+                        finish(job, line, jobOutput, sentAt);
+                        return;
+                    }
+                    jobOutput.add(line);
+                }
+            } catch (IOException e) {
+                discard();
+                job.fallBack("cannot send the job to ipescript: " + e.getMessage());
+            } finally {
+                killer.close();
+                jobOutput.close();
+            }
+        }
+
+        private void finish(Job job, String resultLine, JobOutput jobOutput, long sentAt) {
+            String[] result = resultLine.split("\t", 3);
+            String status = result.length > 1 ? result[1] : "";
+            String message = result.length > 2 ? result[2] : "";
+            if (!"OK".equals(status) && !"LATEX".equals(status)) {
+                job.fallBack("ipescript could not compile " + job.xmlFilePath + ": " + message);
+                return;
+            }
+
+            boolean compiled = "OK".equals(status);
+            if (!compiled) {
+                jobOutput.add("LaTeX failed: " + message);
+            }
+            if (job.logFile != null) {
+                IpeWrapper.keepLatexFiles(latexDirectory, job.logFile, !compiled);
+            }
+            recordSuccessfulJob();
+            job.future.complete(new ProcessResult(process.pid(), compiled ? 0 : 1, Duration.ofNanos(System.nanoTime() - sentAt),
+                                                  Duration.ofNanos(sentAt - job.queuedAt), processPool.getActiveProcesses(),
+                                                  jobOutput.tail(), job.logFile));
+        }
+
+        /**
+         * Starts ipescript through the process pool.
+         *
+         * @return why it could not be started, {@code null} if it was
+         */
+        private String start() throws InterruptedException {
+            stop();
+            try {
+                latexDirectory = Files.createTempDirectory(IpeWrapper.LATEX_DIRECTORY_PREFIX);
+                ProcessBuilder builder = new ProcessBuilder(configuration.getIpeScriptPath(), SCRIPT_NAME);
+                builder.environment().put(SCRIPT_PATH_VARIABLE, getScriptDirectory().toString());
+                builder.environment().put(IpeWrapper.LATEX_DIRECTORY_VARIABLE, latexDirectory.toString());
+                builder.redirectErrorStream(true);
+                process = processPool.start(builder, CancellationToken.NONE).get();
+            } catch (IOException e) {
+                return e.getMessage();
+            } catch (ExecutionException e) {
+                return e.getCause().getMessage();
+            }
+            input = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8));
+            BlockingQueue<String> lines = new LinkedBlockingQueue<>();
+            Process started = process;
+            threads.execute(() -> readOutput(started, lines));
+            output = lines;
+            registerShutdownHook();
+            logger.fine("Started ipescript worker " + process.pid());
+            return null;
+        }
+
+        private void readOutput(Process started, BlockingQueue<String> lines) {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(started.getInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    lines.add(line);
+                }
+            } catch (IOException e) {
+                logger.fine("Stopped reading ipescript worker " + started.pid() + ": " + e.getMessage());
+            } finally {
+                lines.add(END_OF_OUTPUT);
+            }
+        }
+
+        private void kill() {
+            Process current = process;
+            if (current != null) {
+                ProcessExecutor.kill(current);
+            }
+        }
+
+        /**
+         * Kills a process that cannot take further jobs, so the next job starts a new one.
+         */
+        private void discard() {
+            kill();
+            stop();
+        }
+
+        private void abort() {
+            kill();
+            Path directory = latexDirectory;
+            if (directory != null) {
+                IpeWrapper.deleteRecursively(directory);
+            }
+        }
+
+        /**
+         * Ends the process by closing its input, the script's signal to stop.
+         */
+        private void stop() {
+            if (process != null) {
+                try {
+                    input.close();
+                    if (!process.waitFor(5, TimeUnit.SECONDS)) {
+                        kill();
+                    }
+                } catch (IOException e) {
+                    kill();
+                } catch (InterruptedException e) {
+                    kill();
+                    Thread.currentThread().interrupt();
+                }
+                process = null;
+            }
+            if (latexDirectory != null) {
+                IpeWrapper.deleteRecursively(latexDirectory);
+                latexDirectory = null;
+            }
+        }
+    }
+
+    /**
+     * What a worker printed for one job, written to the job's log file if it has one.
+     */
+    private static final class JobOutput {
+        private final Deque<String> tail = new ArrayDeque<>();
+        private Writer log;
+
+        private JobOutput(Path logFile) {
+            if (logFile != null) {
+                try {
+                    log = Files.newBufferedWriter(logFile, StandardCharsets.UTF_8);
+                } catch (IOException e) {
+                    logger.warning("Cannot write process log " + logFile + ": " + e.getMessage());
+                }
+            }
+        }
+
+        void add(String line) {
+            if (tail.size() == OUTPUT_TAIL_LINES) {
+                tail.removeFirst();
+            }
+            tail.addLast(line);
+            if (log != null) {
+                try {
+                    log.write(line);
+                    log.write(System.lineSeparator());
+                } catch (IOException e) {
+                    logger.warning("Cannot write process log: " + e.getMessage());
+                    close();
+                }
+            }
+        }
+
+        String tail() {
+            return String.join(System.lineSeparator(), tail);
+        }
+
+        void close() {
+            if (log != null) {
+                try {
+                    log.close();
+                } catch (IOException e) {
+                    logger.fine("Failed to close process log: " + e.getMessage());
+                }
+                log = null;
+            }
+        }
+    }
+}
@@ -2,64 +2,346 @@ package com.translation.util;
 
 import com.google.inject.Inject;
 import com.translation.config.Configuration;
+import com.translation.config.PipelineOptions;
+import com.translation.metrics.ProcessEvent;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
 import java.util.logging.Logger;
+import java.util.stream.Stream;
 
+/**
+ * Runs the IPE command line tools. All tools go through one {@link ProcessPool}, so
+ * no matter how many steps or jobs ask for them, at most {@code --max-processes}
+ * run at once. The {@code ...Async} methods return as soon as the launch is
+ * queued; the blocking methods wait for them. Timeouts come from the settings
+ * ({@code extract_timeout_seconds}, {@code compile_timeout_seconds}).
+ * With {@code ipescript_workers} set, compilations go to long-lived ipescript
+ * processes instead of one ipetoipe per deck, see {@link IpeScriptWorkers}.
+ */
 public class IpeWrapper {
     private static final Logger logger = Logger.getLogger(IpeWrapper.class.getName());
+    static final String LATEX_DIRECTORY_VARIABLE = "IPELATEXDIR";
+    static final String LATEX_DIRECTORY_PREFIX = "ipelatex-";
+    private static final String LATEX_LOG = "ipetemp.log";
+    private static final String LATEX_SOURCE = "ipetemp.tex";
+
     private final Configuration configuration;
+    private final ProcessExecutor processExecutor;
+    private final IpeScriptWorkers scriptWorkers;
 
     @Inject
     public IpeWrapper(Configuration configuration) {
+        this(configuration, new ProcessPool(new PipelineOptions().getMaxProcesses()));
+    }
+
+    public IpeWrapper(Configuration configuration, ProcessPool processPool) {
         this.configuration = configuration;
+        this.processExecutor = new ProcessExecutor(processPool);
+        this.scriptWorkers = new IpeScriptWorkers(configuration, processPool);
+    }
+
+    public ProcessPool getProcessPool() {
+        return processExecutor.getProcessPool();
     }
 
     public boolean extractXml(File pdfFile, File outputXmlFile) {
-        try {
-            String ipeExtractPath = configuration.getIpeExtractPath();
-            ProcessBuilder processBuilder = new ProcessBuilder(ipeExtractPath, pdfFile.getAbsolutePath(), outputXmlFile.getAbsolutePath());
-            Process process = processBuilder.start();
-            boolean finished = process.waitFor(15, java.util.concurrent.TimeUnit.SECONDS);
-            if (!finished) {
-                process.destroyForcibly();
-                throw new Exception("Process timed out after 15sec");
-            }
-            int exitCode = process.exitValue();
-            if (exitCode == 0 && outputXmlFile.exists() && outputXmlFile.length() > 0) {
+        return extractXml(pdfFile, outputXmlFile, CancellationToken.NONE);
+    }
+
+    /**
+     * Runs ipeextract, killing it when the token is cancelled.
+     *
+     * @return whether the PDF contained IPE XML and it was written to the output file
+     * @throws CancellationException if the token was cancelled
+     */
+    public boolean extractXml(File pdfFile, File outputXmlFile, CancellationToken token) {
+        try (CancellationToken.Child local = token.child()) {
+            return await(extractXmlAsync(pdfFile, outputXmlFile, local), local);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            return false; // logged by extractXmlAsync
+        }
+    }
+
+    /**
+     * Runs ipeextract once the process pool has room for it.
+     *
+     * @return completes with whether the PDF contained IPE XML and it was written to
+     *         the output file, or with a {@link CancellationException}
+     */
+    public CompletableFuture<Boolean> extractXmlAsync(File pdfFile, File outputXmlFile, CancellationToken token) {
+        ProcessEvent event = startEvent("ipeextract", pdfFile);
+        ProcessBuilder processBuilder = new ProcessBuilder(configuration.getIpeExtractPath(),
+                                                           pdfFile.getAbsolutePath(), outputXmlFile.getAbsolutePath());
+        Duration timeout = Duration.ofSeconds(configuration.getExtractTimeoutSeconds());
+        return run(processBuilder, event, timeout, null, token).handle((result, e) -> {
+            Throwable failure = unwrap(e);
+            if (failure == null && result.getExitCode() == 0 && outputXmlFile.exists() && outputXmlFile.length() > 0) {
+                commitEvent(event, "extracted", outputXmlFile);
                 return true;
-            } else {
-                if (outputXmlFile.exists()) {
-                    outputXmlFile.delete();
-                }
-                return false;
             }
-        } catch (Exception e) {
-            logger.warning("Failed to extract XML from " + pdfFile.getName() + ": " + e.getMessage());
             if (outputXmlFile.exists()) {
                 outputXmlFile.delete();
             }
+            if (failure instanceof CancellationException) {
+                commitEvent(event, "cancelled", outputXmlFile);
+                throw (CancellationException) failure;
+            }
+            if (failure != null) {
+                logger.warning("Failed to extract XML from " + pdfFile.getName() + ": " + failure.getMessage());
+                commitEvent(event, "error: " + failure.getMessage(), outputXmlFile);
+            } else {
+                logger.fine("ipeextract found no IPE stream in " + pdfFile.getName() + ": " + result.getOutputTail(5));
+                commitEvent(event, "no-ipe-stream", outputXmlFile);
+            }
             return false;
-        }
+        });
     }
 
     public void decompile(File ipeFile, File outputXmlFile) throws Exception {
-        String ipe2ipePath = configuration.getIpe2ipePath();
-        ProcessBuilder processBuilder = new ProcessBuilder(ipe2ipePath, "-xml", ipeFile.getAbsolutePath(), outputXmlFile.getAbsolutePath());
-        Process process = processBuilder.start();
-        int exitCode = process.waitFor();
-        if (exitCode != 0) {
-            throw new Exception("Decompilation failed with exit code: " + exitCode);
+        decompile(ipeFile, outputXmlFile, CancellationToken.NONE);
+    }
+
+    public void decompile(File ipeFile, File outputXmlFile, CancellationToken token) throws Exception {
+        try (CancellationToken.Child local = token.child()) {
+            await(decompileAsync(ipeFile, outputXmlFile, local), local);
+        }
+    }
+
+    /**
+     * Runs {@code ipetoipe -xml} once the process pool has room for it.
+     *
+     * @return completes exceptionally if ipetoipe could not be run or failed
+     */
+    public CompletableFuture<Void> decompileAsync(File ipeFile, File outputXmlFile, CancellationToken token) {
+        ProcessEvent event = startEvent("ipetoipe", ipeFile);
+        ProcessBuilder processBuilder = new ProcessBuilder(configuration.getIpe2ipePath(), "-xml",
+                                                           ipeFile.getAbsolutePath(), outputXmlFile.getAbsolutePath());
+        Duration timeout = Duration.ofSeconds(configuration.getCompileTimeoutSeconds());
+        return run(processBuilder, event, timeout, null, token).handle((result, e) -> {
+            Throwable failure = unwrap(e);
+            if (failure == null && result.getExitCode() != 0) {
+                failure = new Exception("Decompilation failed with exit code: " + result.getExitCode()
+                                        + System.lineSeparator() + result.getOutputTail(10));
+            }
+            commitEvent(event, failure == null ? "decompiled" : "error: " + failure.getMessage(), outputXmlFile);
+            if (failure != null) {
+                throw new CompletionException(failure);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Runs ipetoipe to produce a PDF.
+     *
+     * @return the exit code of ipetoipe; anything but 0 means the compilation failed
+     */
+    public int compile(String xmlFilePath, String outputFilePath) throws Exception {
+        return compile(xmlFilePath, outputFilePath, CancellationToken.NONE);
+    }
+
+    /**
+     * Runs ipetoipe to produce a PDF, killing it when the token is cancelled.
+     *
+     * @return the exit code of ipetoipe; anything but 0 means the compilation failed
+     * @throws CancellationException if the token was cancelled
+     */
+    public int compile(String xmlFilePath, String outputFilePath, CancellationToken token) throws Exception {
+        return compile(xmlFilePath, outputFilePath, null, token).getExitCode();
+    }
+
+    /**
+     * Runs ipetoipe to produce a PDF, killing it when the token is cancelled or it
+     * exceeds the compile timeout.
+     *
+     * @param logFile file for the output of ipetoipe and LaTeX, {@code null} to keep only its end
+     * @throws java.util.concurrent.TimeoutException if the compilation took too long
+     * @throws CancellationException if the token was cancelled
+     */
+    public ProcessResult compile(String xmlFilePath, String outputFilePath, Path logFile, CancellationToken token)
+            throws Exception {
+        try (CancellationToken.Child local = token.child()) {
+            return await(compileAsync(xmlFilePath, outputFilePath, logFile, local), local);
         }
     }
 
-    public void compile(String xmlFilePath, String outputFilePath) throws Exception {
-        String ipe2ipePath = configuration.getIpe2ipePath();
-        ProcessBuilder processBuilder = new ProcessBuilder(ipe2ipePath, "-pdf", xmlFilePath, outputFilePath);
-        Process process = processBuilder.start();
-        int exitCode = process.waitFor();
-        if (exitCode != 0) {
-            throw new Exception("Compilation failed with exit code: " + exitCode);
+    /**
+     * Runs {@code ipetoipe -pdf} once the process pool has room for it.
+     *
+     * @return completes with the exit code of ipetoipe, or exceptionally if it could not be run
+     */
+    public CompletableFuture<Integer> compileAsync(String xmlFilePath, String outputFilePath, CancellationToken token) {
+        return compileAsync(xmlFilePath, outputFilePath, null, token).thenApply(ProcessResult::getExitCode);
+    }
+
+    /**
+     * Compiles the IPE XML file to a PDF once the process pool has room for it,
+     * on an ipescript worker if they are enabled, otherwise with ipetoipe.
+     * IPE runs LaTeX in a scratch directory of its own ({@code IPELATEXDIR}), so
+     * concurrent compilations do not overwrite each other's {@code ipetemp} files.
+     * If the compilation fails, the LaTeX source and log are kept next to the log
+     * file as {@code <name>.tex} and {@code <name>.latex.log}.
+     *
+     * @param logFile file for the output of ipetoipe and LaTeX, {@code null} to keep only its end
+     * @return completes with the result of the compilation, or exceptionally if it could not be run or timed out
+     */
+    public CompletableFuture<ProcessResult> compileAsync(String xmlFilePath, String outputFilePath, Path logFile,
+                                                         CancellationToken token) {
+        if (!scriptWorkers.isEnabled()) {
+            return compileWithIpeToIpe(xmlFilePath, outputFilePath, logFile, token);
+        }
+        ProcessEvent event = startEvent("ipescript", new File(xmlFilePath));
+        event.queueDepth = getProcessPool().getQueueDepth();
+        CompletableFuture<ProcessResult> compilation = scriptWorkers.compile(xmlFilePath, outputFilePath, logFile, token);
+        compilation.whenComplete((result, e) -> {
+            Throwable failure = unwrap(e);
+            if (result != null) {
+                event.pid = result.getPid();
+                event.exitCode = result.getExitCode();
+                event.queueTime = result.getQueueTime().toMillis();
+                event.activeProcesses = result.getActiveProcesses();
+            }
+            String outcome = failure instanceof IpeScriptWorkers.Unavailable ? "fallback: " + failure.getMessage()
+                    : failure != null ? "error: " + failure.getMessage() : result.getExitCode() == 0 ? "compiled" : "failed";
+            commitEvent(event, outcome, new File(outputFilePath));
+        });
+        return compilation.exceptionallyCompose(e -> {
+            Throwable failure = unwrap(e);
+            if (failure instanceof IpeScriptWorkers.Unavailable) {
+                logger.fine("Compiling " + new File(xmlFilePath).getName() + " with ipetoipe: " + failure.getMessage());
+                return compileWithIpeToIpe(xmlFilePath, outputFilePath, logFile, token);
+            }
+            return CompletableFuture.failedFuture(failure);
+        });
+    }
+
+    private CompletableFuture<ProcessResult> compileWithIpeToIpe(String xmlFilePath, String outputFilePath, Path logFile,
+                                                                 CancellationToken token) {
+        ProcessEvent event = startEvent("ipetoipe", new File(xmlFilePath));
+        Path latexDirectory;
+        try {
+            latexDirectory = Files.createTempDirectory(LATEX_DIRECTORY_PREFIX);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        ProcessBuilder processBuilder = new ProcessBuilder(configuration.getIpe2ipePath(), "-pdf", xmlFilePath, outputFilePath);
+        processBuilder.environment().put(LATEX_DIRECTORY_VARIABLE, latexDirectory.toString());
+        Duration timeout = Duration.ofSeconds(configuration.getCompileTimeoutSeconds());
+        return run(processBuilder, event, timeout, logFile, token).whenComplete((result, e) -> {
+            Throwable failure = unwrap(e);
+            boolean compiled = failure == null && result.getExitCode() == 0;
+            String outcome = failure != null ? "error: " + failure.getMessage() : compiled ? "compiled" : "failed";
+            commitEvent(event, outcome, new File(outputFilePath));
+            if (logFile != null) {
+                keepLatexFiles(latexDirectory, logFile, !compiled && !(failure instanceof CancellationException));
+            }
+            deleteRecursively(latexDirectory);
+        });
+    }
+
+    /**
+     * Copies the LaTeX source and log of a failed compilation next to the log
+     * file, or removes the copies of an earlier failure once the deck compiles.
+     */
+    static void keepLatexFiles(Path latexDirectory, Path logFile, boolean failed) {
+        String name = logFile.getFileName().toString().replaceFirst("\\.log$", "");
+        Path[][] copies = {
+                {latexDirectory.resolve(LATEX_LOG), logFile.resolveSibling(name + ".latex.log")},
+                {latexDirectory.resolve(LATEX_SOURCE), logFile.resolveSibling(name + ".tex")}
+        };
+        for (Path[] copy : copies) {
+            try {
+                if (!failed) {
+                    Files.deleteIfExists(copy[1]);
+                } else if (Files.exists(copy[0])) {
+                    Files.copy(copy[0], copy[1], StandardCopyOption.REPLACE_EXISTING);
+                    logger.info("Saved " + copy[0].getFileName() + " of the failed compilation to: " + copy[1].toAbsolutePath());
+                }
+            } catch (IOException e) {
+                logger.warning("Failed to save " + copy[0].getFileName() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    static void deleteRecursively(Path directory) {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        } catch (IOException e) {
+            logger.fine("Failed to remove LaTeX directory " + directory + ": " + e.getMessage());
+        }
+        if (Files.exists(directory)) {
+            logger.fine("LaTeX directory " + directory + " is still in use, leaving it behind");
+        }
+    }
+
+    private CompletableFuture<ProcessResult> run(ProcessBuilder processBuilder, ProcessEvent event, Duration timeout,
+                                                 Path logFile, CancellationToken token) {
+        event.queueDepth = getProcessPool().getQueueDepth();
+        return processExecutor.execute(processBuilder, timeout, logFile, token).thenApply(result -> {
+            event.pid = result.getPid();
+            event.exitCode = result.getExitCode();
+            event.queueTime = result.getQueueTime().toMillis();
+            event.activeProcesses = result.getActiveProcesses();
+            return result;
+        });
+    }
+
+    /**
+     * Waits for the future, cancelling the tool's token if the waiting thread is interrupted.
+     */
+    private static <T> T await(CompletableFuture<T> future, CancellationToken token) throws Exception {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            token.cancel("interrupted");
+            throw e;
+        } catch (ExecutionException e) {
+            Throwable cause = unwrap(e.getCause());
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw (Error) cause;
+        }
+    }
+
+    private static Throwable unwrap(Throwable failure) {
+        while (failure instanceof CompletionException && failure.getCause() != null) {
+            failure = failure.getCause();
+        }
+        return failure;
+    }
+
+    private static ProcessEvent startEvent(String tool, File input) {
+        ProcessEvent event = new ProcessEvent();
+        event.tool = tool;
+        event.file = input.getName();
+        event.inputSize = input.length();
+        event.exitCode = -1;
+        event.begin();
+        return event;
+    }
+
+    private static void commitEvent(ProcessEvent event, String outcome, File output) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.outcome = outcome;
+            event.outputSize = output.length();
+            event.commit();
         }
     }
 }
@@ -1,24 +1,210 @@
 package com.translation.util;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
 
+/**
+ * Runs external processes through a {@link ProcessPool}. The output of a process
+ * (stdout and stderr, interleaved) is read on a separate thread while it runs, so a
+ * chatty tool can never block on a full pipe. The last {@value #OUTPUT_TAIL_BYTES}
+ * bytes are kept in memory for error messages and, if a log file is given, all of
+ * it is written there. A process that exceeds its timeout or whose token is
+ * cancelled is killed together with the processes it started.
+ */
 public class ProcessExecutor {
+    private static final Logger logger = Logger.getLogger(ProcessExecutor.class.getName());
+    private static final int OUTPUT_TAIL_BYTES = 16 * 1024;
+    private static final long DRAIN_GRACE_SECONDS = 5;
 
+    private static final AtomicInteger drainerCounter = new AtomicInteger();
+    private static final ExecutorService drainers = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "process-output-" + drainerCounter.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final ProcessPool processPool;
+
+    public ProcessExecutor() {
+        this(new ProcessPool(Integer.MAX_VALUE));
+    }
+
+    public ProcessExecutor(ProcessPool processPool) {
+        this.processPool = processPool;
+    }
+
+    public ProcessPool getProcessPool() {
+        return processPool;
+    }
+
+    /**
+     * Runs the command and returns the end of its output.
+     */
     public String executeCommand(String command) throws IOException, InterruptedException {
-        ProcessBuilder processBuilder = new ProcessBuilder(command.split(" "));
-        Process process = processBuilder.start();
-        StringBuilder output = new StringBuilder();
-
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                output.append(line).append("\n");
+        try {
+            return execute(new ProcessBuilder(command.split(" ")), null, null, CancellationToken.NONE).get().getOutput();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * Starts the process once the pool has room for it.
+     *
+     * @param timeout how long the process may run, {@code null} for no limit
+     * @param logFile file to write the whole output to, {@code null} to keep only its end
+     * @return completes with the result of the process; exceptionally with a
+     *         {@link TimeoutException}, a {@link java.util.concurrent.CancellationException}
+     *         or the {@link IOException} of a process that could not be started
+     */
+    public CompletableFuture<ProcessResult> execute(ProcessBuilder builder, Duration timeout, Path logFile,
+                                                    CancellationToken token) {
+        long requestedAt = System.nanoTime();
+        builder.redirectErrorStream(true);
+        return processPool.start(builder, token).thenCompose(process -> {
+            long startedAt = System.nanoTime();
+            int activeProcesses = processPool.getActiveProcesses();
+            OutputTail output = new OutputTail(OUTPUT_TAIL_BYTES);
+            CompletableFuture<Void> drained = CompletableFuture.runAsync(() -> drain(process, output, logFile), drainers);
+            closeInput(process);
+
+            CancellationToken.Registration killer = token.onCancel(() -> kill(process));
+            CompletableFuture<Process> exit = process.onExit();
+            if (timeout != null) {
+                exit = exit.orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS);
+            }
+            return exit.handle((exited, e) -> {
+                killer.close();
+                if (e != null) {
+                    kill(process);
+                }
+                return e == null;
+            }).thenCompose(finished -> drained.completeOnTimeout(null, DRAIN_GRACE_SECONDS, TimeUnit.SECONDS)
+                                              .handle((ignored, e) -> finished)
+            ).thenApply(finished -> {
+                if (!finished) {
+                    throw new CompletionException(new TimeoutException(describe(builder) + " timed out after "
+                                                                       + timeout.toMillis() + "ms"));
+                }
+                token.throwIfCancelled();
+                return new ProcessResult(process.pid(), process.exitValue(), Duration.ofNanos(System.nanoTime() - startedAt),
+                                         Duration.ofNanos(startedAt - requestedAt), activeProcesses, output.toString(), logFile);
+            });
+        });
+    }
+
+    /**
+     * Reads the output until the process closes it. A log file that cannot be
+     * written does not stop the reading, or the process would block.
+     */
+    private static void drain(Process process, OutputTail output, Path logFile) {
+        OutputStream log = null;
+        if (logFile != null) {
+            try {
+                log = Files.newOutputStream(logFile);
+            } catch (IOException e) {
+                logger.warning("Cannot write process log " + logFile + ": " + e.getMessage());
             }
         }
+        byte[] buffer = new byte[8192];
+        try (InputStream in = process.getInputStream()) {
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                output.write(buffer, read);
+                if (log != null) {
+                    try {
+                        log.write(buffer, 0, read);
+                    } catch (IOException e) {
+                        logger.warning("Cannot write process log " + logFile + ": " + e.getMessage());
+                        log = closeQuietly(log);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            logger.fine("Stopped reading the output of process " + process.pid() + ": " + e.getMessage());
+        } finally {
+            closeQuietly(log);
+        }
+    }
 
-        process.waitFor();
-        return output.toString();
+    private static OutputStream closeQuietly(OutputStream stream) {
+        if (stream != null) {
+            try {
+                stream.close();
+            } catch (IOException e) {
+                logger.fine("Failed to close process log: " + e.getMessage());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The tools never read stdin; closing it keeps one that tries from waiting forever.
+     */
+    private static void closeInput(Process process) {
+        try {
+            process.getOutputStream().close();
+        } catch (IOException e) {
+            logger.fine("Failed to close the input of process " + process.pid() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Kills the process and what it started, e.g. the LaTeX run of ipetoipe.
+     */
+    static void kill(Process process) {
+        process.descendants().forEach(ProcessHandle::destroyForcibly);
+        process.destroyForcibly();
+    }
+
+    private static String describe(ProcessBuilder builder) {
+        return Path.of(builder.command().get(0)).getFileName().toString();
+    }
+
+    /**
+     * Ring buffer holding the last bytes written to it.
+     */
+    private static final class OutputTail {
+        private final byte[] buffer;
+        private long written = 0;
+
+        private OutputTail(int capacity) {
+            this.buffer = new byte[capacity];
+        }
+
+        synchronized void write(byte[] bytes, int length) {
+            int offset = Math.max(0, length - buffer.length);
+            for (int i = offset; i < length; i++) {
+                buffer[(int) ((written + i - offset) % buffer.length)] = bytes[i];
+            }
+            written += length - offset;
+        }
+
+        @Override
+        public synchronized String toString() {
+            if (written <= buffer.length) {
+                return new String(buffer, 0, (int) written, StandardCharsets.UTF_8);
+            }
+            int start = (int) (written % buffer.length);
+            byte[] ordered = new byte[buffer.length];
+            System.arraycopy(buffer, start, ordered, 0, buffer.length - start);
+            System.arraycopy(buffer, 0, ordered, buffer.length - start, start);
+            return new String(ordered, StandardCharsets.UTF_8);
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,137 @@
+package com.translation.util;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Logger;
+
+/**
+ * Limits how many external tools run at the same time, whichever thread or job
+ * starts them. Launches beyond the limit wait in a queue without blocking their
+ * caller and start, in order, as soon as a running process exits.
+ */
+public class ProcessPool {
+    private static final Logger logger = Logger.getLogger(ProcessPool.class.getName());
+
+    private final int maxProcesses;
+    private final Deque<Launch> queue = new ArrayDeque<>();
+    private int active = 0;
+    private int peakActive = 0;
+    private int peakQueueDepth = 0;
+
+    public ProcessPool(int maxProcesses) {
+        if (maxProcesses < 1) {
+            throw new IllegalArgumentException("A process pool needs room for at least one process");
+        }
+        this.maxProcesses = maxProcesses;
+        logger.fine("Running at most " + maxProcesses + " external processes at a time");
+    }
+
+    /**
+     * Starts the process once the pool has room for it.
+     *
+     * @return the started process; fails with a {@link CancellationException} if the
+     *         token is cancelled while the launch is queued, or with the {@link IOException}
+     *         of a process that could not be started
+     */
+    public CompletableFuture<Process> start(ProcessBuilder builder, CancellationToken token) {
+        if (token.isCancelled()) {
+            return CompletableFuture.failedFuture(new CancellationException(token.getReason()));
+        }
+        Launch launch = new Launch(builder, token);
+        launch.registration = token.onCancel(() -> dequeue(launch));
+        synchronized (this) {
+            if (active >= maxProcesses) {
+                queue.add(launch);
+                peakQueueDepth = Math.max(peakQueueDepth, queue.size());
+                logger.fine("Queued " + builder.command().get(0) + ", " + queue.size() + " launches waiting for "
+                            + active + " running processes");
+                return launch.future;
+            }
+            acquire();
+        }
+        launch(launch);
+        return launch.future;
+    }
+
+    public int getMaxProcesses() {
+        return maxProcesses;
+    }
+
+    public synchronized int getActiveProcesses() {
+        return active;
+    }
+
+    /**
+     * Number of launches waiting for a running process to exit.
+     */
+    public synchronized int getQueueDepth() {
+        return queue.size();
+    }
+
+    public synchronized int getPeakActiveProcesses() {
+        return peakActive;
+    }
+
+    public synchronized int getPeakQueueDepth() {
+        return peakQueueDepth;
+    }
+
+    private void acquire() {
+        active++;
+        peakActive = Math.max(peakActive, active);
+    }
+
+    private void launch(Launch launch) {
+        launch.registration.close();
+        Process process;
+        try {
+            launch.token.throwIfCancelled();
+            process = launch.builder.start();
+        } catch (IOException | RuntimeException e) {
+            release();
+            launch.future.completeExceptionally(e);
+            return;
+        }
+        process.onExit().whenComplete((exited, e) -> release());
+        launch.future.complete(process);
+    }
+
+    private void release() {
+        Launch next;
+        synchronized (this) {
+            active--;
+            next = queue.poll();
+            if (next != null) {
+                acquire();
+            }
+        }
+        if (next != null) {
+            launch(next);
+        }
+    }
+
+    private void dequeue(Launch launch) {
+        boolean removed;
+        synchronized (this) {
+            removed = queue.remove(launch);
+        }
+        if (removed) {
+            launch.future.completeExceptionally(new CancellationException(launch.token.getReason()));
+        }
+    }
+
+    private static final class Launch {
+        private final ProcessBuilder builder;
+        private final CancellationToken token;
+        private final CompletableFuture<Process> future = new CompletableFuture<>();
+        private CancellationToken.Registration registration;
+
+        private Launch(ProcessBuilder builder, CancellationToken token) {
+            this.builder = builder;
+            this.token = token;
+        }
+    }
+}
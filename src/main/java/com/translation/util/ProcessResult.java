@@ -0,0 +1,81 @@
+package com.translation.util;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+
+/**
+ * Outcome of a process run by {@link ProcessExecutor}.
+ */
+public class ProcessResult {
+    private final long pid;
+    private final int exitCode;
+    private final Duration duration;
+    private final Duration queueTime;
+    private final int activeProcesses;
+    private final String output;
+    private final Path logFile;
+
+    public ProcessResult(long pid, int exitCode, Duration duration, Duration queueTime, int activeProcesses,
+                         String output, Path logFile) {
+        this.pid = pid;
+        this.exitCode = exitCode;
+        this.duration = duration;
+        this.queueTime = queueTime;
+        this.activeProcesses = activeProcesses;
+        this.output = output;
+        this.logFile = logFile;
+    }
+
+    public long getPid() {
+        return pid;
+    }
+
+    public int getExitCode() {
+        return exitCode;
+    }
+
+    /**
+     * Time from the start of the process to its exit.
+     */
+    public Duration getDuration() {
+        return duration;
+    }
+
+    /**
+     * Time the launch waited for room in the process pool.
+     */
+    public Duration getQueueTime() {
+        return queueTime;
+    }
+
+    /**
+     * Processes running in the pool when this one started, including itself.
+     */
+    public int getActiveProcesses() {
+        return activeProcesses;
+    }
+
+    /**
+     * The end of the process's output, stdout and stderr interleaved.
+     */
+    public String getOutput() {
+        return output;
+    }
+
+    /**
+     * The last lines of the output, for log messages.
+     */
+    public String getOutputTail(int lines) {
+        String[] all = output.strip().split("\\R");
+        int from = Math.max(0, all.length - lines);
+        return String.join(System.lineSeparator(), Arrays.copyOfRange(all, from, all.length));
+    }
+
+    /**
+     * File holding the whole output, {@code null} if none was written.
+     */
+    public Path getLogFile() {
+        return logFile;
+    }
+}
@@ -0,0 +1,42 @@
+-- Batch compiler for the translation pipeline, run as "ipescript ipe-batch-compile".
+-- Reads one job per line from stdin, "<input.xml>\t<output.pdf>", and answers each
+-- with one line "@@ipe-batch\t<status>\t<message>" on stdout, where status is
+--   OK     the PDF was written
+--   LATEX  LaTeX failed; its files are in IPELATEXDIR
+--   ERR    anything else, the caller falls back to ipetoipe
+-- The script ends when stdin is closed.
+
+local MARK = "@@ipe-batch"
+
+local function answer(status, message)
+  message = message and (tostring(message):gsub("%s+", " ")) or ""
+  io.write(MARK, "\t", status, "\t", message, "\n")
+  io.flush()
+end
+
+local function compile(input, output)
+  local doc, err = ipe.Document(input)
+  if not doc then
+    return "ERR", err or ("cannot load " .. input)
+  end
+  local ok, latexErr = doc:runLatex()
+  if not ok then
+    return "LATEX", latexErr
+  end
+  if not doc:save(output, "pdf") then
+    return "ERR", "cannot save " .. output
+  end
+  return "OK"
+end
+
+for line in io.lines() do
+  local input, output = line:match("^(.-)\t(.+)$")
+  if input then
+    local ran, status, message = pcall(compile, input, output)
+    if ran then
+      answer(status, message)
+    else
+      answer("ERR", status)
+    end
+  end
+end
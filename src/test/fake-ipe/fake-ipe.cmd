@@ -0,0 +1,9 @@
+@echo off
+rem Runs the stand-in IPE tools of FakeIpeTool, see there for the knobs.
+rem Usage: fake-ipe.cmd ipeextract|ipetoipe|ipescript|corpus arguments
+rem Needs the compiled test classes: mvn test-compile
+setlocal
+set "ROOT=%~dp0..\..\.."
+set "JAVA=java"
+if defined JAVA_HOME set "JAVA=%JAVA_HOME%\bin\java"
+"%JAVA%" %FAKE_IPE_JAVA_OPTS% -cp "%ROOT%\target\test-classes;%ROOT%\target\classes" com.translation.tools.FakeIpeTool %*
@@ -0,0 +1,8 @@
+#!/bin/sh
+# Runs the stand-in IPE tools of FakeIpeTool, see there for the knobs.
+# Usage: fake-ipe.sh <ipeextract|ipetoipe|ipescript|corpus> <arguments>
+# Needs the compiled test classes: mvn test-compile
+DIR="$(cd "$(dirname "$0")" && pwd)"
+ROOT="$DIR/../../.."
+JAVA="${JAVA_HOME:+$JAVA_HOME/bin/}java"
+exec "$JAVA" $FAKE_IPE_JAVA_OPTS -cp "$ROOT/target/test-classes:$ROOT/target/classes" com.translation.tools.FakeIpeTool "$@"
@@ -0,0 +1 @@
+@"%~dp0fake-ipe.cmd" ipescript %*
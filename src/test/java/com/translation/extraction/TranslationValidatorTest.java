@@ -0,0 +1,94 @@
+package com.translation.extraction;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TranslationValidatorTest {
+    private static final String STRUCTURE = "<ipe><page><text>@PLACEHOLDER(1)@</text></page></ipe>";
+
+    private final TranslationValidator validator = new TranslationValidator();
+
+    @Test
+    void lineBreakBeforeAWordIsNotACommand() {
+        // \n is an escaped line break; ne, nu and ni are only commands if the original used them
+        List<TranslationValidator.Problem> problems = validate("Beispiel\nz.B. nur\nicht",
+                                                               "@(1):Example\\ne.g. only\\nur\\ni.e.");
+
+        assertEquals(List.of(), problems);
+    }
+
+    @Test
+    void commandOfTheOriginalIsReported() {
+        List<TranslationValidator.Problem> problems = validate("$a \\neq b$", "@(1):$a \\neq b$");
+
+        assertEquals(1, problems.size());
+        assertEquals(Integer.valueOf(1), problems.get(0).getSegmentId());
+        assertTrue(problems.get(0).getMessage().contains("\\neq"));
+    }
+
+    @Test
+    void escapedOriginalsReportNoCommands() {
+        // From the segment files a command and a line break cannot be told apart
+        Map<Integer, String> originals = TranslationValidator.originalTexts(List.of("@(1):$a \\neq b$"));
+
+        List<TranslationValidator.Problem> problems = validator.validate(STRUCTURE, restored("$a eq b$"), originals,
+                                                                         List.of("@(1):$a \\neq b$"));
+
+        assertEquals(List.of(), problems);
+    }
+
+    @Test
+    void unbalancedBracesAreComparedWithTheOriginal() {
+        assertEquals(List.of(), validate("\\textbf{fett", "@(1):\\textbf{bold"));
+
+        List<TranslationValidator.Problem> problems = validate("\\textbf{fett}", "@(1):\\textbf{bold");
+        assertEquals(1, problems.size());
+        assertTrue(problems.get(0).getMessage().startsWith("unbalanced braces"));
+    }
+
+    @Test
+    void unbalancedMathIsReported() {
+        List<TranslationValidator.Problem> problems = validate("$x$ und $y$", "@(1):$x$ and $y");
+
+        assertEquals(1, problems.size());
+        assertTrue(problems.get(0).getMessage().startsWith("unbalanced $"));
+    }
+
+    @Test
+    void segmentsWithoutPlaceholderAreIgnored() {
+        List<TranslationValidator.Problem> problems = validator.validate(STRUCTURE, restored("Text"),
+                                                                         Map.of(1, "Text", 2, "Titel"),
+                                                                         List.of("@(1):Text", "@(2):{Title"));
+
+        assertEquals(List.of(), problems);
+    }
+
+    @Test
+    void leftoverPlaceholderAndMarkupAreReported() {
+        String restoredXml = "<ipe><page><text>a < b</text><text>@PLACEHOLDER(2)@</text></page></ipe>";
+
+        List<TranslationValidator.Problem> problems = validator.validate(null, restoredXml, Map.of(1, "a kleiner b"),
+                                                                         List.of("@(1):a < b"));
+
+        assertTrue(problems.stream().anyMatch(p -> Integer.valueOf(2).equals(p.getSegmentId())
+                                                   && p.getMessage().contains("placeholder")));
+        assertTrue(problems.stream().anyMatch(p -> p.getSegmentId() == null
+                                                   && p.getMessage().startsWith("XML is not well-formed")));
+        assertTrue(problems.stream().anyMatch(p -> Integer.valueOf(1).equals(p.getSegmentId())
+                                                   && p.getMessage().contains("'<'")));
+    }
+
+    private List<TranslationValidator.Problem> validate(String original, String translatedSegment) {
+        String text = translatedSegment.substring(translatedSegment.indexOf(':') + 1).replace("\\n", "\n");
+        return validator.validate(STRUCTURE, restored(text), Map.of(1, original), List.of(translatedSegment));
+    }
+
+    private static String restored(String text) {
+        return STRUCTURE.replace("@PLACEHOLDER(1)@", text);
+    }
+}
@@ -0,0 +1,77 @@
+package com.translation.pipeline;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class LeaseQueueTest {
+    private static final Duration TTL = Duration.ofMillis(300);
+
+    @TempDir
+    Path queueDirectory;
+
+    @Test
+    @Timeout(value = 10, unit = TimeUnit.SECONDS)
+    void leaseOfADeadWorkerIsTakenOver() throws Exception {
+        try (LeaseQueue survivor = new LeaseQueue(queueDirectory, TTL)) {
+            LeaseQueue dead = new LeaseQueue(queueDirectory, TTL);
+            assertNotNull(dead.tryClaim("deck"));
+            assertNull(survivor.tryClaim("deck"));
+
+            dead.close(); // no more heartbeats
+            assertNotNull(claimWithin(survivor, "deck", Duration.ofSeconds(5)));
+        }
+    }
+
+    @Test
+    @Timeout(value = 10, unit = TimeUnit.SECONDS)
+    void liveLeasesAreKeptWhateverTheOwnersClockSays() throws Exception {
+        try (LeaseQueue observer = new LeaseQueue(queueDirectory, TTL)) {
+            Path behind = lease("behind");
+            Path ahead = lease("ahead");
+            Duration skew = Duration.ofHours(1);
+
+            // Owners on hosts whose clocks are an hour off keep sending heartbeats
+            long end = System.nanoTime() + TTL.multipliedBy(5).toNanos();
+            while (System.nanoTime() < end) {
+                Files.setLastModifiedTime(behind, FileTime.from(Instant.now().minus(skew)));
+                Files.setLastModifiedTime(ahead, FileTime.from(Instant.now().plus(skew)));
+                assertNull(observer.tryClaim("behind"));
+                assertNull(observer.tryClaim("ahead"));
+                Thread.sleep(TTL.toMillis() / 3);
+            }
+
+            // Once the heartbeats stop, both are taken over
+            assertNotNull(claimWithin(observer, "behind", Duration.ofSeconds(5)));
+            assertNotNull(claimWithin(observer, "ahead", Duration.ofSeconds(5)));
+        }
+    }
+
+    private Path lease(String fileName) throws Exception {
+        Path leaseFile = queueDirectory.resolve("leases").resolve(fileName + ".lease");
+        Files.writeString(leaseFile, "{\"worker\":\"elsewhere\",\"token\":\"" + fileName + "\"}");
+        return leaseFile;
+    }
+
+    private static LeaseQueue.Lease claimWithin(LeaseQueue queue, String fileName, Duration timeout) throws Exception {
+        long end = System.nanoTime() + timeout.toNanos();
+        while (System.nanoTime() < end) {
+            LeaseQueue.Lease lease = queue.tryClaim(fileName);
+            if (lease != null) {
+                return lease;
+            }
+            Thread.sleep(50);
+        }
+        return null;
+    }
+}
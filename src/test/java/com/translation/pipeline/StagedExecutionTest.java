@@ -0,0 +1,116 @@
+package com.translation.pipeline;
+
+import com.translation.config.Configuration;
+import com.translation.config.PipelineOptions;
+import com.translation.metrics.RunMetrics;
+import com.translation.pipeline.steps.PipelineStepBase;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StagedExecutionTest {
+    @TempDir
+    Path workDirectory;
+
+    @Test
+    @Timeout(value = 30, unit = TimeUnit.SECONDS)
+    void workerFailureFailsOnlyThatFile() throws Exception {
+        PipelineOptions options = PipelineOptions.fromArgs(new String[] {"--staged", "--work-dir", workDirectory.toString()});
+        WorkArea workArea = new WorkArea(options, new Configuration());
+        // Pipeline.runStep isolates step exceptions, so the failure has to come from around the step
+        RunJournal journal = new RunJournal(workArea, options) {
+            @Override
+            public synchronized void record(String fileName, int stepOrder, String stepName, Status status) {
+                if ("broken".equals(fileName) && stepOrder == 2 && status == Status.STARTED) {
+                    throw new IllegalStateException("journal unavailable");
+                }
+                super.record(fileName, stepOrder, stepName, status);
+            }
+        };
+
+        PipelineSummary summary = pipeline(options, workArea, journal).execute(new String[] {"a", "broken", "b", "c"});
+
+        assertEquals(4, summary.getTotalCount());
+        assertEquals(3, summary.getSucceededCount());
+        Map<String, FileOutcome> outcomes = byFile(summary);
+        assertFalse(outcomes.get("broken").isSuccessful());
+        assertEquals("second", outcomes.get("broken").getFailedStep());
+        assertEquals("journal unavailable", outcomes.get("broken").getMessage());
+    }
+
+    @Test
+    @Timeout(value = 30, unit = TimeUnit.SECONDS)
+    void stagesShutDownWhenAWorkerDies() throws Exception {
+        PipelineOptions options = PipelineOptions.fromArgs(new String[] {"--staged", "--work-dir", workDirectory.toString()});
+        WorkArea workArea = new WorkArea(options, new Configuration());
+
+        PipelineSummary summary = pipeline(options, workArea, new RunJournal(workArea, options))
+                .execute(new String[] {"a", "fatal", "b"});
+
+        // The dying worker still ends the stage, so the run finishes with the other files
+        Map<String, FileOutcome> outcomes = byFile(summary);
+        assertEquals(3, summary.getTotalCount());
+        assertTrue(outcomes.get("a").isSuccessful());
+        assertTrue(outcomes.get("b").isSuccessful());
+        assertEquals("first", outcomes.get("fatal").getFailedStep());
+    }
+
+    private static Pipeline pipeline(PipelineOptions options, WorkArea workArea, RunJournal journal) {
+        RunMetrics metrics = new RunMetrics(workArea);
+        return new Pipeline(Set.of(new FirstStep(), new SecondStep()), options, journal, metrics,
+                            new FileScheduler(metrics, workArea), workArea);
+    }
+
+    private static Map<String, FileOutcome> byFile(PipelineSummary summary) {
+        Map<String, FileOutcome> outcomes = new HashMap<>();
+        for (FileOutcome outcome : summary.getOutcomes()) {
+            outcomes.put(outcome.getFileName(), outcome);
+        }
+        return outcomes;
+    }
+
+    private static class FirstStep extends PipelineStepBase {
+        FirstStep() {
+            super("first");
+        }
+
+        @Override
+        protected int getStepOrder() {
+            return 1;
+        }
+
+        @Override
+        protected boolean performAction(String fileName, FileContext context) {
+            if ("fatal".equals(fileName)) {
+                throw new AssertionError("step crashed");
+            }
+            return true;
+        }
+    }
+
+    private static class SecondStep extends PipelineStepBase {
+        SecondStep() {
+            super("second");
+        }
+
+        @Override
+        protected int getStepOrder() {
+            return 2;
+        }
+
+        @Override
+        protected boolean performAction(String fileName, FileContext context) {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.translation.pipeline.steps;
+
+import com.translation.config.Configuration;
+import com.translation.config.PipelineOptions;
+import com.translation.metrics.RunMetrics;
+import com.translation.pipeline.FileContext;
+import com.translation.pipeline.FileScheduler;
+import com.translation.pipeline.Pipeline;
+import com.translation.pipeline.PipelineSummary;
+import com.translation.pipeline.RetryPolicy;
+import com.translation.pipeline.RunJournal;
+import com.translation.pipeline.WorkArea;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PipelineStepBaseTest {
+    @TempDir
+    Path workDirectory;
+
+    @Test
+    @Timeout(value = 30, unit = TimeUnit.SECONDS)
+    void fileLeftOutOfABatchIsRetriedOnItsOwn() throws Exception {
+        SharedRequestStep step = new SharedRequestStep();
+
+        PipelineSummary summary = pipeline(step).execute(new String[] {"a", "flaky", "b"});
+
+        assertEquals(3, summary.getSucceededCount());
+        assertEquals(1, step.batches.get());
+        // Only the file the shared call did not get to is processed again, with its own retries
+        assertEquals(Map.of("a", 1, "flaky", 2, "b", 1), step.calls);
+    }
+
+    private Pipeline pipeline(PipelineStepBase step) {
+        PipelineOptions options = PipelineOptions.fromArgs(new String[] {"--work-dir", workDirectory.toString()});
+        WorkArea workArea = new WorkArea(options, new Configuration());
+        RunMetrics metrics = new RunMetrics(workArea);
+        return new Pipeline(Set.of(step), options, new RunJournal(workArea, options), metrics,
+                            new FileScheduler(metrics, workArea), workArea);
+    }
+
+    /**
+     * Handles all files in one shared call that leaves out {@code flaky}, which then
+     * fails once on its own, like a DeepL request during an outage.
+     */
+    private static class SharedRequestStep extends PipelineStepBase {
+        private final Map<String, Integer> calls = new ConcurrentHashMap<>();
+        private final AtomicInteger batches = new AtomicInteger();
+
+        SharedRequestStep() {
+            super("shared");
+        }
+
+        @Override
+        protected int getStepOrder() {
+            return 1;
+        }
+
+        @Override
+        protected RetryPolicy getRetryPolicy() {
+            return RetryPolicy.attempts(2)
+                              .withBackoff(Duration.ofMillis(10), 1.0)
+                              .retryingOn(IOException.class);
+        }
+
+        @Override
+        public boolean supportsBatch() {
+            return true;
+        }
+
+        @Override
+        protected Map<String, Boolean> performBatch(List<FileContext> contexts) {
+            batches.incrementAndGet();
+            Map<String, Boolean> results = new LinkedHashMap<>();
+            for (FileContext context : contexts) {
+                if ("flaky".equals(context.getFileName())) {
+                    results.put(context.getFileName(), performAlone(context));
+                } else {
+                    calls.merge(context.getFileName(), 1, Integer::sum);
+                    results.put(context.getFileName(), true);
+                }
+            }
+            return results;
+        }
+
+        @Override
+        protected boolean performAction(String fileName, FileContext context) throws Exception {
+            if (calls.merge(fileName, 1, Integer::sum) == 1 && "flaky".equals(fileName)) {
+                throw new IOException("service unavailable");
+            }
+            return true;
+        }
+    }
+}
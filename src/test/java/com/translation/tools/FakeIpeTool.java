@@ -0,0 +1,423 @@
+package com.translation.tools;
+
+import com.translation.ipe.IpePdfExtractor;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Stand-in for the IPE command line tools, so the orchestration of the pipeline
+ * can be benchmarked and load-tested on machines without IPE. It is started
+ * through the launchers in {@code src/test/fake-ipe}, and the {@code settings.json}
+ * there points the pipeline at them:
+ *
+ * <pre>
+ *   mvn test-compile
+ *   src/test/fake-ipe/fake-ipe.sh corpus .work/step-0 40
+ *   mvn exec:java -Dsettings.file=src/test/fake-ipe/settings.json -Dexec.args="--skip-download --no-translate --jobs 8"
+ * </pre>
+ *
+ * <ul>
+ *   <li>{@code ipeextract <in.pdf> <out.xml>} writes the fixture named like the PDF
+ *       if there is one, otherwise the IPE stream embedded in the PDF. Like the real
+ *       tool, it fails for plain PDFs.</li>
+ *   <li>{@code ipetoipe -pdf <in.xml> <out.pdf>} parses the XML, writes the LaTeX
+ *       files to {@code IPELATEXDIR} and writes a PDF embedding the XML, which can be
+ *       extracted again.</li>
+ *   <li>{@code ipetoipe -xml <in> <out.xml>} extracts like ipeextract.</li>
+ *   <li>{@code ipescript ipe-batch-compile} answers the jobs of the batch script
+ *       like {@code ipetoipe -pdf}.</li>
+ *   <li>{@code corpus <dir> <count>} writes IPE PDFs of varying length made from
+ *       the fixture deck.</li>
+ * </ul>
+ *
+ * <p>The knobs are environment variables, so they reach the tools through the
+ * pipeline. {@code FAKE_IPE_<KNOB>} applies to all tools, {@code FAKE_<TOOL>_<KNOB>}
+ * (e.g. {@code FAKE_IPETOIPE_LATENCY_MS}) to one of them:
+ * <ul>
+ *   <li>{@code LATENCY_MS}, {@code LATENCY_JITTER_MS}: time each run or job sleeps,
+ *       plus a random share of the jitter</li>
+ *   <li>{@code CPU_MS}: CPU time each run or job burns on one core</li>
+ *   <li>{@code MEMORY_MB}: heap the process fills and keeps until it exits</li>
+ *   <li>{@code FAILURE_RATE}: share of runs or jobs that fail, 0 to 1</li>
+ *   <li>{@code SEED}: makes jitter and failures depend only on the seed and the
+ *       input file name, so a run can be repeated exactly</li>
+ * </ul>
+ * {@code FAKE_IPE_FIXTURES} names a directory of {@code <name>.xml} files that
+ * ipeextract returns for {@code <name>.pdf}.
+ */
+public class FakeIpeTool {
+    private static final String FIXTURE_RESOURCE = "/fake-ipe/deck.xml";
+    private static final String BATCH_SCRIPT = "ipe-batch-compile";
+    private static final String BATCH_RESULT_MARK = "@@ipe-batch";
+
+    private final String tool;
+    private final long latencyMillis;
+    private final long latencyJitterMillis;
+    private final long cpuMillis;
+    private final int memoryMegabytes;
+    private final double failureRate;
+    private final Long seed;
+    private byte[][] memory;
+    private static volatile long cpuSink; // keeps the CPU burn from being optimized away
+
+    private FakeIpeTool(String tool) {
+        this.tool = tool;
+        this.latencyMillis = (long) knob("LATENCY_MS", 0);
+        this.latencyJitterMillis = (long) knob("LATENCY_JITTER_MS", 0);
+        this.cpuMillis = (long) knob("CPU_MS", 0);
+        this.memoryMegabytes = (int) knob("MEMORY_MB", 0);
+        this.failureRate = knob("FAILURE_RATE", 0);
+        String seedValue = setting("SEED");
+        this.seed = seedValue != null ? Long.parseLong(seedValue) : null;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            System.err.println("Usage: FakeIpeTool <ipeextract|ipetoipe|ipescript|corpus> <arguments>");
+            System.exit(2);
+        }
+        String[] toolArgs = Arrays.copyOfRange(args, 1, args.length);
+        FakeIpeTool fake = new FakeIpeTool(args[0]);
+        int exitCode;
+        switch (args[0]) {
+            case "ipeextract":
+                exitCode = fake.ipeextract(toolArgs);
+                break;
+            case "ipetoipe":
+                exitCode = fake.ipetoipe(toolArgs);
+                break;
+            case "ipescript":
+                exitCode = fake.ipescript(toolArgs);
+                break;
+            case "corpus":
+                exitCode = fake.corpus(toolArgs);
+                break;
+            default:
+                System.err.println("Unknown tool: " + args[0]);
+                exitCode = 2;
+        }
+        System.out.flush();
+        System.exit(exitCode);
+    }
+
+    private int ipeextract(String[] args) throws IOException, InterruptedException {
+        if (args.length != 2) {
+            System.err.println("Usage: ipeextract <input.pdf> <output.xml>");
+            return 2;
+        }
+        allocateMemory();
+        Path input = Path.of(args[0]);
+        Random random = random(input);
+        work(random);
+        if (fails(random)) {
+            System.out.println("Could not read PDF file '" + input + "'");
+            return 1;
+        }
+        return extract(input, Path.of(args[1]));
+    }
+
+    private int ipetoipe(String[] args) throws IOException, InterruptedException {
+        if (args.length < 3 || (!"-pdf".equals(args[0]) && !"-xml".equals(args[0]))) {
+            System.err.println("Usage: ipetoipe ( -pdf | -xml ) <input> <output>");
+            return 2;
+        }
+        allocateMemory();
+        Path input = Path.of(args[args.length - 2]);
+        Path output = Path.of(args[args.length - 1]);
+        Random random = random(input);
+        work(random);
+        if ("-xml".equals(args[0])) {
+            if (fails(random)) {
+                System.out.println("Could not read Ipe file '" + input + "'");
+                return 1;
+            }
+            if (input.toString().toLowerCase(Locale.ROOT).endsWith(".pdf")) {
+                return extract(input, output);
+            }
+            Files.copy(input, output, StandardCopyOption.REPLACE_EXISTING);
+            return 0;
+        }
+        String failure = compile(input, output, fails(random));
+        if (failure != null) {
+            System.out.println(failure);
+            return 1;
+        }
+        return 0;
+    }
+
+    /**
+     * Runs the jobs of the batch script from stdin until it is closed.
+     */
+    private int ipescript(String[] args) throws IOException, InterruptedException {
+        String scripts = System.getenv("IPESCRIPTS");
+        if (args.length == 0 || !BATCH_SCRIPT.equals(args[0]) || scripts == null
+                || !Files.exists(Path.of(scripts, BATCH_SCRIPT + ".lua"))) {
+            System.out.println("Script '" + (args.length > 0 ? args[0] : "") + "' not found");
+            return 1;
+        }
+        allocateMemory();
+        BufferedReader jobs = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        String job;
+        while ((job = jobs.readLine()) != null) {
+            String[] paths = job.split("\t", 2);
+            if (paths.length != 2) {
+                continue;
+            }
+            Path input = Path.of(paths[0]);
+            Random random = random(input);
+            work(random);
+            String failure = compile(input, Path.of(paths[1]), fails(random));
+            if (failure == null) {
+                System.out.println(BATCH_RESULT_MARK + "\tOK\t");
+            } else {
+                System.out.println(BATCH_RESULT_MARK + (failure.startsWith("!") ? "\tLATEX\t" : "\tERR\t")
+                                   + failure.replaceAll("\\s+", " "));
+            }
+            System.out.flush();
+        }
+        return 0;
+    }
+
+    /**
+     * Writes {@code deck-001.pdf} and onwards, each with the fixture's pages repeated
+     * one to eight times.
+     */
+    private int corpus(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: corpus <directory> <count>");
+            return 2;
+        }
+        Path directory = Files.createDirectories(Path.of(args[0]));
+        int count = Integer.parseInt(args[1]);
+        String deck = new String(fixture(), StandardCharsets.UTF_8);
+        int pagesStart = deck.indexOf("<page");
+        int pagesEnd = deck.lastIndexOf("</page>") + "</page>".length();
+        String pages = deck.substring(pagesStart, pagesEnd) + "\n";
+        Random random = new Random(seed != null ? seed : 0);
+        for (int i = 1; i <= count; i++) {
+            String xml = deck.substring(0, pagesStart) + pages.repeat(1 + random.nextInt(8)) + deck.substring(pagesEnd).stripLeading();
+            writePdf(xml.getBytes(StandardCharsets.UTF_8), directory.resolve(String.format("deck-%03d.pdf", i)));
+        }
+        System.out.println("Wrote " + count + " decks to " + directory.toAbsolutePath());
+        return 0;
+    }
+
+    private int extract(Path pdf, Path output) throws IOException {
+        String fixtures = System.getenv("FAKE_IPE_FIXTURES");
+        if (fixtures != null) {
+            String name = pdf.getFileName().toString().replaceFirst("\\.[^.]*$", "");
+            Path fixture = Path.of(fixtures, name + ".xml");
+            if (Files.exists(fixture)) {
+                Files.copy(fixture, output, StandardCopyOption.REPLACE_EXISTING);
+                return 0;
+            }
+        }
+        if (!new IpePdfExtractor().extract(pdf, output)) {
+            System.out.println("Input file '" + pdf + "' is not an Ipe PDF document");
+            return 1;
+        }
+        return 0;
+    }
+
+    /**
+     * Does what ipetoipe does around its LaTeX run.
+     *
+     * @return the error message, {@code null} if the PDF was written
+     */
+    private String compile(Path xmlFile, Path pdfFile, boolean latexFails) throws IOException {
+        byte[] xml = Files.readAllBytes(xmlFile);
+        List<String> texts;
+        try {
+            texts = textObjects(xml);
+        } catch (SAXException e) {
+            return "Could not read Ipe file '" + xmlFile + "': " + e.getMessage();
+        }
+
+        StringBuilder log = new StringBuilder("This is pdfTeX, Version 3.141592653-2.6-1.40.25 (TeX Live 2023) (preloaded format=pdflatex)\n")
+                .append("entering extended mode\n(./ipetemp.tex\nLaTeX2e <2022-11-01> patch level 1\n");
+        for (int i = 0; i < texts.size(); i++) {
+            log.append('[').append(i + 1).append("] ");
+        }
+        log.append('\n');
+        if (latexFails) {
+            log.append("! Undefined control sequence.\nl.").append(10 + texts.size()).append(" \\foo\n");
+        } else {
+            log.append(")\nOutput written on ipetemp.pdf (").append(texts.size()).append(" pages).\n");
+        }
+        String latexDirectory = System.getenv("IPELATEXDIR");
+        if (latexDirectory != null) {
+            Files.writeString(Path.of(latexDirectory, "ipetemp.tex"), String.join("\n\\newpage\n", texts) + "\n");
+            Files.writeString(Path.of(latexDirectory, "ipetemp.log"), log);
+        }
+        System.out.print(log);
+        if (latexFails) {
+            return "! An error occurred during the Pdflatex run. Please consult the logfile 'ipetemp.log'.";
+        }
+        writePdf(xml, pdfFile);
+        return null;
+    }
+
+    private static List<String> textObjects(byte[] xml) throws IOException, SAXException {
+        List<String> texts = new ArrayList<>();
+        try {
+            SAXParserFactory factory = SAXParserFactory.newInstance();
+            factory.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+            factory.newSAXParser().parse(new ByteArrayInputStream(xml), new DefaultHandler() {
+                private StringBuilder text;
+
+                @Override
+                public void startElement(String uri, String localName, String qName, Attributes attributes) {
+                    if ("text".equals(qName)) {
+                        text = new StringBuilder();
+                    }
+                }
+
+                @Override
+                public void characters(char[] ch, int start, int length) {
+                    if (text != null) {
+                        text.append(ch, start, length);
+                    }
+                }
+
+                @Override
+                public void endElement(String uri, String localName, String qName) {
+                    if ("text".equals(qName)) {
+                        texts.add(text.toString());
+                        text = null;
+                    }
+                }
+            });
+        } catch (ParserConfigurationException e) {
+            throw new IllegalStateException(e);
+        }
+        return texts;
+    }
+
+    /**
+     * Writes a one-page PDF with the XML in a Flate-compressed {@code /Type /Ipe}
+     * stream, where Ipe keeps it.
+     */
+    private static void writePdf(byte[] xml, Path pdfFile) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (DeflaterOutputStream deflater = new DeflaterOutputStream(compressed)) {
+            deflater.write(xml);
+        }
+
+        ByteArrayOutputStream pdf = new ByteArrayOutputStream();
+        List<Integer> offsets = new ArrayList<>();
+        write(pdf, "%PDF-1.4\n%\u00e2\u00e3\u00cf\u00d3\n");
+        offsets.add(pdf.size());
+        write(pdf, "1 0 obj\n<< /Type /Catalog /Pages 2 0 R >>\nendobj\n");
+        offsets.add(pdf.size());
+        write(pdf, "2 0 obj\n<< /Type /Pages /Kids [3 0 R] /Count 1 >>\nendobj\n");
+        offsets.add(pdf.size());
+        write(pdf, "3 0 obj\n<< /Type /Page /Parent 2 0 R /MediaBox [0 0 1024 768] >>\nendobj\n");
+        offsets.add(pdf.size());
+        write(pdf, "4 0 obj\n<< /Type /Ipe /Length " + compressed.size() + " /Filter /FlateDecode >>\nstream\n");
+        compressed.writeTo(pdf);
+        write(pdf, "\nendstream\nendobj\n");
+
+        int xref = pdf.size();
+        write(pdf, "xref\n0 " + (offsets.size() + 1) + "\n0000000000 65535 f \n");
+        for (int offset : offsets) {
+            write(pdf, String.format("%010d 00000 n \n", offset));
+        }
+        write(pdf, "trailer\n<< /Size " + (offsets.size() + 1) + " /Root 1 0 R >>\nstartxref\n" + xref + "\n%%EOF\n");
+        Files.write(pdfFile, pdf.toByteArray());
+    }
+
+    private static void write(ByteArrayOutputStream out, String text) {
+        out.writeBytes(text.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    private static byte[] fixture() throws IOException {
+        try (InputStream in = FakeIpeTool.class.getResourceAsStream(FIXTURE_RESOURCE)) {
+            if (in == null) {
+                throw new IOException("Missing resource " + FIXTURE_RESOURCE);
+            }
+            return in.readAllBytes();
+        }
+    }
+
+    private Random random(Path input) {
+        return seed != null ? new Random(seed ^ input.getFileName().toString().hashCode()) : new Random();
+    }
+
+    private boolean fails(Random random) {
+        return random.nextDouble() < failureRate;
+    }
+
+    /**
+     * Burns the configured CPU time, then sleeps for the latency.
+     */
+    private void work(Random random) throws InterruptedException {
+        if (cpuMillis > 0) {
+            ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            long until = threads.getCurrentThreadCpuTime() + cpuMillis * 1_000_000;
+            long sink = 0;
+            while (threads.getCurrentThreadCpuTime() < until) {
+                for (int i = 0; i < 100_000; i++) {
+                    sink = sink * 31 + i;
+                }
+            }
+            cpuSink = sink;
+        }
+        long jitter = latencyJitterMillis > 0 ? (long) (random.nextDouble() * latencyJitterMillis) : 0;
+        if (latencyMillis + jitter > 0) {
+            Thread.sleep(latencyMillis + jitter);
+        }
+    }
+
+    /**
+     * Fills the heap with pages that are written to, so the memory is really committed.
+     */
+    private void allocateMemory() {
+        if (memoryMegabytes > 0 && memory == null) {
+            memory = new byte[memoryMegabytes][];
+            for (int i = 0; i < memoryMegabytes; i++) {
+                memory[i] = new byte[1024 * 1024];
+                for (int page = 0; page < memory[i].length; page += 4096) {
+                    memory[i][page] = 1;
+                }
+            }
+        }
+    }
+
+    private double knob(String name, double defaultValue) {
+        String value = setting(name);
+        return value != null ? Double.parseDouble(value) : defaultValue;
+    }
+
+    /**
+     * The tool's own setting if there is one, else the one for all tools.
+     */
+    private String setting(String name) {
+        String value = System.getenv("FAKE_" + tool.toUpperCase(Locale.ROOT) + "_" + name);
+        if (value == null || value.isEmpty()) {
+            value = System.getenv("FAKE_IPE_" + name);
+        }
+        return value == null || value.isEmpty() ? null : value;
+    }
+}